@@ -0,0 +1,38 @@
+/**********************************************************************
+ * Copyright (c) 2013-2015 Pieter Wuille                              *
+ * Distributed under the MIT software license, see the accompanying   *
+ * file COPYING or http://www.opensource.org/licenses/mit-license.php.*
+ **********************************************************************/
+
+#ifndef _SECP256K1_ECMULT_TABLES_
+#define _SECP256K1_ECMULT_TABLES_
+
+#include <stddef.h>
+#include <stdint.h>
+
+#include "include/secp256k1.h"
+
+/* Internal hooks letting the JNI glue keep the generator multiplication
+ * tables of verification contexts in a file mapped at startup instead of
+ * computing them in secp256k1_context_create. Not part of the public API. */
+
+/** Identifies WINDOW_G, the storage layout and the endomorphism setting the tables were built with. */
+uint32_t secp256k1_ecmult_tables_layout(void);
+
+/** Size in bytes of the tables exported by secp256k1_ecmult_tables_export. */
+size_t secp256k1_ecmult_tables_size(void);
+
+/** Copies the tables of a verification context into out (secp256k1_ecmult_tables_size() bytes).
+ *  Returns 1 on success, 0 if ctx was not created with SECP256K1_CONTEXT_VERIFY. */
+int secp256k1_ecmult_tables_export(const secp256k1_context* ctx, unsigned char* out);
+
+/** Creates a context using tables previously written by secp256k1_ecmult_tables_export
+ *  for its verification part. The tables are borrowed: they must stay readable until the
+ *  context is destroyed, and must be detached with secp256k1_ecmult_tables_detach first.
+ *  Clones of the context get their own copy as usual. */
+secp256k1_context* secp256k1_context_create_with_ecmult_tables(unsigned int flags, const unsigned char* tables);
+
+/** Forgets the tables if ctx borrows them, so secp256k1_context_destroy does not free them. */
+void secp256k1_ecmult_tables_detach(secp256k1_context* ctx, const unsigned char* tables);
+
+#endif
@@ -0,0 +1,130 @@
+#ifndef _SECP256K1_JNI_KECCAK256_
+#define _SECP256K1_JNI_KECCAK256_
+
+#include <stdint.h>
+#include <stdio.h>
+#include <string.h>
+
+/* Keccak-256 as used by Ethereum: the original Keccak padding, not the FIPS 202 one of SHA3-256. */
+
+#define KECCAK256_RATE 136
+
+typedef struct {
+  uint64_t s[25];
+  size_t pos;
+} keccak256_state;
+
+static const uint64_t keccak256_rc[24] = {
+  0x0000000000000001ULL, 0x0000000000008082ULL, 0x800000000000808aULL, 0x8000000080008000ULL,
+  0x000000000000808bULL, 0x0000000080000001ULL, 0x8000000080008081ULL, 0x8000000000008009ULL,
+  0x000000000000008aULL, 0x0000000000000088ULL, 0x0000000080008009ULL, 0x000000008000000aULL,
+  0x000000008000808bULL, 0x800000000000008bULL, 0x8000000000008089ULL, 0x8000000000008003ULL,
+  0x8000000000008002ULL, 0x8000000000000080ULL, 0x000000000000800aULL, 0x800000008000000aULL,
+  0x8000000080008081ULL, 0x8000000000008080ULL, 0x0000000080000001ULL, 0x8000000080008008ULL
+};
+
+static const unsigned int keccak256_rotc[24] = {
+  1, 3, 6, 10, 15, 21, 28, 36, 45, 55, 2, 14, 27, 41, 56, 8, 25, 43, 62, 18, 39, 61, 20, 44
+};
+
+static const unsigned int keccak256_piln[24] = {
+  10, 7, 11, 17, 18, 3, 5, 16, 8, 21, 24, 4, 15, 23, 19, 13, 12, 2, 20, 14, 22, 9, 6, 1
+};
+
+#define KECCAK256_ROTL(x, n) (((x) << (n)) | ((x) >> (64 - (n))))
+
+static void keccak256_permute(uint64_t* s)
+{
+  uint64_t bc[5], t;
+  int round, i, j;
+
+  for( round = 0; round < 24; round++ ) {
+    /* theta */
+    for( i = 0; i < 5; i++ ) {
+      bc[i] = s[i] ^ s[i + 5] ^ s[i + 10] ^ s[i + 15] ^ s[i + 20];
+    }
+    for( i = 0; i < 5; i++ ) {
+      t = bc[(i + 4) % 5] ^ KECCAK256_ROTL(bc[(i + 1) % 5], 1);
+      for( j = 0; j < 25; j += 5 ) {
+        s[j + i] ^= t;
+      }
+    }
+    /* rho and pi */
+    t = s[1];
+    for( i = 0; i < 24; i++ ) {
+      j = keccak256_piln[i];
+      bc[0] = s[j];
+      s[j] = KECCAK256_ROTL(t, keccak256_rotc[i]);
+      t = bc[0];
+    }
+    /* chi */
+    for( j = 0; j < 25; j += 5 ) {
+      for( i = 0; i < 5; i++ ) {
+        bc[i] = s[j + i];
+      }
+      for( i = 0; i < 5; i++ ) {
+        s[j + i] ^= (~bc[(i + 1) % 5]) & bc[(i + 2) % 5];
+      }
+    }
+    /* iota */
+    s[0] ^= keccak256_rc[round];
+  }
+}
+
+static void keccak256_init(keccak256_state* st)
+{
+  memset(st, 0, sizeof(*st));
+}
+
+static void keccak256_write(keccak256_state* st, const unsigned char* data, size_t len)
+{
+  size_t i;
+
+  /* Whole blocks go in a lane at a time, the rest a byte at a time */
+  while( st->pos == 0 && len >= KECCAK256_RATE ) {
+    for( i = 0; i < KECCAK256_RATE / 8; i++ ) {
+      const unsigned char* p = data + 8 * i;
+      st->s[i] ^= (uint64_t)p[0] | (uint64_t)p[1] << 8 | (uint64_t)p[2] << 16 | (uint64_t)p[3] << 24 |
+                  (uint64_t)p[4] << 32 | (uint64_t)p[5] << 40 | (uint64_t)p[6] << 48 | (uint64_t)p[7] << 56;
+    }
+    keccak256_permute(st->s);
+    data += KECCAK256_RATE;
+    len -= KECCAK256_RATE;
+  }
+  for( i = 0; i < len; i++ ) {
+    st->s[st->pos >> 3] ^= (uint64_t)data[i] << (8 * (st->pos & 7));
+    if( ++st->pos == KECCAK256_RATE ) {
+      keccak256_permute(st->s);
+      st->pos = 0;
+    }
+  }
+}
+
+static void keccak256_finalize(keccak256_state* st, unsigned char* out32)
+{
+  int i;
+
+  st->s[st->pos >> 3] ^= (uint64_t)0x01 << (8 * (st->pos & 7));
+  st->s[(KECCAK256_RATE - 1) >> 3] ^= (uint64_t)0x80 << 56;
+  keccak256_permute(st->s);
+  for( i = 0; i < 32; i++ ) {
+    out32[i] = (unsigned char)(st->s[i >> 3] >> (8 * (i & 7)));
+  }
+}
+
+/* Hashes msg, prefixed with "\x19Ethereum Signed Message:\n" and its decimal length if personal (EIP-191). */
+static void keccak256_message(unsigned char* out32, const unsigned char* msg, size_t len, int personal)
+{
+  keccak256_state st;
+
+  keccak256_init(&st);
+  if( personal ) {
+    char prefix[48];
+    int prefixLen = sprintf(prefix, "\031Ethereum Signed Message:\n%lu", (unsigned long)len);
+    keccak256_write(&st, (const unsigned char*)prefix, prefixLen);
+  }
+  keccak256_write(&st, msg, len);
+  keccak256_finalize(&st, out32);
+}
+
+#endif
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keccak-256 as used by Ethereum (the original Keccak padding, not the FIPS 202
+ * one of SHA3-256), for the engines that do not hash in the JNI glue.
+ */
+final class Keccak256 {
+
+    private static final int RATE = 136;
+
+    private static final long[] RC = {
+        0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL, 0x8000000080008000L,
+        0x000000000000808bL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+        0x000000000000008aL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000aL,
+        0x000000008000808bL, 0x800000000000008bL, 0x8000000000008089L, 0x8000000000008003L,
+        0x8000000000008002L, 0x8000000000000080L, 0x000000000000800aL, 0x800000008000000aL,
+        0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+    };
+
+    private static final int[] ROTC = {
+        1, 3, 6, 10, 15, 21, 28, 36, 45, 55, 2, 14, 27, 41, 56, 8, 25, 43, 62, 18, 39, 61, 20, 44
+    };
+
+    private static final int[] PILN = {
+        10, 7, 11, 17, 18, 3, 5, 16, 8, 21, 24, 4, 15, 23, 19, 13, 12, 2, 20, 14, 22, 9, 6, 1
+    };
+
+    private static final byte[] PERSONAL_PREFIX = "\u0019Ethereum Signed Message:\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final long[] state = new long[25];
+    private int pos;
+
+    /**
+     * Hashes len bytes of buffer from index offset, whatever its position, prefixed
+     * with "\x19Ethereum Signed Message:\n" and the decimal length if personal (EIP-191).
+     */
+    static byte[] messageHash(ByteBuffer buffer, int offset, int len, boolean personal) {
+        Keccak256 keccak = new Keccak256();
+        if (personal) {
+            keccak.update(PERSONAL_PREFIX, 0, PERSONAL_PREFIX.length);
+            byte[] decimal = Integer.toString(len).getBytes(StandardCharsets.US_ASCII);
+            keccak.update(decimal, 0, decimal.length);
+        }
+        for (int i = 0; i < len; i++) {
+            keccak.update(buffer.get(offset + i));
+        }
+        return keccak.digest();
+    }
+
+    /**
+     * The Ethereum address of a 65-byte uncompressed public key: the last 20 bytes
+     * of the hash of its X || Y.
+     */
+    static byte[] address(byte[] pub65) {
+        Keccak256 keccak = new Keccak256();
+        keccak.update(pub65, 1, 64);
+        byte[] address = new byte[20];
+        System.arraycopy(keccak.digest(), 12, address, 0, 20);
+        return address;
+    }
+
+    void update(byte[] data, int offset, int len) {
+        for (int i = 0; i < len; i++) {
+            update(data[offset + i]);
+        }
+    }
+
+    void update(byte b) {
+        state[pos >>> 3] ^= (b & 0xFFL) << (8 * (pos & 7));
+        if (++pos == RATE) {
+            permute(state);
+            pos = 0;
+        }
+    }
+
+    byte[] digest() {
+        state[pos >>> 3] ^= 0x01L << (8 * (pos & 7));
+        state[(RATE - 1) >>> 3] ^= 0x80L << 56;
+        permute(state);
+        byte[] out = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            out[i] = (byte) (state[i >>> 3] >>> (8 * (i & 7)));
+        }
+        return out;
+    }
+
+    private static void permute(long[] s) {
+        long[] bc = new long[5];
+        for (int round = 0; round < 24; round++) {
+            // theta
+            for (int i = 0; i < 5; i++) {
+                bc[i] = s[i] ^ s[i + 5] ^ s[i + 10] ^ s[i + 15] ^ s[i + 20];
+            }
+            for (int i = 0; i < 5; i++) {
+                long t = bc[(i + 4) % 5] ^ Long.rotateLeft(bc[(i + 1) % 5], 1);
+                for (int j = 0; j < 25; j += 5) {
+                    s[j + i] ^= t;
+                }
+            }
+            // rho and pi
+            long t = s[1];
+            for (int i = 0; i < 24; i++) {
+                int j = PILN[i];
+                long next = s[j];
+                s[j] = Long.rotateLeft(t, ROTC[i]);
+                t = next;
+            }
+            // chi
+            for (int j = 0; j < 25; j += 5) {
+                for (int i = 0; i < 5; i++) {
+                    bc[i] = s[j + i];
+                }
+                for (int i = 0; i < 5; i++) {
+                    s[j + i] ^= ~bc[(i + 1) % 5] & bc[(i + 2) % 5];
+                }
+            }
+            // iota
+            s[0] ^= RC[round];
+        }
+    }
+}
@@ -18,12 +18,13 @@
 package org.bitcoin;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 import com.google.common.base.Preconditions;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.bitcoin.Secp256k1Metrics.Op;
 import static org.bitcoin.NativeSecp256k1Util.*;
 
 /**
@@ -32,364 +33,1659 @@ import static org.bitcoin.NativeSecp256k1Util.*;
  * <p>You can find an example library that can be used for this at https://github.com/bitcoin/secp256k1</p>
  *
  * <p>To build secp256k1 for use with bitcoinj, run
- * `./configure --enable-jni --enable-experimental --enable-module-ecdh`
+ * `./configure --enable-jni --enable-experimental --enable-module-ecdh --enable-module-recovery`
  * and `make` then copy `.libs/libsecp256k1.so` to your system library path
  * or point the JVM to the folder containing it with -Djava.library.path
  * </p>
+ *
+ * <p>-Dorg.bitcoin.secp256k1.engine=ffm calls the library through java.lang.foreign
+ * instead of the JNI glue (JDK 21+, see Secp256k1ForeignBackend). If the library
+ * cannot be loaded, or =java is set, every operation transparently runs on a slower
+ * pure Java implementation with the same results. Context cloning and pools are
+ * only available with the JNI glue.</p>
  */
 public class NativeSecp256k1 {
 
     private static final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
     private static final Lock r = rwl.readLock();
     private static final Lock w = rwl.writeLock();
-    private static ThreadLocal<ByteBuffer> nativeECDSABuffer = new ThreadLocal<ByteBuffer>();
+    private static final Secp256k1BufferPool buffers = new Secp256k1BufferPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    private static volatile Secp256k1ContextPool contextPool;
+    private static final Secp256k1Backend backend = Secp256k1Context.getBackend();
+
+    /**
+     * Routes all subsequent operations to contexts borrowed from the given pool
+     * instead of the global context guarded by the read lock. One pool can be
+     * installed at a time, cleanup() closes and uninstalls it.
+     *
+     * @param pool The pool to borrow contexts from
+     */
+    public static synchronized void useContextPool(Secp256k1ContextPool pool) {
+        Preconditions.checkNotNull(pool);
+        Preconditions.checkState(contextPool == null, "A context pool is already installed");
+        contextPool = pool;
+    }
+
+    /**
+     * Borrows a context for one operation that does not sign: a pooled clone if a
+     * pool is installed, otherwise a shared context able to verify with the read
+     * lock held, so verifying never builds the signing tables.
+     */
+    private static long acquireContext() {
+        Secp256k1ContextPool pool = contextPool;
+        if (pool != null) {
+            return pool.acquire();
+        }
+        lock(r, false);
+        return Secp256k1Context.getVerifyContext();
+    }
+
+    /**
+     * Like acquireContext, for operations that need the signing tables.
+     */
+    private static long acquireSigningContext() {
+        Secp256k1ContextPool pool = contextPool;
+        if (pool != null) {
+            return pool.acquire();
+        }
+        lock(r, false);
+        return Secp256k1Context.getContext();
+    }
+
+    /**
+     * Takes the read or write lock, timing the wait when metrics are enabled.
+     */
+    private static void lock(Lock lock, boolean write) {
+        long start = Secp256k1Metrics.start();
+        lock.lock();
+        Secp256k1Metrics.recordLockWait(write, start);
+    }
+
+    private static void releaseContext(long context) {
+        if (Secp256k1Context.isShared(context)) {
+            r.unlock();
+            return;
+        }
+        Secp256k1ContextPool pool = contextPool;
+        if (pool != null) {
+            pool.release(context);
+        } else {
+            // Borrowed from a pool closed by cleanup() meanwhile
+            destroyContext(context);
+        }
+    }
+
+    /**
+     * Fails like the native byte[] methods do when the backend returns no result.
+     */
+    private static byte[] checkResult(byte[] result) throws AssertFailException {
+        assertEquals(result == null ? 0 : 1, 1, "Failed return value check.");
+        return result;
+    }
+
+    /**
+     * Verifies the given secp256k1 signature in native code.
+     * Runs on the selected backend when the JNI glue is not used.
+     *
+     * @param data The data which was signed, must be exactly 32 bytes
+     * @param signature The signature
+     * @param pub The public key which did the signing
+     */
+    public static boolean verify(byte[] data, byte[] signature, byte[] pub) throws AssertFailException{
+        Preconditions.checkArgument(data.length == 32 && signature.length <= 520 && pub.length <= 520);
+
+        if (backend != null) {
+            return backend.verify(data, signature, pub);
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(32 + signature.length + pub.length);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(data);
+            byteBuff.put(signature);
+            byteBuff.put(pub);
+
+            byte[][] retByteArray;
+
+            long context = acquireContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              return secp256k1_ecdsa_verify(byteBuff, context, signature.length, pub.length) == 1;
+            } finally {
+              Secp256k1Metrics.record(Op.VERIFY, start);
+              releaseContext(context);
+            }
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * Verifies a compact secp256k1 signature, without DER decoding.
+     *
+     * @param data The data which was signed, must be exactly 32 bytes
+     * @param signature The 64-byte compact signature r || s, or the 65-byte
+     *                  r || s || v of signRecoverable() whose v is ignored
+     * @param pub The public key which did the signing, 33 or 65 bytes
+     */
+    public static boolean verifyCompact(byte[] data, byte[] signature, byte[] pub) {
+        Preconditions.checkArgument(data.length == 32 && (signature.length == 64 || signature.length == 65));
+        Preconditions.checkArgument(pub.length == 33 || pub.length == 65);
+
+        if (backend != null) {
+            return backend.verifyCompact(data, Arrays.copyOf(signature, 64), pub);
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(32 + 64 + pub.length);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(data);
+            byteBuff.put(signature, 0, 64);
+            byteBuff.put(pub);
+
+            return verifyCompact(byteBuff, pub.length) == 1;
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * Verifies a compact secp256k1 signature held in a caller-owned buffer, without allocating.
+     *
+     * @param input Direct buffer holding the 32-byte message hash, the 64-byte
+     *              compact signature r || s and the public key
+     * @param pubLen Length of the public key, 33 or 65 bytes
+     *
+     * Return values
+     * @param status 1 if the signature is valid, 0 otherwise
+     */
+    public static int verifyCompact(ByteBuffer input, int pubLen) {
+        Preconditions.checkArgument(pubLen == 33 || pubLen == 65);
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= 32 + 64 + pubLen);
+
+        if (backend != null) {
+            return backend.verifyCompact(input, pubLen);
+        }
+
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ecdsa_verify_compact(input, context, pubLen);
+        } finally {
+          Secp256k1Metrics.record(Op.VERIFY_COMPACT, start);
+          releaseContext(context);
+        }
+    }
+
+    /**
+     * Verifies a batch of secp256k1 signatures in a single native call, so the
+     * lock and the JNI crossing are paid once per batch instead of once per signature.
+     * Runs on the selected backend when the JNI glue is not used.
+     *
+     * @param input Direct buffer starting with count 32-byte message hashes, followed
+     *              by the signatures and public keys located by the offset tables
+     * @param count Number of signatures in the batch
+     * @param sigOffsets Offset of each DER signature in input
+     * @param sigLens Length of each DER signature
+     * @param pubOffsets Offset of each public key in input
+     * @param pubLens Length of each public key
+     *
+     * Return values
+     * @param bitmap (count + 7) / 8 bytes, bit (i % 8) of byte (i / 8) is set if signature i is valid
+     */
+    public static byte[] verifyBatch(ByteBuffer input, int count, int[] sigOffsets, int[] sigLens, int[] pubOffsets, int[] pubLens) {
+        if (backend != null) {
+            return verifyBatch(-1, input, count, sigOffsets, sigLens, pubOffsets, pubLens);
+        }
+
+        long context = acquireContext();
+        try {
+          return verifyBatch(context, input, count, sigOffsets, sigLens, pubOffsets, pubLens);
+        } finally {
+          releaseContext(context);
+        }
+    }
+
+    /**
+     * Verifies a batch of secp256k1 signatures with a context the caller has exclusive
+     * use of, e.g. one borrowed from a Secp256k1ContextPool.
+     */
+    static byte[] verifyBatch(long context, ByteBuffer input, int count, int[] sigOffsets, int[] sigLens, int[] pubOffsets, int[] pubLens) {
+        Preconditions.checkArgument(input.isDirect() && count >= 0);
+        Preconditions.checkArgument(sigOffsets.length >= count && sigLens.length >= count && pubOffsets.length >= count && pubLens.length >= count);
+
+        int capacity = input.capacity();
+        Preconditions.checkArgument(32L * count <= capacity);
+        for (int i = 0; i < count; i++) {
+            Preconditions.checkArgument(sigLens[i] >= 0 && sigLens[i] <= 520 && pubLens[i] >= 0 && pubLens[i] <= 520);
+            Preconditions.checkArgument(sigOffsets[i] >= 0 && (long) sigOffsets[i] + sigLens[i] <= capacity);
+            Preconditions.checkArgument(pubOffsets[i] >= 0 && (long) pubOffsets[i] + pubLens[i] <= capacity);
+        }
+
+        if (backend != null) {
+            return backend.verifyBatch(input, count, sigOffsets, sigLens, pubOffsets, pubLens);
+        }
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ecdsa_verify_batch(input, context, count, sigOffsets, sigLens, pubOffsets, pubLens);
+        } finally {
+          Secp256k1Metrics.record(Op.VERIFY_BATCH, start);
+        }
+    }
+
+    /**
+     * Verifies a batch of secp256k1 signatures in a single native call.
+     * Runs on the selected backend when the JNI glue is not used.
+     *
+     * @param data The data which was signed, each must be exactly 32 bytes
+     * @param signatures The signatures
+     * @param pubs The public keys which did the signing
+     *
+     * Return values
+     * @param results true at index i if signature i is valid
+     */
+    public static boolean[] verifyBatch(byte[][] data, byte[][] signatures, byte[][] pubs) {
+        Preconditions.checkArgument(data.length == signatures.length && data.length == pubs.length);
+
+        int count = data.length;
+        int size = 32 * count;
+        for (int i = 0; i < count; i++) {
+            Preconditions.checkArgument(data[i].length == 32 && signatures[i].length <= 520 && pubs[i].length <= 520);
+            size += signatures[i].length + pubs[i].length;
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(size);
+        try {
+            byteBuff.rewind();
+
+            int[] sigOffsets = new int[count];
+            int[] sigLens = new int[count];
+            int[] pubOffsets = new int[count];
+            int[] pubLens = new int[count];
+            for (int i = 0; i < count; i++) {
+                byteBuff.put(data[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                sigOffsets[i] = byteBuff.position();
+                sigLens[i] = signatures[i].length;
+                byteBuff.put(signatures[i]);
+                pubOffsets[i] = byteBuff.position();
+                pubLens[i] = pubs[i].length;
+                byteBuff.put(pubs[i]);
+            }
+
+            byte[] bitmap = verifyBatch(byteBuff, count, sigOffsets, sigLens, pubOffsets, pubLens);
+
+            boolean[] results = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                results[i] = (bitmap[i >> 3] & (1 << (i & 7))) != 0;
+            }
+            return results;
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * libsecp256k1 Parse Pubkey - parses a serialized public key once into the
+     * library's 64-byte internal form, which verifyParsed() uses without parsing
+     * or decompressing it again. The internal form is only meaningful to this
+     * build of the library, it must not be stored or sent anywhere.
+     *
+     * @param pub The serialized public key, 33 or 65 bytes
+     *
+     * Return values
+     * @param parsedPub 64-byte internal public key, empty if pub is invalid
+     */
+    public static byte[] parsePubkey(byte[] pub) {
+        Preconditions.checkArgument(pub.length == 33 || pub.length == 65);
+
+        if (backend != null) {
+            return backend.parsePubkey(pub);
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(65 + 64);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(pub);
+
+            ByteBuffer outBuff = byteBuff.duplicate();
+            outBuff.position(65);
+            outBuff = outBuff.slice();
+
+            int retVal;
+            long context = acquireContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              retVal = secp256k1_ec_pubkey_parse(byteBuff, outBuff, context, pub.length);
+            } finally {
+              Secp256k1Metrics.record(Op.PARSE_PUBKEY, start);
+              releaseContext(context);
+            }
+
+            if (retVal == 0) {
+                return new byte[0];
+            }
+            byte[] parsedArr = new byte[64];
+            outBuff.get(parsedArr);
+            return parsedArr;
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * Verifies the given secp256k1 signature against a public key returned by parsePubkey().
+     *
+     * @param data The data which was signed, must be exactly 32 bytes
+     * @param signature The signature
+     * @param parsedPub The 64-byte internal public key which did the signing
+     */
+    public static boolean verifyParsed(byte[] data, byte[] signature, byte[] parsedPub) {
+        Preconditions.checkArgument(data.length == 32 && signature.length <= 520 && parsedPub.length == 64);
+
+        if (backend != null) {
+            return backend.verifyParsed(data, signature, parsedPub);
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(32 + 64 + 520);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(data);
+            byteBuff.put(parsedPub);
+            byteBuff.put(signature);
+
+            long context = acquireContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              return secp256k1_ecdsa_verify_parsed(byteBuff, context, signature.length) == 1;
+            } finally {
+              Secp256k1Metrics.record(Op.VERIFY_PARSED, start);
+              releaseContext(context);
+            }
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * libsecp256k1 Create an ECDSA signature.
+     *
+     * @param data Message hash, 32 bytes
+     * @param key Secret key, 32 bytes
+     *
+     * Return values
+     * @param sig byte array of signature
+     */
+    public static byte[] sign(byte[] data, byte[] sec) throws AssertFailException{
+        Preconditions.checkArgument(data.length == 32 && sec.length <= 32);
+
+        if (backend != null) {
+            return backend.sign(data, sec);
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(32 + 32);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(data);
+            byteBuff.put(sec);
+
+            byte[][] retByteArray;
+
+            long context = acquireSigningContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              retByteArray = secp256k1_ecdsa_sign(byteBuff, context);
+            } finally {
+              Secp256k1Metrics.record(Op.SIGN, start);
+              releaseContext(context);
+            }
+
+            byte[] sigArr = retByteArray[0];
+            int sigLen = new BigInteger(new byte[] { retByteArray[1][0] }).intValue();
+            int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
+
+            assertEquals(sigArr.length, sigLen, "Got bad signature length.");
+
+            return retVal == 0 ? new byte[0] : sigArr;
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * libsecp256k1 Create an ECDSA signature into a caller-owned buffer, without allocating.
+     *
+     * @param input Direct buffer holding the 32-byte message hash followed by the 32-byte secret key
+     * @param output Direct buffer receiving the DER signature, at least 72 bytes
+     *
+     * Return values
+     * @param sigLen length of the DER signature written to output, 0 if signing failed
+     */
+    public static int sign(ByteBuffer input, ByteBuffer output) {
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= 32 + 32);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= 72);
+
+        if (backend != null) {
+            return backend.sign(input, output);
+        }
+
+        long context = acquireSigningContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ecdsa_sign_into(input, output, context);
+        } finally {
+          Secp256k1Metrics.record(Op.SIGN, start);
+          releaseContext(context);
+        }
+    }
+
+    /**
+     * libsecp256k1 Create a compact ECDSA signature, without DER encoding.
+     *
+     * @param data Message hash, 32 bytes
+     * @param sec Secret key, 32 bytes
+     *
+     * Return values
+     * @param sig 64-byte compact signature r || s, empty if signing failed
+     */
+    public static byte[] signCompact(byte[] data, byte[] sec) {
+        Preconditions.checkArgument(data.length == 32 && sec.length == 32);
+
+        if (backend != null) {
+            return backend.signCompact(data, sec);
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(32 + 32);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(data);
+            byteBuff.put(sec);
+
+            // The signature overwrites the input, which the library has read by then
+            int sigLen = signCompact(byteBuff, byteBuff);
+
+            byte[] sigArr = new byte[sigLen];
+            byteBuff.rewind();
+            byteBuff.get(sigArr);
+            return sigArr;
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * libsecp256k1 Create a compact ECDSA signature into a caller-owned buffer, without allocating.
+     *
+     * @param input Direct buffer holding the 32-byte message hash followed by the 32-byte secret key
+     * @param output Direct buffer receiving the 64-byte compact signature r || s, may be input itself
+     *
+     * Return values
+     * @param sigLen 64, or 0 if signing failed
+     */
+    public static int signCompact(ByteBuffer input, ByteBuffer output) {
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= 32 + 32);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= 64);
+
+        if (backend != null) {
+            return backend.signCompact(input, output);
+        }
+
+        long context = acquireSigningContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ecdsa_sign_compact_into(input, output, context);
+        } finally {
+          Secp256k1Metrics.record(Op.SIGN_COMPACT, start);
+          releaseContext(context);
+        }
+    }
+
+    /**
+     * libsecp256k1 Create a batch of ECDSA signatures in a single native call.
+     *
+     * @param input Direct buffer holding count 32-byte message hashes followed by
+     *              count 32-byte secret keys, or by a single one if sharedKey is set
+     * @param count Number of hashes to sign
+     * @param sharedKey true if all hashes are signed with the same secret key
+     * @param output Direct buffer receiving count 64-byte compact signatures
+     *               followed by count status bytes (1 if signed, 0 if not)
+     *
+     * Return values
+     * @param signed number of hashes successfully signed
+     */
+    public static int signBatch(ByteBuffer input, int count, boolean sharedKey, ByteBuffer output) {
+        Preconditions.checkArgument(input.isDirect() && output.isDirect() && count >= 0);
+        Preconditions.checkArgument(32L * count + 32L * (sharedKey ? 1 : count) <= input.capacity());
+        Preconditions.checkArgument(65L * count <= output.capacity());
+
+        if (backend != null) {
+            return backend.signBatch(input, count, sharedKey, output);
+        }
+
+        long context = acquireSigningContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ecdsa_sign_batch(input, output, context, count, sharedKey);
+        } finally {
+          Secp256k1Metrics.record(Op.SIGN_BATCH, start);
+          releaseContext(context);
+        }
+    }
+
+    /**
+     * libsecp256k1 Seckey Verify - returns 1 if valid, 0 if invalid
+     *
+     * @param seckey ECDSA Secret key, 32 bytes
+     */
+    public static boolean secKeyVerify(byte[] seckey) {
+        Preconditions.checkArgument(seckey.length == 32);
+
+        if (backend != null) {
+            return backend.secKeyVerify(seckey);
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(seckey.length);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(seckey);
+
+            long context = acquireContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              return secp256k1_ec_seckey_verify(byteBuff,context) == 1;
+            } finally {
+              Secp256k1Metrics.record(Op.SECKEY_VERIFY, start);
+              releaseContext(context);
+            }
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+
+    /**
+     * libsecp256k1 Compute Pubkey - computes public key from secret key
+     *
+     * @param seckey ECDSA Secret key, 32 bytes
+     *
+     * Return values
+     * @param pubkey ECDSA Public key, 65 bytes uncompressed
+     */
+    public static byte[] computePubkey(byte[] seckey) throws AssertFailException{
+        Preconditions.checkArgument(seckey.length == 32);
+
+        if (backend != null) {
+            return backend.computePubkey(seckey);
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(seckey.length);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(seckey);
+
+            byte[][] retByteArray;
+
+            long context = acquireSigningContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              retByteArray = secp256k1_ec_pubkey_create(byteBuff, context);
+            } finally {
+              Secp256k1Metrics.record(Op.COMPUTE_PUBKEY, start);
+              releaseContext(context);
+            }
+
+            byte[] pubArr = retByteArray[0];
+            int pubLen = new BigInteger(new byte[] { retByteArray[1][0] }).intValue();
+            int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
+
+            assertEquals(pubArr.length, pubLen, "Got bad pubkey length.");
+
+            return retVal == 0 ? new byte[0]: pubArr;
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * libsecp256k1 Compute Pubkey - computes public key from secret key
+     *
+     * @param seckey ECDSA Secret key, 32 bytes
+     * @param compressed true for the 33-byte compressed form, false for the 65-byte uncompressed one
+     *
+     * Return values
+     * @param pubkey ECDSA Public key, 33 or 65 bytes, empty if the secret key is invalid
+     */
+    public static byte[] computePubkey(byte[] seckey, boolean compressed) {
+        Preconditions.checkArgument(seckey.length == 32);
+
+        if (backend != null) {
+            byte[] pub = backend.computePubkey(seckey);
+            return compressed && pub.length != 0 ? backend.serializePubkey(pub, true) : pub;
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(65);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(seckey);
+
+            // The public key overwrites the secret key, which the library has read by then
+            int pubLen = computePubkey(byteBuff, byteBuff, compressed);
+
+            byte[] pubArr = new byte[pubLen];
+            byteBuff.rewind();
+            byteBuff.get(pubArr);
+            return pubArr;
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * libsecp256k1 Compute Pubkey into a caller-owned buffer, without allocating.
+     *
+     * @param input Direct buffer holding the 32-byte secret key
+     * @param output Direct buffer receiving the uncompressed public key, at least 65 bytes
+     *
+     * Return values
+     * @param pubLen length of the public key written to output, 0 if the secret key is invalid
+     */
+    public static int computePubkey(ByteBuffer input, ByteBuffer output) {
+        return computePubkey(input, output, false);
+    }
+
+    /**
+     * libsecp256k1 Compute Pubkey into a caller-owned buffer, without allocating.
+     *
+     * @param input Direct buffer holding the 32-byte secret key
+     * @param output Direct buffer receiving the public key, at least 33 or 65 bytes, may be input itself
+     * @param compressed true for the 33-byte compressed form, false for the 65-byte uncompressed one
+     *
+     * Return values
+     * @param pubLen length of the public key written to output, 0 if the secret key is invalid
+     */
+    public static int computePubkey(ByteBuffer input, ByteBuffer output, boolean compressed) {
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= 32);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= (compressed ? 33 : 65));
+
+        if (backend != null) {
+            return backend.computePubkey(input, output, compressed);
+        }
+
+        long context = acquireSigningContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ec_pubkey_create_into(input, output, context, compressed);
+        } finally {
+          Secp256k1Metrics.record(Op.COMPUTE_PUBKEY, start);
+          releaseContext(context);
+        }
+    }
+
+    /**
+     * Converts a public key between its compressed and uncompressed forms.
+     *
+     * @param pubkey ECDSA Public key, 33 or 65 bytes
+     * @param compressed true for the 33-byte compressed form, false for the 65-byte uncompressed one
+     *
+     * Return values
+     * @param pubkey the public key in the requested form, empty if it is not valid
+     */
+    public static byte[] serializePubkey(byte[] pubkey, boolean compressed) {
+        Preconditions.checkArgument(pubkey.length == 33 || pubkey.length == 65);
+
+        if (backend != null) {
+            return backend.serializePubkey(pubkey, compressed);
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(65);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(pubkey);
+
+            int pubLen = serializePubkey(byteBuff, pubkey.length, compressed, byteBuff);
+
+            byte[] pubArr = new byte[pubLen];
+            byteBuff.rewind();
+            byteBuff.get(pubArr);
+            return pubArr;
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * Converts a public key between its compressed and uncompressed forms in caller-owned buffers, without allocating.
+     *
+     * @param input Direct buffer holding the public key
+     * @param pubLen Length of the public key, 33 or 65 bytes
+     * @param compressed true for the 33-byte compressed form, false for the 65-byte uncompressed one
+     * @param output Direct buffer receiving the public key, at least 33 or 65 bytes, may be input itself
+     *
+     * Return values
+     * @param pubLen length of the public key written to output, 0 if it is not valid
+     */
+    public static int serializePubkey(ByteBuffer input, int pubLen, boolean compressed, ByteBuffer output) {
+        Preconditions.checkArgument(pubLen == 33 || pubLen == 65);
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= pubLen);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= (compressed ? 33 : 65));
+
+        if (backend != null) {
+            return backend.serializePubkey(input, pubLen, compressed, output);
+        }
+
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ec_pubkey_serialize_into(input, output, context, pubLen, compressed);
+        } finally {
+          Secp256k1Metrics.record(Op.SERIALIZE_PUBKEY, start);
+          releaseContext(context);
+        }
+    }
+
+    /**
+     * libsecp256k1 Cleanup - This destroys the secp256k1 context objects
+     * This should be called at the end of the program for proper cleanup of the context.
+     * Contexts are created again if the library is used afterwards.
+     */
+    public static synchronized void cleanup() {
+        if (contextPool != null) {
+            lock(w, true);
+            try {
+              contextPool.close();
+              contextPool = null;
+            } finally {
+              w.unlock();
+            }
+        }
+        if (backend != null) {
+            backend.cleanup();
+            return;
+        }
+        lock(w, true);
+        try {
+          Secp256k1Context.destroyContexts();
+        } finally {
+          w.unlock();
+        }
+    }
+
+    public static long cloneContext() {
+       Preconditions.checkState(Secp256k1Context.isEnabled(), "Context cloning needs the JNI engine");
+       lock(r, false);
+       try {
+        return secp256k1_ctx_clone(Secp256k1Context.getContext());
+       } finally { r.unlock(); }
+    }
+
+    /**
+     * libsecp256k1 Destroy - destroys a context obtained from cloneContext()
+     *
+     * @param context The cloned context, must not be used afterwards
+     */
+    static void destroyContext(long context) {
+        Preconditions.checkArgument(!Secp256k1Context.isShared(context));
+        secp256k1_destroy_context(context);
+    }
+
+    /**
+     * libsecp256k1 randomize - updates the randomization of a context obtained from
+     * cloneContext(). The caller must have exclusive use of the context.
+     *
+     * @param context The cloned context
+     * @param seed 32-byte random seed
+     */
+    static boolean randomizeContext(long context, byte[] seed) {
+        Preconditions.checkArgument(seed.length == 32 && !Secp256k1Context.isShared(context));
+
+        // Not a Secp256k1BufferPool buffer, the seed would stay in it for the next borrower
+        ByteBuffer byteBuff = ByteBuffer.allocateDirect(seed.length);
+        byteBuff.put(seed);
+
+        return secp256k1_context_randomize(byteBuff, context) == 1;
+    }
+
+    /**
+     * libsecp256k1 PrivKey Tweak-Mul - Tweak privkey by multiplying to it
+     *
+     * @param tweak some bytes to tweak with
+     * @param seckey 32-byte seckey
+     */
+    public static byte[] privKeyTweakMul(byte[] privkey, byte[] tweak) throws AssertFailException{
+        Preconditions.checkArgument(privkey.length == 32);
+
+        if (backend != null) {
+            return checkResult(backend.privKeyTweakMul(privkey, tweak));
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(privkey.length + tweak.length);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(privkey);
+            byteBuff.put(tweak);
+
+            byte[][] retByteArray;
+            long context = acquireContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              retByteArray = secp256k1_privkey_tweak_mul(byteBuff,context);
+            } finally {
+              Secp256k1Metrics.record(Op.PRIVKEY_TWEAK_MUL, start);
+              releaseContext(context);
+            }
+
+            byte[] privArr = retByteArray[0];
+
+            int privLen = (byte) new BigInteger(new byte[] { retByteArray[1][0] }).intValue() & 0xFF;
+            int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
+
+            assertEquals(privArr.length, privLen, "Got bad pubkey length.");
+
+            assertEquals(retVal, 1, "Failed return value check.");
+
+            return privArr;
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * libsecp256k1 PrivKey Tweak-Mul into a caller-owned buffer, without allocating.
+     *
+     * @param input Direct buffer holding the 32-byte seckey followed by the 32-byte tweak
+     * @param output Direct buffer receiving the tweaked 32-byte seckey, may be input itself
+     *
+     * Return values
+     * @param status 1 if the seckey was tweaked, 0 otherwise
+     */
+    public static int privKeyTweakMul(ByteBuffer input, ByteBuffer output) {
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= 32 + 32);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= 32);
+
+        if (backend != null) {
+            return backend.privKeyTweakMul(input, output);
+        }
+
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_privkey_tweak_mul_into(input, output, context);
+        } finally {
+          Secp256k1Metrics.record(Op.PRIVKEY_TWEAK_MUL, start);
+          releaseContext(context);
+        }
+    }
+
+    /**
+     * libsecp256k1 PrivKey Tweak-Add - Tweak privkey by adding to it
+     *
+     * @param tweak some bytes to tweak with
+     * @param seckey 32-byte seckey
+     */
+    public static byte[] privKeyTweakAdd(byte[] privkey, byte[] tweak) throws AssertFailException{
+        Preconditions.checkArgument(privkey.length == 32);
+
+        if (backend != null) {
+            return checkResult(backend.privKeyTweakAdd(privkey, tweak));
+        }
+
+        ByteBuffer byteBuff = buffers.acquire(privkey.length + tweak.length);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(privkey);
+            byteBuff.put(tweak);
+
+            byte[][] retByteArray;
+            long context = acquireContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              retByteArray = secp256k1_privkey_tweak_add(byteBuff,context);
+            } finally {
+              Secp256k1Metrics.record(Op.PRIVKEY_TWEAK_ADD, start);
+              releaseContext(context);
+            }
+
+            byte[] privArr = retByteArray[0];
+
+            int privLen = (byte) new BigInteger(new byte[] { retByteArray[1][0] }).intValue() & 0xFF;
+            int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
+
+            assertEquals(privArr.length, privLen, "Got bad pubkey length.");
+
+            assertEquals(retVal, 1, "Failed return value check.");
+
+            return privArr;
+        } finally {
+            buffers.release(byteBuff);
+        }
+    }
+
+    /**
+     * libsecp256k1 PrivKey Tweak-Add into a caller-owned buffer, without allocating.
+     *
+     * @param input Direct buffer holding the 32-byte seckey followed by the 32-byte tweak
+     * @param output Direct buffer receiving the tweaked 32-byte seckey, may be input itself
+     *
+     * Return values
+     * @param status 1 if the seckey was tweaked, 0 otherwise
+     */
+    public static int privKeyTweakAdd(ByteBuffer input, ByteBuffer output) {
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= 32 + 32);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= 32);
+
+        if (backend != null) {
+            return backend.privKeyTweakAdd(input, output);
+        }
+
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_privkey_tweak_add_into(input, output, context);
+        } finally {
+          Secp256k1Metrics.record(Op.PRIVKEY_TWEAK_ADD, start);
+          releaseContext(context);
+        }
+    }
+
     /**
-     * Verifies the given secp256k1 signature in native code.
-     * Calling when enabled == false is undefined (probably library not loaded)
+     * libsecp256k1 PubKey Tweak-Add - Tweak pubkey by adding to it
      *
-     * @param data The data which was signed, must be exactly 32 bytes
-     * @param signature The signature
-     * @param pub The public key which did the signing
+     * @param tweak some bytes to tweak with
+     * @param pubkey 32-byte seckey
      */
-    public static boolean verify(byte[] data, byte[] signature, byte[] pub) throws AssertFailException{
-        Preconditions.checkArgument(data.length == 32 && signature.length <= 520 && pub.length <= 520);
+    public static byte[] pubKeyTweakAdd(byte[] pubkey, byte[] tweak) throws AssertFailException{
+        Preconditions.checkArgument(pubkey.length == 33 || pubkey.length == 65);
 
-        ByteBuffer byteBuff = nativeECDSABuffer.get();
-        if (byteBuff == null || byteBuff.capacity() < 520) {
-            byteBuff = ByteBuffer.allocateDirect(520);
-            byteBuff.order(ByteOrder.nativeOrder());
-            nativeECDSABuffer.set(byteBuff);
+        if (backend != null) {
+            return checkResult(backend.pubKeyTweakAdd(pubkey, tweak));
         }
-        byteBuff.rewind();
-        byteBuff.put(data);
-        byteBuff.put(signature);
-        byteBuff.put(pub);
 
-        byte[][] retByteArray;
-
-        r.lock();
+        ByteBuffer byteBuff = buffers.acquire(pubkey.length + tweak.length);
         try {
-          return secp256k1_ecdsa_verify(byteBuff, Secp256k1Context.getContext(), signature.length, pub.length) == 1;
+            byteBuff.rewind();
+            byteBuff.put(pubkey);
+            byteBuff.put(tweak);
+
+            byte[][] retByteArray;
+            long context = acquireContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              retByteArray = secp256k1_pubkey_tweak_add(byteBuff,context, pubkey.length);
+            } finally {
+              Secp256k1Metrics.record(Op.PUBKEY_TWEAK_ADD, start);
+              releaseContext(context);
+            }
+
+            byte[] pubArr = retByteArray[0];
+
+            int pubLen = (byte) new BigInteger(new byte[] { retByteArray[1][0] }).intValue() & 0xFF;
+            int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
+
+            assertEquals(pubArr.length, pubLen, "Got bad pubkey length.");
+
+            assertEquals(retVal, 1, "Failed return value check.");
+
+            return pubArr;
         } finally {
-          r.unlock();
+            buffers.release(byteBuff);
         }
     }
 
     /**
-     * libsecp256k1 Create an ECDSA signature.
+     * libsecp256k1 PubKey Tweak-Add into a caller-owned buffer, without allocating.
      *
-     * @param data Message hash, 32 bytes
-     * @param key Secret key, 32 bytes
+     * @param input Direct buffer holding the pubkey followed by the 32-byte tweak
+     * @param pubLen Length of the pubkey, 33 or 65 bytes
+     * @param output Direct buffer receiving the uncompressed tweaked pubkey, at least 65 bytes
      *
      * Return values
-     * @param sig byte array of signature
+     * @param pubLen length of the pubkey written to output, 0 if tweaking failed
      */
-    public static byte[] sign(byte[] data, byte[] sec) throws AssertFailException{
-        Preconditions.checkArgument(data.length == 32 && sec.length <= 32);
+    public static int pubKeyTweakAdd(ByteBuffer input, int pubLen, ByteBuffer output) {
+        return pubKeyTweakAdd(input, pubLen, output, false);
+    }
 
-        ByteBuffer byteBuff = nativeECDSABuffer.get();
-        if (byteBuff == null || byteBuff.capacity() < 32 + 32) {
-            byteBuff = ByteBuffer.allocateDirect(32 + 32);
-            byteBuff.order(ByteOrder.nativeOrder());
-            nativeECDSABuffer.set(byteBuff);
-        }
-        byteBuff.rewind();
-        byteBuff.put(data);
-        byteBuff.put(sec);
+    /**
+     * libsecp256k1 PubKey Tweak-Add into a caller-owned buffer, without allocating.
+     *
+     * @param input Direct buffer holding the pubkey followed by the 32-byte tweak
+     * @param pubLen Length of the pubkey, 33 or 65 bytes
+     * @param output Direct buffer receiving the tweaked pubkey, at least 33 or 65 bytes
+     * @param compressed true for the 33-byte compressed form, false for the 65-byte uncompressed one
+     *
+     * Return values
+     * @param pubLen length of the pubkey written to output, 0 if tweaking failed
+     */
+    public static int pubKeyTweakAdd(ByteBuffer input, int pubLen, ByteBuffer output, boolean compressed) {
+        Preconditions.checkArgument(pubLen == 33 || pubLen == 65);
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= pubLen + 32);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= (compressed ? 33 : 65));
 
-        byte[][] retByteArray;
+        if (backend != null) {
+            return backend.pubKeyTweakAdd(input, pubLen, output, compressed);
+        }
 
-        r.lock();
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
         try {
-          retByteArray = secp256k1_ecdsa_sign(byteBuff, Secp256k1Context.getContext());
+          return secp256k1_pubkey_tweak_add_into(input, output, context, pubLen, compressed);
         } finally {
-          r.unlock();
+          Secp256k1Metrics.record(Op.PUBKEY_TWEAK_ADD, start);
+          releaseContext(context);
+        }
+    }
+
+    /**
+     * libsecp256k1 PrivKey Tweak-Add of one seckey by many tweaks in a single native call,
+     * e.g. to derive a range of BIP32 children of a parent key (see Secp256k1ExtendedKey).
+     *
+     * @param input Direct buffer holding the 32-byte seckey followed by count 32-byte tweaks
+     * @param count Number of tweaks
+     * @param pubLen 33 or 65 to also write the compressed or uncompressed pubkey of each
+     *               tweaked seckey, 0 for none
+     * @param output Direct buffer receiving count entries of the tweaked 32-byte seckey
+     *               followed by pubLen bytes of its pubkey, then count status bytes
+     *               (1 if tweaked, 0 if not, in which case the entry is zeroed)
+     *
+     * Return values
+     * @param tweaked number of seckeys successfully tweaked
+     */
+    public static int privKeyTweakAddBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output) {
+        Preconditions.checkArgument(pubLen == 0 || pubLen == 33 || pubLen == 65);
+        Preconditions.checkArgument(input.isDirect() && output.isDirect() && count >= 0);
+        Preconditions.checkArgument(32L + 32L * count <= input.capacity());
+        Preconditions.checkArgument((33L + pubLen) * count <= output.capacity());
+
+        if (backend != null) {
+            return backend.privKeyTweakAddBatch(input, count, pubLen, output);
         }
 
-        byte[] sigArr = retByteArray[0];
-        int sigLen = new BigInteger(new byte[] { retByteArray[1][0] }).intValue();
-        int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
+        long context = pubLen == 0 ? acquireContext() : acquireSigningContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_privkey_tweak_add_batch(input, output, context, count, pubLen);
+        } finally {
+          Secp256k1Metrics.record(Op.PRIVKEY_TWEAK_ADD_BATCH, start);
+          releaseContext(context);
+        }
+    }
 
-        assertEquals(sigArr.length, sigLen, "Got bad signature length.");
+    /**
+     * libsecp256k1 PubKey Tweak-Add of one pubkey by many tweaks in a single native call,
+     * the pubkey being parsed only once, e.g. to derive a range of public-only BIP32 children.
+     *
+     * @param input Direct buffer holding the pubkey followed by count 32-byte tweaks
+     * @param count Number of tweaks
+     * @param pubLen Length of the pubkey, 33 or 65 bytes
+     * @param outLen 33 or 65 to write the tweaked pubkeys compressed or uncompressed
+     * @param output Direct buffer receiving count outLen-byte tweaked pubkeys
+     *               followed by count status bytes (1 if tweaked, 0 if not)
+     *
+     * Return values
+     * @param tweaked number of pubkeys successfully tweaked
+     */
+    public static int pubKeyTweakAddBatch(ByteBuffer input, int count, int pubLen, int outLen, ByteBuffer output) {
+        Preconditions.checkArgument((pubLen == 33 || pubLen == 65) && (outLen == 33 || outLen == 65));
+        Preconditions.checkArgument(input.isDirect() && output.isDirect() && count >= 0);
+        Preconditions.checkArgument(pubLen + 32L * count <= input.capacity());
+        Preconditions.checkArgument((outLen + 1L) * count <= output.capacity());
+
+        if (backend != null) {
+            return backend.pubKeyTweakAddBatch(input, count, pubLen, outLen, output);
+        }
 
-        return retVal == 0 ? new byte[0] : sigArr;
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_pubkey_tweak_add_batch(input, output, context, count, pubLen, outLen);
+        } finally {
+          Secp256k1Metrics.record(Op.PUBKEY_TWEAK_ADD_BATCH, start);
+          releaseContext(context);
+        }
     }
 
     /**
-     * libsecp256k1 Seckey Verify - returns 1 if valid, 0 if invalid
+     * libsecp256k1 PubKey Tweak-Mul - Tweak pubkey by multiplying to it
      *
-     * @param seckey ECDSA Secret key, 32 bytes
+     * @param tweak some bytes to tweak with
+     * @param pubkey 32-byte seckey
      */
-    public static boolean secKeyVerify(byte[] seckey) {
-        Preconditions.checkArgument(seckey.length == 32);
+    public static byte[] pubKeyTweakMul(byte[] pubkey, byte[] tweak) throws AssertFailException{
+        Preconditions.checkArgument(pubkey.length == 33 || pubkey.length == 65);
 
-        ByteBuffer byteBuff = nativeECDSABuffer.get();
-        if (byteBuff == null || byteBuff.capacity() < seckey.length) {
-            byteBuff = ByteBuffer.allocateDirect(seckey.length);
-            byteBuff.order(ByteOrder.nativeOrder());
-            nativeECDSABuffer.set(byteBuff);
+        if (backend != null) {
+            return checkResult(backend.pubKeyTweakMul(pubkey, tweak));
         }
-        byteBuff.rewind();
-        byteBuff.put(seckey);
 
-        r.lock();
+        ByteBuffer byteBuff = buffers.acquire(pubkey.length + tweak.length);
         try {
-          return secp256k1_ec_seckey_verify(byteBuff,Secp256k1Context.getContext()) == 1;
+            byteBuff.rewind();
+            byteBuff.put(pubkey);
+            byteBuff.put(tweak);
+
+            byte[][] retByteArray;
+            long context = acquireContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              retByteArray = secp256k1_pubkey_tweak_mul(byteBuff,context, pubkey.length);
+            } finally {
+              Secp256k1Metrics.record(Op.PUBKEY_TWEAK_MUL, start);
+              releaseContext(context);
+            }
+
+            byte[] pubArr = retByteArray[0];
+
+            int pubLen = (byte) new BigInteger(new byte[] { retByteArray[1][0] }).intValue() & 0xFF;
+            int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
+
+            assertEquals(pubArr.length, pubLen, "Got bad pubkey length.");
+
+            assertEquals(retVal, 1, "Failed return value check.");
+
+            return pubArr;
         } finally {
-          r.unlock();
+            buffers.release(byteBuff);
         }
     }
 
+    /**
+     * libsecp256k1 PubKey Tweak-Mul into a caller-owned buffer, without allocating.
+     *
+     * @param input Direct buffer holding the pubkey followed by the 32-byte tweak
+     * @param pubLen Length of the pubkey, 33 or 65 bytes
+     * @param output Direct buffer receiving the uncompressed tweaked pubkey, at least 65 bytes
+     *
+     * Return values
+     * @param pubLen length of the pubkey written to output, 0 if tweaking failed
+     */
+    public static int pubKeyTweakMul(ByteBuffer input, int pubLen, ByteBuffer output) {
+        return pubKeyTweakMul(input, pubLen, output, false);
+    }
 
     /**
-     * libsecp256k1 Compute Pubkey - computes public key from secret key
+     * libsecp256k1 PubKey Tweak-Mul into a caller-owned buffer, without allocating.
      *
-     * @param seckey ECDSA Secret key, 32 bytes
+     * @param input Direct buffer holding the pubkey followed by the 32-byte tweak
+     * @param pubLen Length of the pubkey, 33 or 65 bytes
+     * @param output Direct buffer receiving the tweaked pubkey, at least 33 or 65 bytes
+     * @param compressed true for the 33-byte compressed form, false for the 65-byte uncompressed one
      *
      * Return values
-     * @param pubkey ECDSA Public key, 33 or 65 bytes
+     * @param pubLen length of the pubkey written to output, 0 if tweaking failed
      */
-    //TODO add a 'compressed' arg
-    public static byte[] computePubkey(byte[] seckey) throws AssertFailException{
-        Preconditions.checkArgument(seckey.length == 32);
+    public static int pubKeyTweakMul(ByteBuffer input, int pubLen, ByteBuffer output, boolean compressed) {
+        Preconditions.checkArgument(pubLen == 33 || pubLen == 65);
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= pubLen + 32);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= (compressed ? 33 : 65));
 
-        ByteBuffer byteBuff = nativeECDSABuffer.get();
-        if (byteBuff == null || byteBuff.capacity() < seckey.length) {
-            byteBuff = ByteBuffer.allocateDirect(seckey.length);
-            byteBuff.order(ByteOrder.nativeOrder());
-            nativeECDSABuffer.set(byteBuff);
+        if (backend != null) {
+            return backend.pubKeyTweakMul(input, pubLen, output, compressed);
         }
-        byteBuff.rewind();
-        byteBuff.put(seckey);
 
-        byte[][] retByteArray;
-
-        r.lock();
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
         try {
-          retByteArray = secp256k1_ec_pubkey_create(byteBuff, Secp256k1Context.getContext());
+          return secp256k1_pubkey_tweak_mul_into(input, output, context, pubLen, compressed);
         } finally {
-          r.unlock();
+          Secp256k1Metrics.record(Op.PUBKEY_TWEAK_MUL, start);
+          releaseContext(context);
         }
+    }
 
-        byte[] pubArr = retByteArray[0];
-        int pubLen = new BigInteger(new byte[] { retByteArray[1][0] }).intValue();
-        int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
+    /**
+     * libsecp256k1 create ECDH secret - constant time ECDH calculation
+     *
+     * @param seckey byte array of secret key used in exponentiaion
+     * @param pubkey byte array of public key used in exponentiaion
+     */
+    public static byte[] createECDHSecret(byte[] seckey, byte[] pubkey) throws AssertFailException{
+        Preconditions.checkArgument(seckey.length <= 32 && pubkey.length <= 65);
 
-        assertEquals(pubArr.length, pubLen, "Got bad pubkey length.");
+        if (backend != null) {
+            return checkResult(backend.createECDHSecret(seckey, pubkey));
+        }
 
-        return retVal == 0 ? new byte[0]: pubArr;
+        ByteBuffer byteBuff = buffers.acquire(32 + pubkey.length);
+        try {
+            byteBuff.rewind();
+            byteBuff.put(seckey);
+            byteBuff.put(pubkey);
+
+            byte[][] retByteArray;
+            long context = acquireContext();
+            long start = Secp256k1Metrics.start();
+            try {
+              retByteArray = secp256k1_ecdh(byteBuff, context, pubkey.length);
+            } finally {
+              Secp256k1Metrics.record(Op.ECDH, start);
+              releaseContext(context);
+            }
+
+            byte[] resArr = retByteArray[0];
+            int retVal = new BigInteger(new byte[] { retByteArray[1][0] }).intValue();
+
+            assertEquals(resArr.length, 32, "Got bad result length.");
+            assertEquals(retVal, 1, "Failed return value check.");
+
+            return resArr;
+        } finally {
+            buffers.release(byteBuff);
+        }
     }
 
     /**
-     * libsecp256k1 Cleanup - This destroys the secp256k1 context object
-     * This should be called at the end of the program for proper cleanup of the context.
+     * libsecp256k1 create ECDH secret into a caller-owned buffer, without allocating.
+     *
+     * @param input Direct buffer holding the 32-byte secret key followed by the public key
+     * @param pubLen Length of the public key, 33 or 65 bytes
+     * @param output Direct buffer receiving the 32-byte shared secret
+     *
+     * Return values
+     * @param status 1 if the secret was computed, 0 otherwise
      */
-    public static synchronized void cleanup() {
-        w.lock();
+    public static int createECDHSecret(ByteBuffer input, int pubLen, ByteBuffer output) {
+        Preconditions.checkArgument(pubLen == 33 || pubLen == 65);
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= 32 + pubLen);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= 32);
+
+        if (backend != null) {
+            return backend.createECDHSecret(input, pubLen, output);
+        }
+
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
         try {
-          secp256k1_destroy_context(Secp256k1Context.getContext());
+          return secp256k1_ecdh_into(input, output, context, pubLen);
         } finally {
-          w.unlock();
+          Secp256k1Metrics.record(Op.ECDH, start);
+          releaseContext(context);
         }
     }
 
-    public static long cloneContext() {
-       r.lock();
-       try {
-        return secp256k1_ctx_clone(Secp256k1Context.getContext());
-       } finally { r.unlock(); }
+    /**
+     * libsecp256k1 create a batch of ECDH secrets in a single native call, one local
+     * secret key against many peer public keys, e.g. for the handshakes of a node restart.
+     *
+     * @param input Direct buffer holding the 32-byte secret key followed by count public keys
+     * @param count Number of public keys
+     * @param pubLen Length of each public key, 33 or 65 bytes
+     * @param output Direct buffer receiving count 32-byte shared secrets
+     *               followed by count status bytes (1 if derived, 0 if not)
+     *
+     * Return values
+     * @param derived number of secrets successfully derived
+     */
+    public static int createECDHSecretBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output) {
+        Preconditions.checkArgument(pubLen == 33 || pubLen == 65);
+        Preconditions.checkArgument(input.isDirect() && output.isDirect() && count >= 0);
+        Preconditions.checkArgument(32L + (long) pubLen * count <= input.capacity());
+        Preconditions.checkArgument(33L * count <= output.capacity());
+
+        if (backend != null) {
+            return backend.createECDHSecretBatch(input, count, pubLen, output);
+        }
+
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ecdh_batch(input, output, context, count, pubLen);
+        } finally {
+          Secp256k1Metrics.record(Op.ECDH_BATCH, start);
+          releaseContext(context);
+        }
     }
 
     /**
-     * libsecp256k1 PrivKey Tweak-Mul - Tweak privkey by multiplying to it
+     * libsecp256k1 Create a recoverable ECDSA signature.
      *
-     * @param tweak some bytes to tweak with
-     * @param seckey 32-byte seckey
+     * @param data Message hash, 32 bytes
+     * @param sec Secret key, 32 bytes
+     *
+     * Return values
+     * @param sig 65-byte compact signature r || s || recid, empty if signing failed
      */
-    public static byte[] privKeyTweakMul(byte[] privkey, byte[] tweak) throws AssertFailException{
-        Preconditions.checkArgument(privkey.length == 32);
+    public static byte[] signRecoverable(byte[] data, byte[] sec) {
+        Preconditions.checkArgument(data.length == 32 && sec.length == 32);
 
-        ByteBuffer byteBuff = nativeECDSABuffer.get();
-        if (byteBuff == null || byteBuff.capacity() < privkey.length + tweak.length) {
-            byteBuff = ByteBuffer.allocateDirect(privkey.length + tweak.length);
-            byteBuff.order(ByteOrder.nativeOrder());
-            nativeECDSABuffer.set(byteBuff);
+        if (backend != null) {
+            return backend.signRecoverable(data, sec);
         }
-        byteBuff.rewind();
-        byteBuff.put(privkey);
-        byteBuff.put(tweak);
 
-        byte[][] retByteArray;
-        r.lock();
+        ByteBuffer byteBuff = buffers.acquire(32 + 32 + 65);
         try {
-          retByteArray = secp256k1_privkey_tweak_mul(byteBuff,Secp256k1Context.getContext());
+            byteBuff.rewind();
+            byteBuff.put(data);
+            byteBuff.put(sec);
+
+            ByteBuffer outBuff = byteBuff.duplicate();
+            outBuff.position(32 + 32);
+            outBuff = outBuff.slice();
+
+            if (signRecoverable(byteBuff, outBuff) == 0) {
+                return new byte[0];
+            }
+            byte[] sigArr = new byte[65];
+            outBuff.get(sigArr);
+            return sigArr;
         } finally {
-          r.unlock();
+            buffers.release(byteBuff);
         }
+    }
 
-        byte[] privArr = retByteArray[0];
-
-        int privLen = (byte) new BigInteger(new byte[] { retByteArray[1][0] }).intValue() & 0xFF;
-        int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
+    /**
+     * libsecp256k1 Create a recoverable ECDSA signature into a caller-owned buffer.
+     *
+     * @param input Direct buffer holding the 32-byte message hash followed by the 32-byte secret key
+     * @param output Direct buffer receiving the 65-byte compact signature r || s || recid
+     *
+     * Return values
+     * @param status 1 if the signature was created, 0 otherwise
+     */
+    public static int signRecoverable(ByteBuffer input, ByteBuffer output) {
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= 32 + 32);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= 65);
 
-        assertEquals(privArr.length, privLen, "Got bad pubkey length.");
+        if (backend != null) {
+            return backend.signRecoverable(input, output);
+        }
 
-        assertEquals(retVal, 1, "Failed return value check.");
+        long context = acquireSigningContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ecdsa_sign_recoverable_into(input, output, context);
+        } finally {
+          Secp256k1Metrics.record(Op.SIGN_RECOVERABLE, start);
+          releaseContext(context);
+        }
+    }
 
-        return privArr;
+    /**
+     * libsecp256k1 Recover the public key which produced a recoverable signature.
+     *
+     * @param data Message hash, 32 bytes
+     * @param signature 65-byte compact signature r || s || recid, recid being 0-3 or 27-30
+     *
+     * Return values
+     * @param pubkey 65-byte uncompressed public key, empty if recovery failed
+     */
+    public static byte[] recoverPubkey(byte[] data, byte[] signature) {
+        return recoverPubkey(data, signature, false);
     }
 
     /**
-     * libsecp256k1 PrivKey Tweak-Add - Tweak privkey by adding to it
+     * libsecp256k1 Recover the public key which produced a recoverable signature.
      *
-     * @param tweak some bytes to tweak with
-     * @param seckey 32-byte seckey
+     * @param data Message hash, 32 bytes
+     * @param signature 65-byte compact signature r || s || recid, recid being 0-3 or 27-30
+     * @param compressed true for the 33-byte compressed form, false for the 65-byte uncompressed one
+     *
+     * Return values
+     * @param pubkey 33 or 65-byte public key, empty if recovery failed
      */
-    public static byte[] privKeyTweakAdd(byte[] privkey, byte[] tweak) throws AssertFailException{
-        Preconditions.checkArgument(privkey.length == 32);
+    public static byte[] recoverPubkey(byte[] data, byte[] signature, boolean compressed) {
+        Preconditions.checkArgument(data.length == 32 && signature.length == 65);
 
-        ByteBuffer byteBuff = nativeECDSABuffer.get();
-        if (byteBuff == null || byteBuff.capacity() < privkey.length + tweak.length) {
-            byteBuff = ByteBuffer.allocateDirect(privkey.length + tweak.length);
-            byteBuff.order(ByteOrder.nativeOrder());
-            nativeECDSABuffer.set(byteBuff);
+        if (backend != null) {
+            byte[] pub = backend.recoverPubkey(data, signature);
+            return compressed && pub.length != 0 ? backend.serializePubkey(pub, true) : pub;
         }
-        byteBuff.rewind();
-        byteBuff.put(privkey);
-        byteBuff.put(tweak);
 
-        byte[][] retByteArray;
-        r.lock();
+        ByteBuffer byteBuff = buffers.acquire(32 + 65 + 65);
         try {
-          retByteArray = secp256k1_privkey_tweak_add(byteBuff,Secp256k1Context.getContext());
+            byteBuff.rewind();
+            byteBuff.put(data);
+            byteBuff.put(signature);
+
+            ByteBuffer outBuff = byteBuff.duplicate();
+            outBuff.position(32 + 65);
+            outBuff = outBuff.slice();
+
+            byte[] pubArr = new byte[recoverPubkey(byteBuff, outBuff, compressed)];
+            outBuff.get(pubArr);
+            return pubArr;
         } finally {
-          r.unlock();
+            buffers.release(byteBuff);
         }
+    }
 
-        byte[] privArr = retByteArray[0];
+    /**
+     * libsecp256k1 Recover a public key into a caller-owned buffer.
+     *
+     * @param input Direct buffer holding the 32-byte message hash followed by the 65-byte signature
+     * @param output Direct buffer receiving the 65-byte uncompressed public key
+     *
+     * Return values
+     * @param pubLen length of the public key written to output, 0 if recovery failed
+     */
+    public static int recoverPubkey(ByteBuffer input, ByteBuffer output) {
+        return recoverPubkey(input, output, false);
+    }
 
-        int privLen = (byte) new BigInteger(new byte[] { retByteArray[1][0] }).intValue() & 0xFF;
-        int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
+    /**
+     * libsecp256k1 Recover a public key into a caller-owned buffer.
+     *
+     * @param input Direct buffer holding the 32-byte message hash followed by the 65-byte signature
+     * @param output Direct buffer receiving the public key, at least 33 or 65 bytes
+     * @param compressed true for the 33-byte compressed form, false for the 65-byte uncompressed one
+     *
+     * Return values
+     * @param pubLen length of the public key written to output, 0 if recovery failed
+     */
+    public static int recoverPubkey(ByteBuffer input, ByteBuffer output, boolean compressed) {
+        Preconditions.checkArgument(input.isDirect() && input.capacity() >= 32 + 65);
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= (compressed ? 33 : 65));
 
-        assertEquals(privArr.length, privLen, "Got bad pubkey length.");
+        if (backend != null) {
+            return backend.recoverPubkey(input, output, compressed);
+        }
 
-        assertEquals(retVal, 1, "Failed return value check.");
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ecdsa_recover_into(input, output, context, compressed);
+        } finally {
+          Secp256k1Metrics.record(Op.RECOVER, start);
+          releaseContext(context);
+        }
+    }
 
-        return privArr;
+    /**
+     * libsecp256k1 Recover the public keys of a batch of recoverable signatures in a
+     * single native call, e.g. to derive the senders of all transactions of a block.
+     *
+     * @param input Direct buffer holding count entries of a 32-byte message hash
+     *              followed by its 65-byte signature r || s || recid
+     * @param count Number of entries
+     * @param output Direct buffer receiving count 65-byte uncompressed public keys
+     *               followed by count status bytes (1 if recovered, 0 if not)
+     *
+     * Return values
+     * @param recovered number of public keys successfully recovered
+     */
+    public static int recoverPubkeyBatch(ByteBuffer input, int count, ByteBuffer output) {
+        return recoverPubkeyBatch(input, count, output, false);
     }
 
     /**
-     * libsecp256k1 PubKey Tweak-Add - Tweak pubkey by adding to it
+     * libsecp256k1 Recover the public keys of a batch of recoverable signatures in a
+     * single native call.
      *
-     * @param tweak some bytes to tweak with
-     * @param pubkey 32-byte seckey
+     * @param input Direct buffer holding count entries of a 32-byte message hash
+     *              followed by its 65-byte signature r || s || recid
+     * @param count Number of entries
+     * @param output Direct buffer receiving count 33 or 65-byte public keys
+     *               followed by count status bytes (1 if recovered, 0 if not)
+     * @param compressed true for 33-byte compressed keys, false for 65-byte uncompressed ones
+     *
+     * Return values
+     * @param recovered number of public keys successfully recovered
      */
-    public static byte[] pubKeyTweakAdd(byte[] pubkey, byte[] tweak) throws AssertFailException{
-        Preconditions.checkArgument(pubkey.length == 33 || pubkey.length == 65);
+    public static int recoverPubkeyBatch(ByteBuffer input, int count, ByteBuffer output, boolean compressed) {
+        Preconditions.checkArgument(input.isDirect() && output.isDirect() && count >= 0);
+        Preconditions.checkArgument((32L + 65L) * count <= input.capacity());
+        Preconditions.checkArgument((compressed ? 34L : 66L) * count <= output.capacity());
 
-        ByteBuffer byteBuff = nativeECDSABuffer.get();
-        if (byteBuff == null || byteBuff.capacity() < pubkey.length + tweak.length) {
-            byteBuff = ByteBuffer.allocateDirect(pubkey.length + tweak.length);
-            byteBuff.order(ByteOrder.nativeOrder());
-            nativeECDSABuffer.set(byteBuff);
+        if (backend != null) {
+            return backend.recoverPubkeyBatch(input, count, output, compressed);
         }
-        byteBuff.rewind();
-        byteBuff.put(pubkey);
-        byteBuff.put(tweak);
 
-        byte[][] retByteArray;
-        r.lock();
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
         try {
-          retByteArray = secp256k1_pubkey_tweak_add(byteBuff,Secp256k1Context.getContext(), pubkey.length);
+          return secp256k1_ecdsa_recover_batch(input, output, context, count, compressed);
         } finally {
-          r.unlock();
+          Secp256k1Metrics.record(Op.RECOVER_BATCH, start);
+          releaseContext(context);
         }
+    }
 
-        byte[] pubArr = retByteArray[0];
-
-        int pubLen = (byte) new BigInteger(new byte[] { retByteArray[1][0] }).intValue() & 0xFF;
-        int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
-
-        assertEquals(pubArr.length, pubLen, "Got bad pubkey length.");
-
-        assertEquals(retVal, 1, "Failed return value check.");
+    /**
+     * libsecp256k1 Compute the Ethereum address of a secret key, the last 20 bytes of
+     * the Keccak-256 of its uncompressed public key, in a single native call.
+     *
+     * @param seckey ECDSA Secret key, 32 bytes
+     *
+     * Return values
+     * @param address 20-byte address, empty if seckey is invalid
+     */
+    public static byte[] computeAddress(byte[] seckey) {
+        Preconditions.checkArgument(seckey.length == 32);
 
-        return pubArr;
+        return address(seckey, 0);
     }
 
     /**
-     * libsecp256k1 PubKey Tweak-Mul - Tweak pubkey by multiplying to it
+     * libsecp256k1 Compute the Ethereum address of a serialized public key.
      *
-     * @param tweak some bytes to tweak with
-     * @param pubkey 32-byte seckey
+     * @param pubkey ECDSA Public key, 33 or 65 bytes
+     *
+     * Return values
+     * @param address 20-byte address, empty if pubkey is invalid
      */
-    public static byte[] pubKeyTweakMul(byte[] pubkey, byte[] tweak) throws AssertFailException{
+    public static byte[] pubkeyToAddress(byte[] pubkey) {
         Preconditions.checkArgument(pubkey.length == 33 || pubkey.length == 65);
 
-        ByteBuffer byteBuff = nativeECDSABuffer.get();
-        if (byteBuff == null || byteBuff.capacity() < pubkey.length + tweak.length) {
-            byteBuff = ByteBuffer.allocateDirect(pubkey.length + tweak.length);
-            byteBuff.order(ByteOrder.nativeOrder());
-            nativeECDSABuffer.set(byteBuff);
-        }
-        byteBuff.rewind();
-        byteBuff.put(pubkey);
-        byteBuff.put(tweak);
+        return address(pubkey, pubkey.length);
+    }
 
-        byte[][] retByteArray;
-        r.lock();
+    private static byte[] address(byte[] key, int pubLen) {
+        ByteBuffer byteBuff = buffers.acquire(key.length + 20 + 1);
         try {
-          retByteArray = secp256k1_pubkey_tweak_mul(byteBuff,Secp256k1Context.getContext(), pubkey.length);
+            byteBuff.rewind();
+            byteBuff.put(key);
+
+            ByteBuffer outBuff = byteBuff.duplicate();
+            outBuff.position(key.length);
+            outBuff = outBuff.slice();
+
+            if (computeAddressBatch(byteBuff, 1, pubLen, outBuff) == 0) {
+                return new byte[0];
+            }
+            byte[] addressArr = new byte[20];
+            outBuff.get(addressArr);
+            return addressArr;
         } finally {
-          r.unlock();
+            buffers.release(byteBuff);
         }
+    }
 
-        byte[] pubArr = retByteArray[0];
-
-        int pubLen = (byte) new BigInteger(new byte[] { retByteArray[1][0] }).intValue() & 0xFF;
-        int retVal = new BigInteger(new byte[] { retByteArray[1][1] }).intValue();
-
-        assertEquals(pubArr.length, pubLen, "Got bad pubkey length.");
-
-        assertEquals(retVal, 1, "Failed return value check.");
+    /**
+     * libsecp256k1 Compute the Ethereum addresses of a batch of secret or public keys
+     * in a single native call, without a public key or a hash going through Java.
+     *
+     * @param input Direct buffer holding count 32-byte secret keys if pubLen is 0,
+     *              count public keys of pubLen bytes otherwise
+     * @param count Number of keys
+     * @param pubLen 0 for secret keys, else the length of each public key, 33 or 65 bytes
+     * @param output Direct buffer receiving count 20-byte addresses
+     *               followed by count status bytes (1 if computed, 0 if the key is invalid)
+     *
+     * Return values
+     * @param computed number of addresses successfully computed
+     */
+    public static int computeAddressBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output) {
+        Preconditions.checkArgument(pubLen == 0 || pubLen == 33 || pubLen == 65);
+        Preconditions.checkArgument(input.isDirect() && output.isDirect() && count >= 0);
+        Preconditions.checkArgument((long) (pubLen == 0 ? 32 : pubLen) * count <= input.capacity());
+        Preconditions.checkArgument(21L * count <= output.capacity());
+
+        if (backend != null) {
+            return backend.computeAddressBatch(input, count, pubLen, output);
+        }
 
-        return pubArr;
+        // Secret keys are multiplied by the generator, which needs the signing context
+        long context = pubLen == 0 ? acquireSigningContext() : acquireContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ec_address_batch(input, output, context, count, pubLen);
+        } finally {
+          Secp256k1Metrics.record(Op.ADDRESS_BATCH, start);
+          releaseContext(context);
+        }
     }
 
     /**
-     * libsecp256k1 create ECDH secret - constant time ECDH calculation
+     * libsecp256k1 Hash an Ethereum message with Keccak-256 and sign the digest with a
+     * recoverable signature in the same native call, so the message is neither hashed
+     * nor copied on the Java side.
      *
-     * @param seckey byte array of secret key used in exponentiaion
-     * @param pubkey byte array of public key used in exponentiaion
+     * @param input Direct buffer holding the 32-byte secret key followed by the message
+     * @param msgLen Length of the message in bytes
+     * @param personal true to hash the message with the personal_sign prefix
+     *                 "\x19Ethereum Signed Message:\n" and its decimal length (EIP-191)
+     * @param output Direct buffer receiving the 65-byte compact signature r || s || recid
+     *
+     * Return values
+     * @param status 1 if the signature was created, 0 otherwise
      */
-    public static byte[] createECDHSecret(byte[] seckey, byte[] pubkey) throws AssertFailException{
-        Preconditions.checkArgument(seckey.length <= 32 && pubkey.length <= 65);
+    public static int signMessage(ByteBuffer input, int msgLen, boolean personal, ByteBuffer output) {
+        Preconditions.checkArgument(input.isDirect() && msgLen >= 0 && 32L + msgLen <= input.capacity());
+        Preconditions.checkArgument(output.isDirect() && output.capacity() >= 65);
 
-        ByteBuffer byteBuff = nativeECDSABuffer.get();
-        if (byteBuff == null || byteBuff.capacity() < 32 + pubkey.length) {
-            byteBuff = ByteBuffer.allocateDirect(32 + pubkey.length);
-            byteBuff.order(ByteOrder.nativeOrder());
-            nativeECDSABuffer.set(byteBuff);
+        if (backend != null) {
+            return backend.signMessage(input, msgLen, personal, output);
         }
-        byteBuff.rewind();
-        byteBuff.put(seckey);
-        byteBuff.put(pubkey);
 
-        byte[][] retByteArray;
-        r.lock();
+        long context = acquireSigningContext();
+        long start = Secp256k1Metrics.start();
         try {
-          retByteArray = secp256k1_ecdh(byteBuff, Secp256k1Context.getContext(), pubkey.length);
+          return secp256k1_ecdsa_sign_message(input, output, context, msgLen, personal);
         } finally {
-          r.unlock();
+          Secp256k1Metrics.record(Op.SIGN_MESSAGE, start);
+          releaseContext(context);
         }
+    }
 
-        byte[] resArr = retByteArray[0];
-        int retVal = new BigInteger(new byte[] { retByteArray[1][0] }).intValue();
+    /**
+     * libsecp256k1 Hash an Ethereum message with Keccak-256 and verify a signature of the
+     * digest in the same native call. Like verify(), only lower-S signatures are valid.
+     *
+     * @param input Direct buffer holding the 65-byte signature r || s || v (v is ignored),
+     *              the public key and the message
+     * @param msgLen Length of the message in bytes
+     * @param pubLen Length of the public key, 33 or 65
+     * @param personal true to hash the message with the personal_sign prefix (EIP-191)
+     *
+     * Return values
+     * @param status 1 if the signature is valid, 0 otherwise
+     */
+    public static int verifyMessage(ByteBuffer input, int msgLen, int pubLen, boolean personal) {
+        Preconditions.checkArgument(pubLen == 33 || pubLen == 65);
+        Preconditions.checkArgument(input.isDirect() && msgLen >= 0 && 65L + pubLen + msgLen <= input.capacity());
 
-        assertEquals(resArr.length, 32, "Got bad result length.");
-        assertEquals(retVal, 1, "Failed return value check.");
+        if (backend != null) {
+            return backend.verifyMessage(input, msgLen, pubLen, personal);
+        }
 
-        return resArr;
+        long context = acquireContext();
+        long start = Secp256k1Metrics.start();
+        try {
+          return secp256k1_ecdsa_verify_message(input, context, msgLen, pubLen, personal);
+        } finally {
+          Secp256k1Metrics.record(Op.VERIFY_MESSAGE, start);
+          releaseContext(context);
+        }
     }
 
     /**
@@ -400,20 +1696,25 @@ public class NativeSecp256k1 {
     public static synchronized boolean randomize(byte[] seed) throws AssertFailException{
         Preconditions.checkArgument(seed.length == 32 || seed == null);
 
-        ByteBuffer byteBuff = nativeECDSABuffer.get();
-        if (byteBuff == null || byteBuff.capacity() < seed.length) {
-            byteBuff = ByteBuffer.allocateDirect(seed.length);
-            byteBuff.order(ByteOrder.nativeOrder());
-            nativeECDSABuffer.set(byteBuff);
+        if (backend != null) {
+            return backend.randomize(seed);
         }
-        byteBuff.rewind();
-        byteBuff.put(seed);
 
-        w.lock();
+        ByteBuffer byteBuff = buffers.acquire(seed.length);
         try {
-          return secp256k1_context_randomize(byteBuff, Secp256k1Context.getContext()) == 1;
+            byteBuff.rewind();
+            byteBuff.put(seed);
+
+            lock(w, true);
+            long start = Secp256k1Metrics.start();
+            try {
+              return secp256k1_context_randomize(byteBuff, Secp256k1Context.getContext()) == 1;
+            } finally {
+              Secp256k1Metrics.record(Op.RANDOMIZE, start);
+              w.unlock();
+            }
         } finally {
-          w.unlock();
+            buffers.release(byteBuff);
         }
     }
 
@@ -423,24 +1724,68 @@ public class NativeSecp256k1 {
 
     private static native byte[][] secp256k1_privkey_tweak_add(ByteBuffer byteBuff, long context);
 
+    private static native int secp256k1_privkey_tweak_add_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context);
+
     private static native byte[][] secp256k1_privkey_tweak_mul(ByteBuffer byteBuff, long context);
 
+    private static native int secp256k1_privkey_tweak_mul_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context);
+
     private static native byte[][] secp256k1_pubkey_tweak_add(ByteBuffer byteBuff, long context, int pubLen);
 
+    private static native int secp256k1_pubkey_tweak_add_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int pubLen, boolean compressed);
+
     private static native byte[][] secp256k1_pubkey_tweak_mul(ByteBuffer byteBuff, long context, int pubLen);
 
+    private static native int secp256k1_pubkey_tweak_mul_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int pubLen, boolean compressed);
+
+    private static native int secp256k1_privkey_tweak_add_batch(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int count, int pubLen);
+
+    private static native int secp256k1_pubkey_tweak_add_batch(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int count, int pubLen, int outLen);
+
     private static native void secp256k1_destroy_context(long context);
 
     private static native int secp256k1_ecdsa_verify(ByteBuffer byteBuff, long context, int sigLen, int pubLen);
 
+    private static native int secp256k1_ecdsa_verify_compact(ByteBuffer byteBuff, long context, int pubLen);
+
+    private static native byte[] secp256k1_ecdsa_verify_batch(ByteBuffer byteBuff, long context, int count, int[] sigOffsets, int[] sigLens, int[] pubOffsets, int[] pubLens);
+
+    private static native int secp256k1_ecdsa_verify_parsed(ByteBuffer byteBuff, long context, int sigLen);
+
     private static native byte[][] secp256k1_ecdsa_sign(ByteBuffer byteBuff, long context);
 
+    private static native int secp256k1_ecdsa_sign_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context);
+
+    private static native int secp256k1_ecdsa_sign_compact_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context);
+
+    private static native int secp256k1_ecdsa_sign_batch(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int count, boolean sharedKey);
+
     private static native int secp256k1_ec_seckey_verify(ByteBuffer byteBuff, long context);
 
     private static native byte[][] secp256k1_ec_pubkey_create(ByteBuffer byteBuff, long context);
 
-    private static native byte[][] secp256k1_ec_pubkey_parse(ByteBuffer byteBuff, long context, int inputLen);
+    private static native int secp256k1_ec_pubkey_create_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context, boolean compressed);
+
+    private static native int secp256k1_ec_pubkey_parse(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int inputLen);
+
+    private static native int secp256k1_ec_pubkey_serialize_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int inputLen, boolean compressed);
 
     private static native byte[][] secp256k1_ecdh(ByteBuffer byteBuff, long context, int inputLen);
 
+    private static native int secp256k1_ecdh_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int inputLen);
+
+    private static native int secp256k1_ecdh_batch(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int count, int pubLen);
+
+    private static native int secp256k1_ecdsa_sign_recoverable_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context);
+
+    private static native int secp256k1_ecdsa_recover_into(ByteBuffer byteBuff, ByteBuffer outBuff, long context, boolean compressed);
+
+    private static native int secp256k1_ecdsa_recover_batch(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int count, boolean compressed);
+
+    private static native int secp256k1_ec_address_batch(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int count, int pubLen);
+
+    private static native int secp256k1_ecdsa_sign_message(ByteBuffer byteBuff, ByteBuffer outBuff, long context, int msgLen, boolean personal);
+
+    private static native int secp256k1_ecdsa_verify_message(ByteBuffer byteBuff, long context, int msgLen, int pubLen, boolean personal);
+
 }
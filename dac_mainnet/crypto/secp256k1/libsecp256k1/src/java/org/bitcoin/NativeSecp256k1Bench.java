@@ -0,0 +1,361 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * <p>JMH benchmarks of the NativeSecp256k1 operations as Java callers see them,
+ * JNI crossing, buffer packing and context locking included.</p>
+ *
+ * <p>Each operation is measured through its byte[] overload, which packs into
+ * the thread-local buffer, and where one exists through its ByteBuffer overload,
+ * which does not allocate. The context param compares the global context under
+ * the read lock with a context pool, the engine param the JNI glue with the
+ * java.lang.foreign backend and the pure Java engine (neither has pooled
+ * contexts, so their pool runs equal global). The ffm runs need the class built
+ * by `make .stamp-java-ffm` and -jvmArgsAppend --enable-native-access=ALL-UNNAMED
+ * in JAVA_BENCH_ARGS, otherwise they fall back to the Java engine. Run through
+ * `make bench-java`, which sweeps the thread count and reports the allocation
+ * rate with the gc profiler:</p>
+ *
+ * <pre>
+ * java -Djava.library.path=.libs -cp ... org.openjdk.jmh.Main NativeSecp256k1Bench -t 4 -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeSecp256k1Bench {
+
+    private static final int BATCH_SIZE = 64;
+    private static final int MESSAGE_SIZE = 100;
+
+    /**
+     * Keys, hashes and signatures shared by all benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Keys {
+
+        /** A context pool can only be installed once per JVM, hence the fork per param. */
+        @Param({"global", "pool"})
+        public String context;
+
+        /** The engine is chosen when the library loads, which happens in this setup in each fork. */
+        @Param({"jni", "ffm", "java"})
+        public String engine;
+
+        byte[] data;
+        byte[] sec;
+        byte[] tweak;
+        byte[] pub;
+        byte[] compressedPub;
+        byte[] parsedPub;
+        byte[] sig;
+        byte[] compactSig;
+        byte[] recoverableSig;
+        byte[][] batchData;
+        byte[][] batchSigs;
+        byte[][] batchPubs;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            System.setProperty(Secp256k1Context.ENGINE_PROPERTY, engine);
+            if ("pool".equals(context) && Secp256k1Context.isEnabled()) {
+                NativeSecp256k1.useContextPool(new Secp256k1ContextPool(Runtime.getRuntime().availableProcessors()));
+            }
+
+            data = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+            sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+            tweak = BaseEncoding.base16().lowerCase().decode("3982F19BEF1615BCCFBB05E321C10E1D4CBA3DF0E841C2E41EEB6016347653C3".toLowerCase());
+            pub = NativeSecp256k1.computePubkey(sec);
+            compressedPub = new byte[33];
+            compressedPub[0] = (byte) (2 + (pub[64] & 1));
+            System.arraycopy(pub, 1, compressedPub, 1, 32);
+            parsedPub = NativeSecp256k1.parsePubkey(pub);
+            sig = NativeSecp256k1.sign(data, sec);
+            compactSig = NativeSecp256k1.signCompact(data, sec);
+            recoverableSig = NativeSecp256k1.signRecoverable(data, sec);
+
+            batchData = new byte[BATCH_SIZE][];
+            batchSigs = new byte[BATCH_SIZE][];
+            batchPubs = new byte[BATCH_SIZE][];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batchData[i] = data;
+                batchSigs[i] = sig;
+                batchPubs[i] = pub;
+            }
+        }
+    }
+
+    /**
+     * Direct buffers owned by one benchmark thread, packed once so that the
+     * ByteBuffer benchmarks measure the native call alone.
+     */
+    @State(Scope.Thread)
+    public static class Buffers {
+
+        ByteBuffer signInput;
+        ByteBuffer signBatchInput;
+        ByteBuffer compactVerifyInput;
+        ByteBuffer tweakInput;
+        ByteBuffer pubTweakInput;
+        ByteBuffer ecdhInput;
+        ByteBuffer ecdhBatchInput;
+        ByteBuffer recoverInput;
+        ByteBuffer recoverBatchInput;
+        ByteBuffer addressBatchInput;
+        ByteBuffer messageSignInput;
+        ByteBuffer messageVerifyInput;
+        ByteBuffer output;
+
+        @Setup(Level.Trial)
+        public void setup(Keys keys) {
+            signInput = allocate(32 + 32).put(keys.data).put(keys.sec);
+            signBatchInput = allocate(32 * BATCH_SIZE + 32);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                signBatchInput.put(keys.data);
+            }
+            signBatchInput.put(keys.sec);
+            compactVerifyInput = allocate(32 + 64 + 33).put(keys.data).put(keys.compactSig).put(keys.compressedPub);
+            tweakInput = allocate(32 + 32).put(keys.sec).put(keys.tweak);
+            pubTweakInput = allocate(65 + 32).put(keys.pub).put(keys.tweak);
+            ecdhInput = allocate(32 + 33).put(keys.sec).put(keys.compressedPub);
+            ecdhBatchInput = allocate(32 + 33 * BATCH_SIZE).put(keys.sec);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                ecdhBatchInput.put(keys.compressedPub);
+            }
+            recoverInput = allocate(32 + 65).put(keys.data).put(keys.recoverableSig);
+            recoverBatchInput = allocate((32 + 65) * BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                recoverBatchInput.put(keys.data).put(keys.recoverableSig);
+            }
+            addressBatchInput = allocate(65 * BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                addressBatchInput.put(keys.pub);
+            }
+            output = allocate(66 * BATCH_SIZE);
+            // A typical personal_sign payload
+            byte[] message = new byte[MESSAGE_SIZE];
+            messageSignInput = allocate(32 + MESSAGE_SIZE).put(keys.sec).put(message);
+            NativeSecp256k1.signMessage(messageSignInput, MESSAGE_SIZE, true, output);
+            byte[] messageSig = new byte[65];
+            output.get(messageSig);
+            messageVerifyInput = allocate(65 + 65 + MESSAGE_SIZE).put(messageSig).put(keys.pub).put(message);
+        }
+
+        private static ByteBuffer allocate(int size) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        }
+    }
+
+    @Benchmark
+    public boolean verify(Keys keys) throws Exception {
+        return NativeSecp256k1.verify(keys.data, keys.sig, keys.pub);
+    }
+
+    @Benchmark
+    public boolean verifyCompact(Keys keys) {
+        return NativeSecp256k1.verifyCompact(keys.data, keys.compactSig, keys.pub);
+    }
+
+    @Benchmark
+    public int verifyCompactDirect(Buffers buffers) {
+        return NativeSecp256k1.verifyCompact(buffers.compactVerifyInput, 33);
+    }
+
+    @Benchmark
+    public boolean verifyParsed(Keys keys) {
+        return NativeSecp256k1.verifyParsed(keys.data, keys.sig, keys.parsedPub);
+    }
+
+    @Benchmark
+    public boolean[] verifyBatch(Keys keys) {
+        return NativeSecp256k1.verifyBatch(keys.batchData, keys.batchSigs, keys.batchPubs);
+    }
+
+    @Benchmark
+    public byte[] parsePubkey(Keys keys) {
+        return NativeSecp256k1.parsePubkey(keys.pub);
+    }
+
+    @Benchmark
+    public byte[] sign(Keys keys) throws Exception {
+        return NativeSecp256k1.sign(keys.data, keys.sec);
+    }
+
+    @Benchmark
+    public int signDirect(Buffers buffers) {
+        return NativeSecp256k1.sign(buffers.signInput, buffers.output);
+    }
+
+    @Benchmark
+    public byte[] signCompact(Keys keys) {
+        return NativeSecp256k1.signCompact(keys.data, keys.sec);
+    }
+
+    @Benchmark
+    public int signCompactDirect(Buffers buffers) {
+        return NativeSecp256k1.signCompact(buffers.signInput, buffers.output);
+    }
+
+    @Benchmark
+    public int signBatch(Buffers buffers) {
+        return NativeSecp256k1.signBatch(buffers.signBatchInput, BATCH_SIZE, true, buffers.output);
+    }
+
+    @Benchmark
+    public boolean secKeyVerify(Keys keys) {
+        return NativeSecp256k1.secKeyVerify(keys.sec);
+    }
+
+    @Benchmark
+    public byte[] computePubkey(Keys keys) throws Exception {
+        return NativeSecp256k1.computePubkey(keys.sec);
+    }
+
+    @Benchmark
+    public int computePubkeyDirect(Buffers buffers) {
+        return NativeSecp256k1.computePubkey(buffers.tweakInput, buffers.output);
+    }
+
+    @Benchmark
+    public byte[] privKeyTweakAdd(Keys keys) throws Exception {
+        return NativeSecp256k1.privKeyTweakAdd(keys.sec, keys.tweak);
+    }
+
+    @Benchmark
+    public int privKeyTweakAddDirect(Buffers buffers) {
+        return NativeSecp256k1.privKeyTweakAdd(buffers.tweakInput, buffers.output);
+    }
+
+    @Benchmark
+    public byte[] privKeyTweakMul(Keys keys) throws Exception {
+        return NativeSecp256k1.privKeyTweakMul(keys.sec, keys.tweak);
+    }
+
+    @Benchmark
+    public int privKeyTweakMulDirect(Buffers buffers) {
+        return NativeSecp256k1.privKeyTweakMul(buffers.tweakInput, buffers.output);
+    }
+
+    @Benchmark
+    public byte[] pubKeyTweakAdd(Keys keys) throws Exception {
+        return NativeSecp256k1.pubKeyTweakAdd(keys.pub, keys.tweak);
+    }
+
+    @Benchmark
+    public int pubKeyTweakAddDirect(Buffers buffers) {
+        return NativeSecp256k1.pubKeyTweakAdd(buffers.pubTweakInput, 65, buffers.output);
+    }
+
+    @Benchmark
+    public byte[] pubKeyTweakMul(Keys keys) throws Exception {
+        return NativeSecp256k1.pubKeyTweakMul(keys.pub, keys.tweak);
+    }
+
+    @Benchmark
+    public int pubKeyTweakMulDirect(Buffers buffers) {
+        return NativeSecp256k1.pubKeyTweakMul(buffers.pubTweakInput, 65, buffers.output);
+    }
+
+    @Benchmark
+    public byte[] createECDHSecret(Keys keys) throws Exception {
+        return NativeSecp256k1.createECDHSecret(keys.sec, keys.compressedPub);
+    }
+
+    @Benchmark
+    public int createECDHSecretDirect(Buffers buffers) {
+        return NativeSecp256k1.createECDHSecret(buffers.ecdhInput, 33, buffers.output);
+    }
+
+    @Benchmark
+    public int createECDHSecretBatch(Buffers buffers) {
+        return NativeSecp256k1.createECDHSecretBatch(buffers.ecdhBatchInput, BATCH_SIZE, 33, buffers.output);
+    }
+
+    @Benchmark
+    public byte[] signRecoverable(Keys keys) {
+        return NativeSecp256k1.signRecoverable(keys.data, keys.sec);
+    }
+
+    @Benchmark
+    public int signRecoverableDirect(Buffers buffers) {
+        return NativeSecp256k1.signRecoverable(buffers.signInput, buffers.output);
+    }
+
+    @Benchmark
+    public byte[] recoverPubkey(Keys keys) {
+        return NativeSecp256k1.recoverPubkey(keys.data, keys.recoverableSig);
+    }
+
+    @Benchmark
+    public int recoverPubkeyDirect(Buffers buffers) {
+        return NativeSecp256k1.recoverPubkey(buffers.recoverInput, buffers.output);
+    }
+
+    @Benchmark
+    public int recoverPubkeyBatch(Buffers buffers) {
+        return NativeSecp256k1.recoverPubkeyBatch(buffers.recoverBatchInput, BATCH_SIZE, buffers.output);
+    }
+
+    @Benchmark
+    public byte[] pubkeyToAddress(Keys keys) {
+        return NativeSecp256k1.pubkeyToAddress(keys.pub);
+    }
+
+    @Benchmark
+    public int computeAddressBatch(Buffers buffers) {
+        return NativeSecp256k1.computeAddressBatch(buffers.addressBatchInput, BATCH_SIZE, 65, buffers.output);
+    }
+
+    @Benchmark
+    public int signMessage(Buffers buffers) {
+        return NativeSecp256k1.signMessage(buffers.messageSignInput, MESSAGE_SIZE, true, buffers.output);
+    }
+
+    @Benchmark
+    public int verifyMessage(Buffers buffers) {
+        return NativeSecp256k1.verifyMessage(buffers.messageVerifyInput, MESSAGE_SIZE, 65, true);
+    }
+
+    @Benchmark
+    public boolean randomize(Keys keys) throws Exception {
+        return NativeSecp256k1.randomize(keys.tweak);
+    }
+}
@@ -1,9 +1,22 @@
 package org.bitcoin;
 
 import com.google.common.io.BaseEncoding;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.math.BigInteger;
-import javax.xml.bind.DatatypeConverter;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import static org.bitcoin.NativeSecp256k1Util.*;
 
 /**
@@ -39,6 +52,77 @@ public class NativeSecp256k1Test {
         assertEquals( result, false , "testVerifyNeg");
     }
 
+    /**
+      * This tests verifyBatch() for a valid and a non-valid signature
+      */
+    public static void testVerifyBatch() throws AssertFailException{
+        byte[] dataPos = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+        byte[] dataNeg = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A91".toLowerCase());
+        byte[] sig = BaseEncoding.base16().lowerCase().decode("3044022079BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F817980220294F14E883B3F525B5367756C2A11EF6CF84B730B36C17CB0C56F0AAB2C98589".toLowerCase());
+        byte[] pub = BaseEncoding.base16().lowerCase().decode("040A629506E1B65CD9D2E0BA9C75DF9C4FED0DB16DC9625ED14397F0AFC836FAE595DC53F8B0EFE61E703075BD9B143BAC75EC0E19F82A2208CAEB32BE53414C40".toLowerCase());
+
+        boolean[] result = NativeSecp256k1.verifyBatch( new byte[][] { dataPos, dataNeg, dataPos }, new byte[][] { sig, sig, sig }, new byte[][] { pub, pub, pub });
+        assertEquals( Arrays.toString(result), "[true, false, true]" , "testVerifyBatch");
+    }
+
+    /**
+      * This tests verifyParsed() through the parsed public key cache
+      */
+    public static void testPubkeyCache() throws AssertFailException{
+        byte[] data = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+        byte[] dataNeg = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A91".toLowerCase());
+        byte[] sig = BaseEncoding.base16().lowerCase().decode("3044022079BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F817980220294F14E883B3F525B5367756C2A11EF6CF84B730B36C17CB0C56F0AAB2C98589".toLowerCase());
+        byte[] pub = BaseEncoding.base16().lowerCase().decode("040A629506E1B65CD9D2E0BA9C75DF9C4FED0DB16DC9625ED14397F0AFC836FAE595DC53F8B0EFE61E703075BD9B143BAC75EC0E19F82A2208CAEB32BE53414C40".toLowerCase());
+        byte[] badPub = BaseEncoding.base16().lowerCase().decode("050A629506E1B65CD9D2E0BA9C75DF9C4FED0DB16DC9625ED14397F0AFC836FAE595DC53F8B0EFE61E703075BD9B143BAC75EC0E19F82A2208CAEB32BE53414C40".toLowerCase());
+
+        Secp256k1PubkeyCache cache = new Secp256k1PubkeyCache(16);
+        assertEquals( cache.verify(data, sig, pub), true, "testPubkeyCachePos");
+        assertEquals( cache.verify(dataNeg, sig, pub), false, "testPubkeyCacheNeg");
+        assertEquals( cache.verify(data, sig, badPub), false, "testPubkeyCacheBadPub");
+        assertEquals( cache.stats().hitCount() == 1 && cache.size() == 1, true, "testPubkeyCacheHit");
+
+        // Changing a returned key leaves the cached one intact
+        java.util.Arrays.fill(cache.get(pub), (byte) 0);
+        assertEquals( cache.verify(data, sig, pub), true, "testPubkeyCacheCopy");
+    }
+
+    /**
+      * This tests that the signature cache only keeps valid signatures and batches the misses
+      */
+    public static void testSignatureCache() throws AssertFailException{
+        byte[] data = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+        byte[] dataNeg = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A91".toLowerCase());
+        byte[] sig = BaseEncoding.base16().lowerCase().decode("3044022079BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F817980220294F14E883B3F525B5367756C2A11EF6CF84B730B36C17CB0C56F0AAB2C98589".toLowerCase());
+        byte[] pub = BaseEncoding.base16().lowerCase().decode("040A629506E1B65CD9D2E0BA9C75DF9C4FED0DB16DC9625ED14397F0AFC836FAE595DC53F8B0EFE61E703075BD9B143BAC75EC0E19F82A2208CAEB32BE53414C40".toLowerCase());
+
+        Secp256k1SignatureCache cache = new Secp256k1SignatureCache(1024);
+        assertEquals( cache.verify(data, sig, pub), true, "testSignatureCachePos");
+        assertEquals( cache.verify(data, sig, pub), true, "testSignatureCacheHit");
+        assertEquals( cache.verify(dataNeg, sig, pub), false, "testSignatureCacheNeg");
+        assertEquals( cache.verify(dataNeg, sig, pub), false, "testSignatureCacheNegNotCached");
+        assertEquals( cache.stats().hitCount() == 1 && cache.stats().missCount() == 3 && cache.size() == 1, true, "testSignatureCacheStats");
+
+        boolean[] results = cache.verifyBatch(new byte[][] { data, dataNeg, data }, new byte[][] { sig, sig, sig }, new byte[][] { pub, pub, pub });
+        assertEquals( results[0] && !results[1] && results[2], true, "testSignatureCacheBatch");
+        assertEquals( cache.stats().hitCount() == 3, true, "testSignatureCacheBatchHits");
+
+        // Fill a tiny cache well past its size with distinct valid signatures
+        byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+        byte[] signer = NativeSecp256k1.computePubkey(sec);
+        Secp256k1SignatureCache small = new Secp256k1SignatureCache(8);
+        boolean valid = true;
+        for (int i = 0; i < 64; i++) {
+            byte[] hash = data.clone();
+            hash[0] = (byte) i;
+            valid &= small.verify(hash, NativeSecp256k1.sign(hash, sec), signer);
+        }
+        assertEquals( valid, true, "testSignatureCacheFill");
+        assertEquals( small.size() <= 8 && small.stats().evictionCount() > 0, true, "testSignatureCacheEviction");
+
+        small.invalidateAll();
+        assertEquals( small.size() == 0, true, "testSignatureCacheInvalidate");
+    }
+
     /**
       * This tests secret key verify() for a valid secretkey
       */
@@ -70,7 +154,7 @@ public class NativeSecp256k1Test {
         byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
 
         byte[] resultArr = NativeSecp256k1.computePubkey( sec);
-        String pubkeyString = javax.xml.bind.DatatypeConverter.printHexBinary(resultArr);
+        String pubkeyString = BaseEncoding.base16().encode(resultArr);
         assertEquals( pubkeyString , "04C591A8FF19AC9C4E4E5793673B83123437E975285E7B442F4EE2654DFFCA5E2D2103ED494718C697AC9AEBCFD19612E224DB46661011863ED2FC54E71861E2A6" , "testPubKeyCreatePos");
     }
 
@@ -81,7 +165,7 @@ public class NativeSecp256k1Test {
        byte[] sec = BaseEncoding.base16().lowerCase().decode("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF".toLowerCase());
 
        byte[] resultArr = NativeSecp256k1.computePubkey( sec);
-       String pubkeyString = javax.xml.bind.DatatypeConverter.printHexBinary(resultArr);
+       String pubkeyString = BaseEncoding.base16().encode(resultArr);
        assertEquals( pubkeyString, "" , "testPubKeyCreateNeg");
     }
 
@@ -94,7 +178,7 @@ public class NativeSecp256k1Test {
         byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
 
         byte[] resultArr = NativeSecp256k1.sign(data, sec);
-        String sigString = javax.xml.bind.DatatypeConverter.printHexBinary(resultArr);
+        String sigString = BaseEncoding.base16().encode(resultArr);
         assertEquals( sigString, "30440220182A108E1448DC8F1FB467D06A0F3BB8EA0533584CB954EF8DA112F1D60E39A202201C66F36DA211C087F3AF88B50EDF4F9BDAA6CF5FD6817E74DCA34DB12390C6E9" , "testSignPos");
     }
 
@@ -106,10 +190,37 @@ public class NativeSecp256k1Test {
         byte[] sec = BaseEncoding.base16().lowerCase().decode("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF".toLowerCase());
 
         byte[] resultArr = NativeSecp256k1.sign(data, sec);
-        String sigString = javax.xml.bind.DatatypeConverter.printHexBinary(resultArr);
+        String sigString = BaseEncoding.base16().encode(resultArr);
         assertEquals( sigString, "" , "testSignNeg");
     }
 
+    /**
+      * This tests signBatch() with a shared secretkey
+      */
+    public static void testSignBatch() throws AssertFailException{
+        byte[] data = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+        byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+        byte[] badSec = BaseEncoding.base16().lowerCase().decode("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF".toLowerCase());
+
+        ByteBuffer input = ByteBuffer.allocateDirect(32 * 2 + 32 * 2);
+        input.put(data).put(data).put(sec);
+        ByteBuffer output = ByteBuffer.allocateDirect(65 * 2);
+
+        int signed = NativeSecp256k1.signBatch(input, 2, true, output);
+        assertEquals( signed, 2, "testSignBatch count");
+
+        byte[] sigArr = new byte[64];
+        output.get(sigArr);
+        String sigString = BaseEncoding.base16().encode(sigArr);
+        assertEquals( sigString, "182A108E1448DC8F1FB467D06A0F3BB8EA0533584CB954EF8DA112F1D60E39A21C66F36DA211C087F3AF88B50EDF4F9BDAA6CF5FD6817E74DCA34DB12390C6E9" , "testSignBatch");
+
+        input.clear();
+        input.put(data).put(data).put(sec).put(badSec);
+        signed = NativeSecp256k1.signBatch(input, 2, false, output);
+        assertEquals( signed, 1, "testSignBatch count");
+        assertEquals( output.get(128) == 1 && output.get(129) == 0, true, "testSignBatchNeg");
+    }
+
     /**
       * This tests private key tweak-add
       */
@@ -118,7 +229,7 @@ public class NativeSecp256k1Test {
         byte[] data = BaseEncoding.base16().lowerCase().decode("3982F19BEF1615BCCFBB05E321C10E1D4CBA3DF0E841C2E41EEB6016347653C3".toLowerCase()); //sha256hash of "tweak"
 
         byte[] resultArr = NativeSecp256k1.privKeyTweakAdd( sec , data );
-        String sigString = javax.xml.bind.DatatypeConverter.printHexBinary(resultArr);
+        String sigString = BaseEncoding.base16().encode(resultArr);
         assertEquals( sigString , "A168571E189E6F9A7E2D657A4B53AE99B909F7E712D1C23CED28093CD57C88F3" , "testPrivKeyAdd_1");
     }
 
@@ -130,7 +241,7 @@ public class NativeSecp256k1Test {
         byte[] data = BaseEncoding.base16().lowerCase().decode("3982F19BEF1615BCCFBB05E321C10E1D4CBA3DF0E841C2E41EEB6016347653C3".toLowerCase()); //sha256hash of "tweak"
 
         byte[] resultArr = NativeSecp256k1.privKeyTweakMul( sec , data );
-        String sigString = javax.xml.bind.DatatypeConverter.printHexBinary(resultArr);
+        String sigString = BaseEncoding.base16().encode(resultArr);
         assertEquals( sigString , "97F8184235F101550F3C71C927507651BD3F1CDB4A5A33B8986ACF0DEE20FFFC" , "testPrivKeyMul_1");
     }
 
@@ -142,7 +253,7 @@ public class NativeSecp256k1Test {
         byte[] data = BaseEncoding.base16().lowerCase().decode("3982F19BEF1615BCCFBB05E321C10E1D4CBA3DF0E841C2E41EEB6016347653C3".toLowerCase()); //sha256hash of "tweak"
 
         byte[] resultArr = NativeSecp256k1.pubKeyTweakAdd( pub , data );
-        String sigString = javax.xml.bind.DatatypeConverter.printHexBinary(resultArr);
+        String sigString = BaseEncoding.base16().encode(resultArr);
         assertEquals( sigString , "0411C6790F4B663CCE607BAAE08C43557EDC1A4D11D88DFCB3D841D0C6A941AF525A268E2A863C148555C48FB5FBA368E88718A46E205FABC3DBA2CCFFAB0796EF" , "testPrivKeyAdd_2");
     }
 
@@ -154,7 +265,7 @@ public class NativeSecp256k1Test {
         byte[] data = BaseEncoding.base16().lowerCase().decode("3982F19BEF1615BCCFBB05E321C10E1D4CBA3DF0E841C2E41EEB6016347653C3".toLowerCase()); //sha256hash of "tweak"
 
         byte[] resultArr = NativeSecp256k1.pubKeyTweakMul( pub , data );
-        String sigString = javax.xml.bind.DatatypeConverter.printHexBinary(resultArr);
+        String sigString = BaseEncoding.base16().encode(resultArr);
         assertEquals( sigString , "04E0FE6FE55EBCA626B98A807F6CAF654139E14E5E3698F01A9A658E21DC1D2791EC060D4F412A794D5370F672BC94B722640B5F76914151CFCA6E712CA48CC589" , "testPrivKeyMul_2");
     }
 
@@ -173,21 +284,629 @@ public class NativeSecp256k1Test {
         byte[] pub = BaseEncoding.base16().lowerCase().decode("040A629506E1B65CD9D2E0BA9C75DF9C4FED0DB16DC9625ED14397F0AFC836FAE595DC53F8B0EFE61E703075BD9B143BAC75EC0E19F82A2208CAEB32BE53414C40".toLowerCase());
 
         byte[] resultArr = NativeSecp256k1.createECDHSecret(sec, pub);
-        String ecdhString = javax.xml.bind.DatatypeConverter.printHexBinary(resultArr);
+        String ecdhString = BaseEncoding.base16().encode(resultArr);
         assertEquals( ecdhString, "2A2A67007A926E6594AF3EB564FC74005B37A9C8AEF2033C4552051B5C87F043" , "testCreateECDHSecret");
     }
 
-    public static void main(String[] args) throws AssertFailException{
+    /**
+      * This tests createECDHSecretBatch() with a valid and a non-valid public key
+      */
+    public static void testCreateECDHSecretBatch() throws AssertFailException{
+        byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+        byte[] pub = BaseEncoding.base16().lowerCase().decode("040A629506E1B65CD9D2E0BA9C75DF9C4FED0DB16DC9625ED14397F0AFC836FAE595DC53F8B0EFE61E703075BD9B143BAC75EC0E19F82A2208CAEB32BE53414C40".toLowerCase());
+
+        ByteBuffer input = ByteBuffer.allocateDirect(32 + 65 * 3);
+        input.put(sec).put(pub).put(new byte[65]).put(pub);
+        ByteBuffer output = ByteBuffer.allocateDirect(33 * 3);
+
+        int derived = NativeSecp256k1.createECDHSecretBatch(input, 3, 65, output);
+        assertEquals( derived, 2, "testCreateECDHSecretBatch count");
+        assertEquals( BaseEncoding.base16().encode(toArray(output, 32)), "2A2A67007A926E6594AF3EB564FC74005B37A9C8AEF2033C4552051B5C87F043" , "testCreateECDHSecretBatch");
+        assertEquals( output.get(96) == 1 && output.get(97) == 0 && output.get(98) == 1, true, "testCreateECDHSecretBatchNeg");
+    }
+
+    /**
+      * This tests compact signatures and compressed public keys
+      */
+    public static void testCompact() throws AssertFailException{
+        byte[] data = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+        byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+        byte[] pub = BaseEncoding.base16().lowerCase().decode("04C591A8FF19AC9C4E4E5793673B83123437E975285E7B442F4EE2654DFFCA5E2D2103ED494718C697AC9AEBCFD19612E224DB46661011863ED2FC54E71861E2A6".toLowerCase());
+
+        byte[] sig = NativeSecp256k1.signCompact(data, sec);
+        assertEquals( BaseEncoding.base16().encode(sig), "182A108E1448DC8F1FB467D06A0F3BB8EA0533584CB954EF8DA112F1D60E39A21C66F36DA211C087F3AF88B50EDF4F9BDAA6CF5FD6817E74DCA34DB12390C6E9" , "testSignCompact");
+
+        byte[] compressed = NativeSecp256k1.computePubkey(sec, true);
+        assertEquals( BaseEncoding.base16().encode(compressed), "02C591A8FF19AC9C4E4E5793673B83123437E975285E7B442F4EE2654DFFCA5E2D" , "testPubKeyCreateCompressed");
+        assertEquals( BaseEncoding.base16().encode(NativeSecp256k1.computePubkey(sec, false)), BaseEncoding.base16().encode(pub) , "testPubKeyCreateUncompressed");
+        assertEquals( BaseEncoding.base16().encode(NativeSecp256k1.serializePubkey(compressed, false)), BaseEncoding.base16().encode(pub) , "testSerializePubkey");
+        assertEquals( NativeSecp256k1.serializePubkey(new byte[33], true).length, 0 , "testSerializePubkeyNeg");
+
+        assertEquals( NativeSecp256k1.verifyCompact(data, sig, pub), true , "testVerifyCompact");
+        assertEquals( NativeSecp256k1.verifyCompact(data, sig, compressed), true , "testVerifyCompact compressed");
+        assertEquals( NativeSecp256k1.verifyCompact(data, NativeSecp256k1.signRecoverable(data, sec), compressed), true , "testVerifyCompact recoverable");
+
+        ByteBuffer input = ByteBuffer.allocateDirect(32 + 64 + 33);
+        input.put(data).put(sig).put(compressed);
+        assertEquals( NativeSecp256k1.verifyCompact(input, 33), 1 , "testVerifyCompactDirect");
+        input.put(0, (byte) (data[0] ^ 1));
+        assertEquals( NativeSecp256k1.verifyCompact(input, 33), 0 , "testVerifyCompactNeg");
+
+        input.clear();
+        input.put(data).put(sec);
+        assertEquals( NativeSecp256k1.signCompact(input, input), 64 , "testSignCompactDirect status");
+        assertEquals( BaseEncoding.base16().encode(toArray(input, 64)), BaseEncoding.base16().encode(sig) , "testSignCompactDirect");
+
+        // A high-S signature is rejected like verify() does
+        byte[] highS = sig.clone();
+        byte[] s = new BigInteger(1, Arrays.copyOfRange(sig, 32, 64)).negate().mod(new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141", 16)).toByteArray();
+        System.arraycopy(s, s.length - 32, highS, 32, 32);
+        assertEquals( NativeSecp256k1.verifyCompact(data, highS, pub), false , "testVerifyCompactHighS");
+    }
+
+    /**
+      * This tests the direct buffer overloads of sign(), computePubkey() and the tweaks
+      */
+    public static void testDirectBufferOverloads() throws AssertFailException{
+        byte[] data = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+        byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+        byte[] pub = BaseEncoding.base16().lowerCase().decode("040A629506E1B65CD9D2E0BA9C75DF9C4FED0DB16DC9625ED14397F0AFC836FAE595DC53F8B0EFE61E703075BD9B143BAC75EC0E19F82A2208CAEB32BE53414C40".toLowerCase());
+        byte[] tweak = BaseEncoding.base16().lowerCase().decode("3982F19BEF1615BCCFBB05E321C10E1D4CBA3DF0E841C2E41EEB6016347653C3".toLowerCase()); //sha256hash of "tweak"
+
+        ByteBuffer input = ByteBuffer.allocateDirect(65 + 32);
+        ByteBuffer output = ByteBuffer.allocateDirect(72);
+
+        input.put(data).put(sec);
+        int sigLen = NativeSecp256k1.sign(input, output);
+        assertEquals( BaseEncoding.base16().encode(toArray(output, sigLen)), "30440220182A108E1448DC8F1FB467D06A0F3BB8EA0533584CB954EF8DA112F1D60E39A202201C66F36DA211C087F3AF88B50EDF4F9BDAA6CF5FD6817E74DCA34DB12390C6E9" , "testSignDirect");
+
+        input.clear();
+        input.put(sec);
+        int pubLen = NativeSecp256k1.computePubkey(input, output);
+        assertEquals( BaseEncoding.base16().encode(toArray(output, pubLen)), "04C591A8FF19AC9C4E4E5793673B83123437E975285E7B442F4EE2654DFFCA5E2D2103ED494718C697AC9AEBCFD19612E224DB46661011863ED2FC54E71861E2A6" , "testPubKeyCreateDirect");
+
+        input.clear();
+        input.put(sec).put(tweak);
+        assertEquals( NativeSecp256k1.privKeyTweakAdd(input, input), 1, "testPrivKeyAddDirect status");
+        assertEquals( BaseEncoding.base16().encode(toArray(input, 32)), "A168571E189E6F9A7E2D657A4B53AE99B909F7E712D1C23CED28093CD57C88F3" , "testPrivKeyAddDirect");
+
+        input.clear();
+        input.put(pub).put(tweak);
+        pubLen = NativeSecp256k1.pubKeyTweakMul(input, pub.length, output);
+        assertEquals( BaseEncoding.base16().encode(toArray(output, pubLen)), "04E0FE6FE55EBCA626B98A807F6CAF654139E14E5E3698F01A9A658E21DC1D2791EC060D4F412A794D5370F672BC94B722640B5F76914151CFCA6E712CA48CC589" , "testPubKeyMulDirect");
+
+        input.clear();
+        input.put(pub).put(tweak);
+        pubLen = NativeSecp256k1.pubKeyTweakMul(input, pub.length, output, true);
+        assertEquals( BaseEncoding.base16().encode(toArray(output, pubLen)), "03E0FE6FE55EBCA626B98A807F6CAF654139E14E5E3698F01A9A658E21DC1D2791" , "testPubKeyMulDirectCompressed");
+
+        input.clear();
+        input.put(sec).put(pub);
+        assertEquals( NativeSecp256k1.createECDHSecret(input, pub.length, output), 1, "testCreateECDHSecretDirect status");
+        assertEquals( BaseEncoding.base16().encode(toArray(output, 32)), "2A2A67007A926E6594AF3EB564FC74005B37A9C8AEF2033C4552051B5C87F043" , "testCreateECDHSecretDirect");
+    }
+
+    private static byte[] toArray(ByteBuffer buffer, int length) {
+        byte[] result = new byte[length];
+        buffer.clear();
+        buffer.get(result);
+        return result;
+    }
+
+    /**
+      * This tests signRecoverable() and recoverPubkey() round trip
+      */
+    public static void testSignRecoverable() throws AssertFailException{
+        byte[] data = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+        byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+
+        byte[] resultArr = NativeSecp256k1.signRecoverable(data, sec);
+        String sigString = BaseEncoding.base16().encode(Arrays.copyOf(resultArr, 64));
+        assertEquals( sigString, "182A108E1448DC8F1FB467D06A0F3BB8EA0533584CB954EF8DA112F1D60E39A21C66F36DA211C087F3AF88B50EDF4F9BDAA6CF5FD6817E74DCA34DB12390C6E9" , "testSignRecoverable");
+
+        byte[] pubArr = NativeSecp256k1.recoverPubkey(data, resultArr);
+        String pubkeyString = BaseEncoding.base16().encode(pubArr);
+        assertEquals( pubkeyString , "04C591A8FF19AC9C4E4E5793673B83123437E975285E7B442F4EE2654DFFCA5E2D2103ED494718C697AC9AEBCFD19612E224DB46661011863ED2FC54E71861E2A6" , "testRecoverPubkey");
+
+        resultArr[64] += 27;
+        pubArr = NativeSecp256k1.recoverPubkey(data, resultArr);
+        assertEquals( BaseEncoding.base16().encode(pubArr), pubkeyString , "testRecoverPubkeyEthereumV");
+
+        pubArr = NativeSecp256k1.recoverPubkey(data, resultArr, true);
+        assertEquals( BaseEncoding.base16().encode(pubArr), "02C591A8FF19AC9C4E4E5793673B83123437E975285E7B442F4EE2654DFFCA5E2D" , "testRecoverPubkeyCompressed");
+
+        resultArr[64] = 4;
+        pubArr = NativeSecp256k1.recoverPubkey(data, resultArr);
+        assertEquals( BaseEncoding.base16().encode(pubArr), "" , "testRecoverPubkeyNeg");
+    }
+
+    /**
+      * This tests recoverPubkeyBatch() with a valid and a non-valid signature
+      */
+    public static void testRecoverPubkeyBatch() throws AssertFailException{
+        byte[] data = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+        byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+        byte[] sig = NativeSecp256k1.signRecoverable(data, sec);
+
+        ByteBuffer input = ByteBuffer.allocateDirect((32 + 65) * 2);
+        input.put(data).put(sig).put(data).put(new byte[65]);
+        ByteBuffer output = ByteBuffer.allocateDirect(66 * 2);
+
+        int recovered = NativeSecp256k1.recoverPubkeyBatch(input, 2, output);
+        assertEquals( recovered, 1, "testRecoverPubkeyBatch count");
+        assertEquals( BaseEncoding.base16().encode(toArray(output, 65)), "04C591A8FF19AC9C4E4E5793673B83123437E975285E7B442F4EE2654DFFCA5E2D2103ED494718C697AC9AEBCFD19612E224DB46661011863ED2FC54E71861E2A6" , "testRecoverPubkeyBatch");
+        assertEquals( output.get(130) == 1 && output.get(131) == 0, true, "testRecoverPubkeyBatchNeg");
+
+        recovered = NativeSecp256k1.recoverPubkeyBatch(input, 2, output, true);
+        assertEquals( recovered, 1, "testRecoverPubkeyBatchCompressed count");
+        assertEquals( BaseEncoding.base16().encode(toArray(output, 33)), "02C591A8FF19AC9C4E4E5793673B83123437E975285E7B442F4EE2654DFFCA5E2D" , "testRecoverPubkeyBatchCompressed");
+        assertEquals( output.get(66) == 1 && output.get(67) == 0, true, "testRecoverPubkeyBatchCompressedNeg");
+    }
+
+    /**
+      * This tests BIP32 derivation against test vector 1 of the BIP, and batch derived
+      * ranges against children derived one by one
+      */
+    public static void testExtendedKey() throws AssertFailException{
+        Secp256k1ExtendedKey master = Secp256k1ExtendedKey.fromSeed(BaseEncoding.base16().lowerCase().decode("000102030405060708090a0b0c0d0e0f"));
+        assertEquals( BaseEncoding.base16().encode(master.getPrivKey()), "E8F32E723DECF4051AEFAC8E2C93C9C5B214313817CDB01A1494B917C8436B35", "testExtendedKey master");
+        assertEquals( BaseEncoding.base16().encode(master.getChainCode()), "873DFF81C02F525623FD1FE5167EAC3A55A049DE3D314BB42EE227FFED37D508", "testExtendedKey master chain code");
+
+        Secp256k1ExtendedKey key = master.derive("m/0'/1/2h/2");
+        assertEquals( BaseEncoding.base16().encode(key.getPrivKey()), "0F479245FB19A38A1954C5C7C0EBAB2F9BDFD96A17563EF28A6A4B1A2A764EF4", "testExtendedKey m/0'/1/2'/2");
+        assertEquals( BaseEncoding.base16().encode(key.getPubKey()), "02E8445082A72F29B75CA48748A914DF60622A609CACFCE8ED0E35804560741D29", "testExtendedKey m/0'/1/2'/2 pub");
+        assertEquals( key.getDepth(), 4, "testExtendedKey depth");
+
+        key = master.derive("m/0'/1/2'").neuter().derive("2/1000000000");
+        assertEquals( BaseEncoding.base16().encode(key.getPubKey()), "022A471424DA5E657499D1FF51CB43C47481A03B1E77F951FE64CEC9F5A48F7011", "testExtendedKey public m/0'/1/2'/2/1000000000");
+        assertEquals( key.isPrivate(), false, "testExtendedKey neuter");
+
+        // More children than fit one native call, private and public-only
+        Secp256k1ExtendedKey parent = master.derive("m/44'/60'/0'/0");
+        Secp256k1ExtendedKey[] children = parent.deriveRange(0, Secp256k1ExtendedKey.CHUNK + 10);
+        Secp256k1ExtendedKey[] publicChildren = parent.neuter().deriveRange(0, Secp256k1ExtendedKey.CHUNK + 10);
+        boolean same = true;
+        for (int i = 0; i < children.length; i++) {
+            same &= Arrays.equals(children[i].getPubKey(), publicChildren[i].getPubKey());
+            same &= Arrays.equals(children[i].getChainCode(), publicChildren[i].getChainCode());
+            same &= children[i].getChildNumber() == i;
+        }
+        for (int i : new int[] { 0, 1, Secp256k1ExtendedKey.CHUNK, Secp256k1ExtendedKey.CHUNK + 9 }) {
+            Secp256k1ExtendedKey child = parent.derive(i);
+            same &= Arrays.equals(children[i].getPrivKey(), child.getPrivKey());
+            same &= Arrays.equals(children[i].getPubKey(), NativeSecp256k1.computePubkey(child.getPrivKey(), true));
+        }
+        assertEquals( same, true, "testExtendedKey range");
+
+        Secp256k1ExtendedKey[] hardened = master.deriveRange(Secp256k1ExtendedKey.HARDENED, 3);
+        assertEquals( BaseEncoding.base16().encode(hardened[0].getPrivKey()), "EDB2E14F9EE77D26DD93B4ECEDE8D16ED408CE149B6CD80B0715A2D911A0AFEA", "testExtendedKey hardened range");
+
+        boolean failed = false;
+        try {
+            master.neuter().derive(Secp256k1ExtendedKey.HARDENED);
+        } catch (IllegalStateException e) {
+            failed = true;
+        }
+        assertEquals( failed, true, "testExtendedKeyNeg");
+    }
+
+    /**
+      * This tests Keccak-256 against the usual Ethereum test vectors
+      */
+    public static void testKeccak256() throws AssertFailException{
+        ByteBuffer abc = ByteBuffer.wrap("abc".getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer hello = ByteBuffer.wrap("Hello World".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals( BaseEncoding.base16().encode(Keccak256.messageHash(abc, 0, 0, false)), "C5D2460186F7233C927E7DB2DCC703C0E500B653CA82273B7BFAD8045D85A470", "testKeccak256 empty");
+        assertEquals( BaseEncoding.base16().encode(Keccak256.messageHash(abc, 0, 3, false)), "4E03657AEA45A94FC7D47BA826C8D667C0D1E6E33A64A036EC44F58FA12D6C45", "testKeccak256 abc");
+        assertEquals( BaseEncoding.base16().encode(Keccak256.messageHash(hello, 0, 11, true)), "A1DE988600A42C4B4AB089B619297C17D53CFFAE5D5120D82D8A92D0BB3B78F2", "testKeccak256 personal");
+    }
+
+    /**
+      * This tests Ethereum address derivation from secret and public keys, single and batched
+      */
+    public static void testComputeAddress() throws AssertFailException{
+        byte[] one = BaseEncoding.base16().lowerCase().decode("0000000000000000000000000000000000000000000000000000000000000001".toLowerCase());
+        byte[] two = BaseEncoding.base16().lowerCase().decode("0000000000000000000000000000000000000000000000000000000000000002".toLowerCase());
+        byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+        byte[] badSec = BaseEncoding.base16().lowerCase().decode("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF".toLowerCase());
+
+        assertEquals( BaseEncoding.base16().encode(NativeSecp256k1.computeAddress(one)), "7E5F4552091A69125D5DFCB7B8C2659029395BDF", "testComputeAddress");
+        assertEquals( BaseEncoding.base16().encode(NativeSecp256k1.computeAddress(two)), "2B5AD5C4795C026514F8317C7A215E218DCCD6CF", "testComputeAddress 2");
+        assertEquals( NativeSecp256k1.computeAddress(badSec).length, 0, "testComputeAddressNeg");
+
+        String address = BaseEncoding.base16().encode(NativeSecp256k1.computeAddress(sec));
+        assertEquals( BaseEncoding.base16().encode(NativeSecp256k1.pubkeyToAddress(NativeSecp256k1.computePubkey(sec))), address, "testPubkeyToAddress");
+        assertEquals( BaseEncoding.base16().encode(NativeSecp256k1.pubkeyToAddress(NativeSecp256k1.computePubkey(sec, true))), address, "testPubkeyToAddress compressed");
+
+        ByteBuffer input = ByteBuffer.allocateDirect(32 * 3);
+        input.put(one).put(badSec).put(sec);
+        ByteBuffer output = ByteBuffer.allocateDirect(21 * 3);
+        assertEquals( NativeSecp256k1.computeAddressBatch(input, 3, 0, output), 2, "testComputeAddressBatch count");
+        assertEquals( BaseEncoding.base16().encode(toArray(output, 20)), "7E5F4552091A69125D5DFCB7B8C2659029395BDF", "testComputeAddressBatch");
+        assertEquals( output.get(60) == 1 && output.get(61) == 0 && output.get(62) == 1, true, "testComputeAddressBatchNeg");
+
+        input = ByteBuffer.allocateDirect(33 * 2);
+        input.put(NativeSecp256k1.computePubkey(two, true)).put(NativeSecp256k1.computePubkey(sec, true));
+        assertEquals( NativeSecp256k1.computeAddressBatch(input, 2, 33, output), 2, "testComputeAddressBatch pubkeys");
+        byte[] second = new byte[20];
+        output.position(20);
+        output.get(second);
+        assertEquals( BaseEncoding.base16().encode(second), address, "testComputeAddressBatch pubkey");
+    }
+
+    /**
+      * This tests signMessage() and verifyMessage() against signing the Keccak-256 digest
+      */
+    public static void testSignMessage() throws AssertFailException{
+        byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+        byte[] pub = NativeSecp256k1.computePubkey(sec);
+        // Longer than the 136-byte Keccak block, so the native lane-wise path is covered too
+        byte[] msg = new byte[300];
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = (byte) i;
+        }
+
+        for (boolean personal : new boolean[] { false, true }) {
+            ByteBuffer input = ByteBuffer.allocateDirect(32 + msg.length);
+            input.put(sec).put(msg);
+            ByteBuffer output = ByteBuffer.allocateDirect(65);
+            assertEquals( NativeSecp256k1.signMessage(input, msg.length, personal, output), 1, "testSignMessage " + personal);
+
+            byte[] sig = toArray(output, 65);
+            byte[] expected = NativeSecp256k1.signRecoverable(Keccak256.messageHash(ByteBuffer.wrap(msg), 0, msg.length, personal), sec);
+            assertEquals( BaseEncoding.base16().encode(sig), BaseEncoding.base16().encode(expected), "testSignMessage digest " + personal);
+
+            ByteBuffer verifyInput = ByteBuffer.allocateDirect(65 + 65 + msg.length);
+            verifyInput.put(sig).put(pub).put(msg);
+            assertEquals( NativeSecp256k1.verifyMessage(verifyInput, msg.length, 65, personal), 1, "testVerifyMessage " + personal);
+            assertEquals( NativeSecp256k1.verifyMessage(verifyInput, msg.length, 65, !personal), 0, "testVerifyMessage prefix " + personal);
+            assertEquals( NativeSecp256k1.verifyMessage(verifyInput, msg.length - 1, 65, personal), 0, "testVerifyMessageNeg " + personal);
+        }
+    }
+
+    /**
+      * This tests ordered results and early failure of the parallel verifier
+      */
+    public static void testParallelVerifier() throws AssertFailException, InterruptedException{
+        byte[] dataPos = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+        byte[] dataNeg = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A91".toLowerCase());
+        byte[] sig = BaseEncoding.base16().lowerCase().decode("3044022079BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F817980220294F14E883B3F525B5367756C2A11EF6CF84B730B36C17CB0C56F0AAB2C98589".toLowerCase());
+        byte[] pub = BaseEncoding.base16().lowerCase().decode("040A629506E1B65CD9D2E0BA9C75DF9C4FED0DB16DC9625ED14397F0AFC836FAE595DC53F8B0EFE61E703075BD9B143BAC75EC0E19F82A2208CAEB32BE53414C40".toLowerCase());
+
+        int count = 100;
+        byte[][] data = new byte[count][];
+        byte[][] sigs = new byte[count][];
+        byte[][] pubs = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            data[i] = i % 7 == 3 ? dataNeg : dataPos;
+            sigs[i] = sig;
+            pubs[i] = pub;
+        }
+
+        Secp256k1ParallelVerifier verifier = new Secp256k1ParallelVerifier(4, 8);
+        try {
+            boolean[] results = verifier.verifyAll(data, sigs, pubs);
+            boolean ordered = true;
+            for (int i = 0; i < count; i++) {
+                ordered &= results[i] == (i % 7 != 3);
+            }
+            assertEquals( ordered, true, "testParallelVerifierOrdered");
+            assertEquals( verifier.verifyBlock(data, sigs, pubs), false, "testParallelVerifierBlockNeg");
+
+            Arrays.fill(data, dataPos);
+            assertEquals( verifier.verifyBlock(data, sigs, pubs), true, "testParallelVerifierBlockPos");
+
+            // Invalid arguments are rejected before any chunk is queued
+            data[count - 1] = new byte[31];
+            boolean rejected = false;
+            try {
+                verifier.verifyBlock(data, sigs, pubs);
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            assertEquals( rejected, true, "testParallelVerifierBlockArgs");
+        } finally {
+            verifier.close();
+        }
+    }
+
+    /**
+      * This tests the async executor: batched results match the blocking calls, and rejection
+      */
+    public static void testAsyncExecutor() throws AssertFailException, InterruptedException{
+        byte[] data = BaseEncoding.base16().lowerCase().decode("CF80CD8AED482D5D1527D7DC72FCEFF84E6326592848447D2DC0B0E87DFC9A90".toLowerCase()); //sha256hash of "testing"
+        byte[] sec = BaseEncoding.base16().lowerCase().decode("67E56582298859DDAE725F972992A07C6C4FB9F62A8FFF58CE3CA926A1063530".toLowerCase());
+        byte[] badSec = BaseEncoding.base16().lowerCase().decode("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF".toLowerCase());
+        byte[] sig = BaseEncoding.base16().lowerCase().decode("3044022079BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F817980220294F14E883B3F525B5367756C2A11EF6CF84B730B36C17CB0C56F0AAB2C98589".toLowerCase());
+        byte[] pub = BaseEncoding.base16().lowerCase().decode("040A629506E1B65CD9D2E0BA9C75DF9C4FED0DB16DC9625ED14397F0AFC836FAE595DC53F8B0EFE61E703075BD9B143BAC75EC0E19F82A2208CAEB32BE53414C40".toLowerCase());
+        byte[] recoverable = NativeSecp256k1.signRecoverable(data, sec);
+        byte[] signer = NativeSecp256k1.recoverPubkey(data, recoverable);
+
+        int count = 200;
+        Secp256k1AsyncExecutor executor = new Secp256k1AsyncExecutor(2, count * 3, 16, Secp256k1AsyncExecutor.RejectionPolicy.ABORT);
+        try {
+            List<CompletableFuture<byte[]>> signs = new ArrayList<CompletableFuture<byte[]>>();
+            List<CompletableFuture<Boolean>> verifies = new ArrayList<CompletableFuture<Boolean>>();
+            List<CompletableFuture<byte[]>> recovers = new ArrayList<CompletableFuture<byte[]>>();
+            for (int i = 0; i < count; i++) {
+                byte[] key = sec.clone();
+                key[31] = (byte) (key[31] + i);
+                signs.add(executor.signCompact(data, i == 5 ? badSec : key));
+                byte[] hash = data.clone();
+                hash[31] = (byte) (hash[31] + (i % 7 == 3 ? 1 : 0));
+                verifies.add(executor.verify(hash, sig, pub));
+                recovers.add(executor.recoverPubkey(hash, recoverable));
+            }
+
+            boolean same = true;
+            for (int i = 0; i < count; i++) {
+                byte[] key = sec.clone();
+                key[31] = (byte) (key[31] + i);
+                same &= Arrays.equals(signs.get(i).join(), i == 5 ? new byte[0] : NativeSecp256k1.signCompact(data, key));
+                same &= verifies.get(i).join() == (i % 7 != 3);
+                same &= Arrays.equals(recovers.get(i).join(), signer) == (i % 7 != 3);
+            }
+            assertEquals( same, true, "testAsyncExecutor");
+            assertEquals( executor.getQueuedCount(), 0, "testAsyncExecutor queued");
+        } finally {
+            executor.close();
+        }
+        assertEquals( executor.verify(data, sig, pub).isCompletedExceptionally(), true, "testAsyncExecutor closed");
+
+        executor = new Secp256k1AsyncExecutor(1, 1, 16, Secp256k1AsyncExecutor.RejectionPolicy.ABORT);
+        try {
+            List<CompletableFuture<Boolean>> verifies = new ArrayList<CompletableFuture<Boolean>>();
+            for (int i = 0; i < 2000; i++) {
+                verifies.add(executor.verify(data, sig, pub));
+            }
+            int rejected = 0;
+            boolean valid = true;
+            for (CompletableFuture<Boolean> verify : verifies) {
+                try {
+                    valid &= verify.join();
+                } catch (CompletionException e) {
+                    valid &= e.getCause() instanceof RejectedExecutionException;
+                    rejected++;
+                }
+            }
+            assertEquals( valid && rejected > 0, true, "testAsyncExecutorRejected");
+        } finally {
+            executor.close();
+        }
+
+        executor = new Secp256k1AsyncExecutor(1, 1, 16, Secp256k1AsyncExecutor.RejectionPolicy.CALLER_RUNS);
+        try {
+            List<CompletableFuture<Boolean>> verifies = new ArrayList<CompletableFuture<Boolean>>();
+            for (int i = 0; i < 500; i++) {
+                verifies.add(executor.verify(data, sig, pub));
+            }
+            boolean valid = true;
+            for (CompletableFuture<Boolean> verify : verifies) {
+                valid &= verify.join();
+            }
+            assertEquals( valid, true, "testAsyncExecutorCallerRuns");
+        } finally {
+            executor.close();
+        }
+    }
+
+    /**
+      * This tests that scratch buffers are reused and the idle ones bounded
+      */
+    public static void testBufferPool() throws AssertFailException{
+        Secp256k1BufferPool pool = new Secp256k1BufferPool(2);
+
+        ByteBuffer first = pool.acquire(32);
+        assertEquals( first.isDirect() && first.capacity() == Secp256k1BufferPool.BUFFER_SIZE, true, "testBufferPool size");
+        first.position(10);
+        pool.release(first);
+        ByteBuffer again = pool.acquire(520);
+        assertEquals( again == first && again.position() == 0, true, "testBufferPool reuse");
+
+        ByteBuffer second = pool.acquire(32);
+        ByteBuffer third = pool.acquire(32);
+        ByteBuffer large = pool.acquire(Secp256k1BufferPool.BUFFER_SIZE + 1);
+        assertEquals( large.capacity() > Secp256k1BufferPool.BUFFER_SIZE, true, "testBufferPool large");
+        pool.release(again);
+        pool.release(second);
+        pool.release(third);
+        pool.release(large);
+        assertEquals( pool.idleCount(), 2, "testBufferPool bounded");
+    }
+
+    /**
+      * This tests the metrics collected while enabled and their MXBean
+      */
+    public static void testMetrics() throws AssertFailException, JMException{
+        Secp256k1Metrics metrics = Secp256k1Metrics.getInstance();
+        Secp256k1Metrics.register();
+        metrics.reset();
+        metrics.setEnabled(true);
+        try {
+            testVerifyPos();
+            testVerifyPos();
+            testSignPos();
+        } finally {
+            metrics.setEnabled(false);
+        }
+        testVerifyNeg();
+
+        assertEquals( metrics.getCallCounts().get("verify").intValue(), 2, "testMetrics verify");
+        assertEquals( metrics.getCallCounts().get("sign").intValue(), 1, "testMetrics sign");
+        assertEquals( metrics.getCallCounts().containsKey("recoverPubkey"), false, "testMetrics absent");
+        long histogramCalls = 0;
+        for (long bucket : metrics.getLatencyHistograms().get("verify")) {
+            histogramCalls += bucket;
+        }
+        assertEquals( (int) histogramCalls, 2, "testMetrics histogram");
+        assertEquals( metrics.getTotalLatencyNanos().get("verify") > 0, true, "testMetrics latency");
+        assertEquals( metrics.getReadLockWaitCount() >= 3, true, "testMetrics read lock");
+        assertEquals( metrics.getScratchBufferAllocations() > 0 && metrics.getScratchBufferBytes() >= Secp256k1BufferPool.BUFFER_SIZE, true, "testMetrics scratch buffers");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Secp256k1Metrics.OBJECT_NAME);
+        assertEquals( (Boolean) server.getAttribute(name, "Enabled"), false, "testMetrics MXBean");
+        assertEquals( server.getAttribute(name, "ReadLockWaitCount").equals(metrics.getReadLockWaitCount()), true, "testMetrics MXBean read lock");
+        metrics.reset();
+    }
+
+    /**
+      * This tests that the contexts are recreated from a table snapshot after cleanup()
+      */
+    public static void testTableSnapshot() throws AssertFailException, IOException{
+        File tables = File.createTempFile("secp256k1", ".tables");
+        try {
+            assertEquals( Secp256k1Context.writeTableSnapshot(tables.getPath()), true, "testTableSnapshot write");
+
+            NativeSecp256k1.cleanup();
+            assertEquals( Secp256k1Context.hasSignContext(), false, "testTableSnapshot cleanup");
+            System.setProperty(Secp256k1Context.TABLES_PROPERTY, tables.getPath());
+
+            testVerifyPos();
+            testVerifyNeg();
+            testVerifyBatch();
+            testSignPos();
+            testSignRecoverable();
+            testCreateECDHSecret();
+
+            NativeSecp256k1.cleanup();
+        } finally {
+            System.clearProperty(Secp256k1Context.TABLES_PROPERTY);
+            tables.delete();
+        }
+    }
+
+    /**
+      * This tests that a corrupted table snapshot is ignored, the tables being computed instead
+      */
+    public static void testTableSnapshotCorrupt() throws AssertFailException, IOException{
+        File tables = File.createTempFile("secp256k1", ".tables");
+        try {
+            assertEquals( Secp256k1Context.writeTableSnapshot(tables.getPath()), true, "testTableSnapshotCorrupt write");
+            RandomAccessFile file = new RandomAccessFile(tables, "rw");
+            try {
+                // Header and size stay valid, only the tables change
+                for (long position = 64; position < file.length(); position += 61) {
+                    file.seek(position);
+                    int value = file.read();
+                    file.seek(position);
+                    file.write(value ^ 0x5A);
+                }
+            } finally {
+                file.close();
+            }
+
+            NativeSecp256k1.cleanup();
+            System.setProperty(Secp256k1Context.TABLES_PROPERTY, tables.getPath());
+
+            testVerifyPos();
+            testVerifyNeg();
+            testSignPos();
+
+            NativeSecp256k1.cleanup();
+        } finally {
+            System.clearProperty(Secp256k1Context.TABLES_PROPERTY);
+            tables.delete();
+        }
+    }
+
+    /**
+      * This tests operations on contexts borrowed from a context pool
+      */
+    public static void testContextPool() throws AssertFailException{
+        Secp256k1ContextPool pool = new Secp256k1ContextPool(2, 1);
+        long context1 = pool.acquire();
+        long context2 = pool.acquire();
+        assertEquals( context1 != context2 && context1 != Secp256k1Context.getContext(), true, "testContextPool distinct");
+        pool.release(context1);
+        pool.release(context2);
+        pool.randomizeIdle();
+
+        NativeSecp256k1.useContextPool(pool);
+        testVerifyPos();
+        testSignPos();
+        testCreateECDHSecret();
+    }
+
+    /**
+      * This tests that cleanup() uninstalls the context pool it closes
+      */
+    public static void testCleanupContextPool() throws AssertFailException{
+        NativeSecp256k1.cleanup();
+        testSignPos();
+
+        NativeSecp256k1.useContextPool(new Secp256k1ContextPool(2));
+        testSignPos();
+        testVerifyPos();
+    }
+
+    /**
+      * This tests the pure Java engine against the native library on random keys
+      */
+    public static void testJavaEngine() throws AssertFailException{
+        Secp256k1Backend engine = new Secp256k1JavaEngine();
+        java.util.Random random = new java.util.Random(42);
+        boolean same = true;
+        for (int i = 0; i < 32; i++) {
+            byte[] data = new byte[32];
+            byte[] sec = new byte[32];
+            byte[] tweak = new byte[32];
+            random.nextBytes(data);
+            random.nextBytes(sec);
+            random.nextBytes(tweak);
+
+            byte[] pub = NativeSecp256k1.computePubkey(sec);
+            byte[] sig = NativeSecp256k1.sign(data, sec);
+            byte[] recSig = NativeSecp256k1.signRecoverable(data, sec);
+            same &= Arrays.equals(engine.computePubkey(sec), pub);
+            same &= Arrays.equals(engine.sign(data, sec), sig);
+            same &= Arrays.equals(engine.signRecoverable(data, sec), recSig);
+            same &= engine.verify(data, sig, pub);
+            same &= Arrays.equals(engine.recoverPubkey(data, recSig), pub);
+            same &= Arrays.equals(engine.privKeyTweakAdd(sec, tweak), NativeSecp256k1.privKeyTweakAdd(sec, tweak));
+            same &= Arrays.equals(engine.privKeyTweakMul(sec, tweak), NativeSecp256k1.privKeyTweakMul(sec, tweak));
+            same &= Arrays.equals(engine.pubKeyTweakAdd(pub, tweak), NativeSecp256k1.pubKeyTweakAdd(pub, tweak));
+            same &= Arrays.equals(engine.pubKeyTweakMul(pub, tweak), NativeSecp256k1.pubKeyTweakMul(pub, tweak));
+            same &= Arrays.equals(engine.createECDHSecret(tweak, pub), NativeSecp256k1.createECDHSecret(tweak, pub));
+
+            byte[] compressed = new byte[33];
+            compressed[0] = (byte) (0x02 | (pub[64] & 1));
+            System.arraycopy(pub, 1, compressed, 1, 32);
+            same &= engine.verify(data, sig, compressed);
+
+            data[i] ^= 1;
+            same &= !engine.verify(data, sig, pub);
+        }
+        assertEquals( same, true, "testJavaEngine");
+
+        byte[] order = BaseEncoding.base16().lowerCase().decode("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141".toLowerCase());
+        assertEquals( engine.secKeyVerify(order) || engine.computePubkey(order).length != 0, false, "testJavaEngineNeg");
+    }
 
+    public static void main(String[] args) throws AssertFailException, InterruptedException, IOException, JMException{
 
-        System.out.println("\n libsecp256k1 enabled: " + Secp256k1Context.isEnabled() + "\n");
 
-        assertEquals( Secp256k1Context.isEnabled(), true, "isEnabled" );
+        System.out.println("\n libsecp256k1 enabled: " + Secp256k1Context.isEnabled() + ", engine: " + Secp256k1Context.getEngine() + "\n");
+
+        // Run with -Dorg.bitcoin.secp256k1.engine=ffm or =java to test the other engines
+        String engine = System.getProperty(Secp256k1Context.ENGINE_PROPERTY, "jni");
+        assertEquals( Secp256k1Context.getEngine(), engine, "engine " + engine );
+        assertEquals( Secp256k1Context.isEnabled(), "jni".equals(engine), "isEnabled" );
 
         //Test verify() success/fail
         testVerifyPos();
         testVerifyNeg();
 
+        //Test verifyBatch()
+        testVerifyBatch();
+
+        //Test verifyParsed() through the public key cache
+        testPubkeyCache();
+
+        //Verifying alone must not have created the signing context
+        assertEquals( Secp256k1Context.hasSignContext(), false, "lazy sign context");
+
         //Test secKeyVerify() success/fail
         testSecKeyVerifyPos();
         testSecKeyVerifyNeg();
@@ -200,6 +919,12 @@ public class NativeSecp256k1Test {
         testSignPos();
         testSignNeg();
 
+        //Test signBatch()
+        testSignBatch();
+
+        //Test the signature cache
+        testSignatureCache();
+
         //Test privKeyTweakAdd() 1
         testPrivKeyTweakAdd_1();
 
@@ -217,6 +942,56 @@ public class NativeSecp256k1Test {
 
         //Test ECDH
         testCreateECDHSecret();
+        testCreateECDHSecretBatch();
+
+        //Test compact signatures and compressed keys
+        testCompact();
+
+        //Test direct buffer overloads
+        testDirectBufferOverloads();
+
+        //Test public key recovery
+        testSignRecoverable();
+        testRecoverPubkeyBatch();
+
+        //Test BIP32 derivation
+        testExtendedKey();
+
+        //Test scratch buffer pool
+        testBufferPool();
+
+        //Test fused Keccak-256 hash-and-sign
+        testKeccak256();
+        testSignMessage();
+
+        //Test Ethereum address derivation
+        testComputeAddress();
+
+        //Test parallel verifier
+        testParallelVerifier();
+
+        //Test async executor
+        testAsyncExecutor();
+
+        if (Secp256k1Context.isEnabled()) {
+            //Test the Java engine against the library
+            testJavaEngine();
+
+            //Test metrics
+            testMetrics();
+
+            //Test a corrupted table snapshot, before a valid one gets mapped for the process
+            testTableSnapshotCorrupt();
+
+            //Test contexts mapping a table snapshot
+            testTableSnapshot();
+
+            //Test context pool
+            testContextPool();
+
+            //Test cleanup with a context pool installed
+            testCleanupContextPool();
+        }
 
         NativeSecp256k1.cleanup();
 
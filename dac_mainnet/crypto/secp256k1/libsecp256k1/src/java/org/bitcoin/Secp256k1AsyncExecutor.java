@@ -0,0 +1,445 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Runs signing, verification and public key recovery on a pool of worker
+ * threads and hands back CompletableFutures, so that request-handling threads
+ * never do EC math inline.
+ *
+ * <p>Requests wait in one queue per operation. An idle worker takes up to
+ * maxBatch requests of the same operation at once and runs them with a single
+ * signBatch(), verifyBatch() or recoverPubkeyBatch() call: a lone request is
+ * run right away, while a burst is batched by the time it spends waiting for a
+ * busy worker. At most queueDepth requests may wait, beyond that the
+ * RejectionPolicy applies.</p>
+ *
+ * <p>Futures are completed on the worker threads, dependent stages should use
+ * the *Async methods of CompletableFuture to run elsewhere. Invalid arguments
+ * are rejected when submitting, as by the NativeSecp256k1 methods.</p>
+ */
+public class Secp256k1AsyncExecutor implements AutoCloseable {
+
+  /**
+   * What the submit methods do when queueDepth requests are already waiting.
+   */
+  public enum RejectionPolicy {
+    /** The returned future fails with a RejectedExecutionException */
+    ABORT,
+    /** The calling thread waits until a request leaves the queue */
+    BLOCK,
+    /** The calling thread runs the request itself, with the single-request method */
+    CALLER_RUNS
+  }
+
+  private final int threads;
+  private final int queueDepth;
+  private final int maxBatch;
+  private final RejectionPolicy rejectionPolicy;
+  private final Semaphore room;
+  private final ExecutorService executor;
+  private final AtomicInteger drainers = new AtomicInteger();
+  private final Operation<byte[]> signs = new Sign();
+  private final Operation<Boolean> verifies = new Verify();
+  private final Operation<byte[]> recovers = new Recover();
+  private final List<Operation<?>> operations = new ArrayList<Operation<?>>();
+  private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch();
+    }
+  };
+  private final Runnable drainer = new Runnable() {
+    @Override
+    public void run() {
+      drain();
+    }
+  };
+  private volatile boolean closed;
+
+  /**
+   * @param threads Number of worker threads
+   * @param queueDepth Maximum number of requests waiting for a worker
+   * @param maxBatch Maximum number of requests run per native call
+   * @param rejectionPolicy What to do with requests beyond queueDepth
+   */
+  public Secp256k1AsyncExecutor(int threads, int queueDepth, int maxBatch, RejectionPolicy rejectionPolicy) {
+    Preconditions.checkArgument(threads > 0 && queueDepth > 0 && maxBatch > 0);
+    this.threads = threads;
+    this.queueDepth = queueDepth;
+    this.maxBatch = maxBatch;
+    this.rejectionPolicy = Preconditions.checkNotNull(rejectionPolicy);
+    this.room = new Semaphore(queueDepth);
+    this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "secp256k1-async-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    operations.add(signs);
+    operations.add(verifies);
+    operations.add(recovers);
+  }
+
+  public Secp256k1AsyncExecutor(int threads) {
+    this(threads, 1024, 64, RejectionPolicy.ABORT);
+  }
+
+  /**
+   * Creates a compact ECDSA signature, as NativeSecp256k1.signCompact().
+   *
+   * @param data Message hash, 32 bytes
+   * @param sec Secret key, 32 bytes
+   *
+   * Return values
+   * @param sig 64-byte compact signature r || s, empty if signing failed
+   */
+  public CompletableFuture<byte[]> signCompact(byte[] data, byte[] sec) {
+    Preconditions.checkArgument(data.length == 32 && sec.length == 32);
+    return submit(signs, new Request<byte[]>(data.clone(), sec.clone(), null));
+  }
+
+  /**
+   * Verifies a DER signature, as NativeSecp256k1.verify().
+   *
+   * @param data The data which was signed, must be exactly 32 bytes
+   * @param signature The DER signature
+   * @param pub The public key which did the signing
+   *
+   * Return values
+   * @param valid true if the signature is valid
+   */
+  public CompletableFuture<Boolean> verify(byte[] data, byte[] signature, byte[] pub) {
+    Preconditions.checkArgument(data.length == 32 && signature.length <= 520 && pub.length <= 520);
+    return submit(verifies, new Request<Boolean>(data.clone(), signature.clone(), pub.clone()));
+  }
+
+  /**
+   * Recovers the public key which produced a recoverable signature, as NativeSecp256k1.recoverPubkey().
+   *
+   * @param data Message hash, 32 bytes
+   * @param signature 65-byte compact signature r || s || recid, recid being 0-3 or 27-30
+   *
+   * Return values
+   * @param pubkey 65-byte uncompressed public key, empty if recovery failed
+   */
+  public CompletableFuture<byte[]> recoverPubkey(byte[] data, byte[] signature) {
+    Preconditions.checkArgument(data.length == 32 && signature.length == 65);
+    return submit(recovers, new Request<byte[]>(data.clone(), signature.clone(), null));
+  }
+
+  /**
+   * @return the number of requests waiting for a worker
+   */
+  public int getQueuedCount() {
+    return queueDepth - room.availablePermits();
+  }
+
+  /**
+   * Stops accepting requests, runs the queued ones and stops the workers. If
+   * interrupted while waiting for them, fails the requests still queued and
+   * returns with the interrupt flag set.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdown();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // Requests which raced with shutdown() and found no worker
+    failQueued(new RejectedExecutionException("Executor closed"));
+  }
+
+  private <T> CompletableFuture<T> submit(Operation<T> operation, Request<T> request) {
+    if (closed) {
+      request.future.completeExceptionally(new RejectedExecutionException("Executor closed"));
+      return request.future;
+    }
+    if (!room.tryAcquire()) {
+      switch (rejectionPolicy) {
+        case ABORT:
+          request.future.completeExceptionally(new RejectedExecutionException("Queue full"));
+          return request.future;
+        case CALLER_RUNS:
+          try {
+            request.future.complete(operation.call(request));
+          } catch (RuntimeException e) {
+            request.future.completeExceptionally(e);
+          }
+          return request.future;
+        case BLOCK:
+          try {
+            room.acquire();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.future.completeExceptionally(e);
+            return request.future;
+          }
+          break;
+      }
+    }
+    operation.queue.add(request);
+    if (reserveDrainer()) {
+      try {
+        executor.execute(drainer);
+      } catch (RejectedExecutionException e) {
+        drainers.decrementAndGet();
+        failQueued(e);
+      }
+    }
+    return request.future;
+  }
+
+  /**
+   * Takes a worker slot if fewer than threads workers are draining the queues.
+   */
+  private boolean reserveDrainer() {
+    int current;
+    do {
+      current = drainers.get();
+      if (current >= threads) {
+        return false;
+      }
+    } while (!drainers.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  private void drain() {
+    Scratch workerScratch = scratch.get();
+    while (true) {
+      boolean found = false;
+      for (Operation<?> operation : operations) {
+        found |= runBatch(operation, workerScratch);
+      }
+      if (found) {
+        continue;
+      }
+      // A request queued before the decrement saw no free slot and relies on this worker
+      drainers.decrementAndGet();
+      if (!hasQueued() || !reserveDrainer()) {
+        return;
+      }
+    }
+  }
+
+  private boolean hasQueued() {
+    for (Operation<?> operation : operations) {
+      if (!operation.queue.isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private <T> boolean runBatch(Operation<T> operation, Scratch workerScratch) {
+    List<Request<T>> batch = new ArrayList<Request<T>>(Math.min(maxBatch, 16));
+    Request<T> request;
+    while (batch.size() < maxBatch && (request = operation.queue.poll()) != null) {
+      batch.add(request);
+    }
+    if (batch.isEmpty()) {
+      return false;
+    }
+    room.release(batch.size());
+    try {
+      operation.run(batch, workerScratch);
+    } catch (RuntimeException e) {
+      for (Request<T> failed : batch) {
+        failed.future.completeExceptionally(e);
+      }
+    }
+    return true;
+  }
+
+  private void failQueued(Throwable cause) {
+    for (Operation<?> operation : operations) {
+      Request<?> request;
+      while ((request = operation.queue.poll()) != null) {
+        room.release();
+        request.future.completeExceptionally(cause);
+      }
+    }
+  }
+
+  private static class Request<T> {
+
+    private final byte[] data;
+    private final byte[] arg;
+    private final byte[] pub;
+    private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+    /**
+     * @param arg The secret key or the signature
+     */
+    private Request(byte[] data, byte[] arg, byte[] pub) {
+      this.data = data;
+      this.arg = arg;
+      this.pub = pub;
+    }
+  }
+
+  /**
+   * A kind of request, with its queue.
+   */
+  private abstract static class Operation<T> {
+
+    final ConcurrentLinkedQueue<Request<T>> queue = new ConcurrentLinkedQueue<Request<T>>();
+
+    /** Runs a batch with one native call and completes its futures */
+    abstract void run(List<Request<T>> batch, Scratch scratch);
+
+    /** Runs a single request on the calling thread */
+    abstract T call(Request<T> request);
+  }
+
+  private static class Sign extends Operation<byte[]> {
+
+    @Override
+    void run(List<Request<byte[]>> batch, Scratch scratch) {
+      int count = batch.size();
+      ByteBuffer input = scratch.input((32 + 32) * count);
+      ByteBuffer output = scratch.output((64 + 1) * count);
+      for (Request<byte[]> request : batch) {
+        input.put(request.data);
+      }
+      for (Request<byte[]> request : batch) {
+        input.put(request.arg);
+      }
+
+      NativeSecp256k1.signBatch(input, count, false, output);
+
+      for (int i = 0; i < count; i++) {
+        byte[] sig = new byte[output.get(64 * count + i) == 0 ? 0 : 64];
+        output.position(64 * i);
+        output.get(sig);
+        batch.get(i).future.complete(sig);
+      }
+    }
+
+    @Override
+    byte[] call(Request<byte[]> request) {
+      return NativeSecp256k1.signCompact(request.data, request.arg);
+    }
+  }
+
+  private static class Verify extends Operation<Boolean> {
+
+    @Override
+    void run(List<Request<Boolean>> batch, Scratch scratch) {
+      int count = batch.size();
+      byte[][] data = new byte[count][];
+      byte[][] signatures = new byte[count][];
+      byte[][] pubs = new byte[count][];
+      for (int i = 0; i < count; i++) {
+        data[i] = batch.get(i).data;
+        signatures[i] = batch.get(i).arg;
+        pubs[i] = batch.get(i).pub;
+      }
+
+      // Lays the variable length signatures and keys out in a scratch buffer of its own
+      boolean[] results = NativeSecp256k1.verifyBatch(data, signatures, pubs);
+
+      for (int i = 0; i < count; i++) {
+        batch.get(i).future.complete(results[i]);
+      }
+    }
+
+    @Override
+    Boolean call(Request<Boolean> request) {
+      return NativeSecp256k1.verifyBatch(new byte[][] { request.data }, new byte[][] { request.arg }, new byte[][] { request.pub })[0];
+    }
+  }
+
+  private static class Recover extends Operation<byte[]> {
+
+    @Override
+    void run(List<Request<byte[]>> batch, Scratch scratch) {
+      int count = batch.size();
+      ByteBuffer input = scratch.input((32 + 65) * count);
+      ByteBuffer output = scratch.output((65 + 1) * count);
+      for (Request<byte[]> request : batch) {
+        input.put(request.data);
+        input.put(request.arg);
+      }
+
+      NativeSecp256k1.recoverPubkeyBatch(input, count, output);
+
+      for (int i = 0; i < count; i++) {
+        byte[] pub = new byte[output.get(65 * count + i) == 0 ? 0 : 65];
+        output.position(65 * i);
+        output.get(pub);
+        batch.get(i).future.complete(pub);
+      }
+    }
+
+    @Override
+    byte[] call(Request<byte[]> request) {
+      return NativeSecp256k1.recoverPubkey(request.data, request.arg);
+    }
+  }
+
+  /**
+   * A worker thread's direct buffers, grown to the largest batch it ran.
+   */
+  private static class Scratch {
+
+    private ByteBuffer input;
+    private ByteBuffer output;
+
+    private ByteBuffer input(int size) {
+      input = ensure(input, size);
+      return input;
+    }
+
+    private ByteBuffer output(int size) {
+      output = ensure(output, size);
+      return output;
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, int size) {
+      if (buffer == null || buffer.capacity() < size) {
+        buffer = ByteBuffer.allocateDirect(size);
+        buffer.order(ByteOrder.nativeOrder());
+      }
+      buffer.clear();
+      return buffer;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>An implementation of the NativeSecp256k1 operations other than the JNI glue,
+ * chosen once by Secp256k1Context at startup.</p>
+ *
+ * <p>Arguments are already checked by NativeSecp256k1. byte[] methods return an
+ * empty array (or null for tweaks and ECDH) on failure, ByteBuffer methods read
+ * their input from the start of the buffer like the JNI glue does and return
+ * the same values as the corresponding native calls.</p>
+ */
+interface Secp256k1Backend {
+
+    boolean verify(byte[] data, byte[] signature, byte[] pub);
+
+    boolean verifyCompact(byte[] data, byte[] signature, byte[] pub);
+
+    int verifyCompact(ByteBuffer input, int pubLen);
+
+    byte[] verifyBatch(ByteBuffer input, int count, int[] sigOffsets, int[] sigLens, int[] pubOffsets, int[] pubLens);
+
+    byte[] parsePubkey(byte[] pub);
+
+    boolean verifyParsed(byte[] data, byte[] signature, byte[] parsedPub);
+
+    byte[] sign(byte[] data, byte[] sec);
+
+    int sign(ByteBuffer input, ByteBuffer output);
+
+    byte[] signCompact(byte[] data, byte[] sec);
+
+    int signCompact(ByteBuffer input, ByteBuffer output);
+
+    int signBatch(ByteBuffer input, int count, boolean sharedKey, ByteBuffer output);
+
+    boolean secKeyVerify(byte[] seckey);
+
+    byte[] computePubkey(byte[] seckey);
+
+    int computePubkey(ByteBuffer input, ByteBuffer output, boolean compressed);
+
+    byte[] serializePubkey(byte[] pubkey, boolean compressed);
+
+    int serializePubkey(ByteBuffer input, int pubLen, boolean compressed, ByteBuffer output);
+
+    byte[] privKeyTweakAdd(byte[] privkey, byte[] tweak);
+
+    int privKeyTweakAdd(ByteBuffer input, ByteBuffer output);
+
+    int privKeyTweakAddBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output);
+
+    byte[] privKeyTweakMul(byte[] privkey, byte[] tweak);
+
+    int privKeyTweakMul(ByteBuffer input, ByteBuffer output);
+
+    byte[] pubKeyTweakAdd(byte[] pubkey, byte[] tweak);
+
+    int pubKeyTweakAdd(ByteBuffer input, int pubLen, ByteBuffer output, boolean compressed);
+
+    int pubKeyTweakAddBatch(ByteBuffer input, int count, int pubLen, int outLen, ByteBuffer output);
+
+    byte[] pubKeyTweakMul(byte[] pubkey, byte[] tweak);
+
+    int pubKeyTweakMul(ByteBuffer input, int pubLen, ByteBuffer output, boolean compressed);
+
+    byte[] createECDHSecret(byte[] seckey, byte[] pubkey);
+
+    int createECDHSecret(ByteBuffer input, int pubLen, ByteBuffer output);
+
+    int createECDHSecretBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output);
+
+    byte[] signRecoverable(byte[] data, byte[] sec);
+
+    int signRecoverable(ByteBuffer input, ByteBuffer output);
+
+    byte[] recoverPubkey(byte[] data, byte[] signature);
+
+    int recoverPubkey(ByteBuffer input, ByteBuffer output, boolean compressed);
+
+    int recoverPubkeyBatch(ByteBuffer input, int count, ByteBuffer output, boolean compressed);
+
+    int computeAddressBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output);
+
+    int signMessage(ByteBuffer input, int msgLen, boolean personal, ByteBuffer output);
+
+    int verifyMessage(ByteBuffer input, int msgLen, int pubLen, boolean personal);
+
+    boolean randomize(byte[] seed);
+
+    void cleanup();
+}
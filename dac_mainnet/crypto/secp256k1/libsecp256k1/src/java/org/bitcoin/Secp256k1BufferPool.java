@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded pool of the direct scratch buffers NativeSecp256k1 copies its
+ * arguments into.
+ *
+ * <p>Buffers are borrowed for one call instead of being kept per thread, so the
+ * native memory in use follows the number of calls in flight rather than the
+ * number of threads that ever called in, which matters with virtual threads.
+ * Idle buffers are kept in a lock-free slot array, searched from a slot picked
+ * by thread id to keep concurrent borrowers apart. Buffers given back while the
+ * pool is full are left to the garbage collector.</p>
+ */
+final class Secp256k1BufferPool {
+
+    /** Size of the pooled buffers, enough for every call but batches (at most 32 + 64 + 520 bytes) */
+    static final int BUFFER_SIZE = 1024;
+
+    private final AtomicReferenceArray<ByteBuffer> idle;
+
+    /**
+     * @param maxIdle Maximum number of idle buffers kept
+     */
+    Secp256k1BufferPool(int maxIdle) {
+        this.idle = new AtomicReferenceArray<ByteBuffer>(maxIdle);
+    }
+
+    /**
+     * Borrows a buffer of at least size bytes with its position at 0, which must be
+     * given back with release(). Larger than BUFFER_SIZE requests get a buffer of
+     * their own that is not pooled.
+     */
+    ByteBuffer acquire(int size) {
+        if (size <= BUFFER_SIZE) {
+            int length = idle.length();
+            int start = probe(length);
+            for (int i = 0; i < length; i++) {
+                int slot = (start + i) % length;
+                ByteBuffer buffer = idle.get(slot) == null ? null : idle.getAndSet(slot, null);
+                if (buffer != null) {
+                    buffer.clear();
+                    return buffer;
+                }
+            }
+        }
+        int capacity = Math.max(size, BUFFER_SIZE);
+        Secp256k1Metrics.recordScratchAllocation(capacity);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer obtained from acquire(). It must not be used afterwards.
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() == BUFFER_SIZE) {
+            int length = idle.length();
+            int start = probe(length);
+            for (int i = 0; i < length; i++) {
+                int slot = (start + i) % length;
+                if (idle.get(slot) == null && idle.compareAndSet(slot, null, buffer)) {
+                    return;
+                }
+            }
+        }
+        Secp256k1Metrics.recordScratchRelease(buffer.capacity());
+    }
+
+    /**
+     * @return the number of idle buffers, for tests and monitoring
+     */
+    int idleCount() {
+        int count = 0;
+        for (int i = 0; i < idle.length(); i++) {
+            if (idle.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int probe(int length) {
+        return ThreadLocalRandom.current().nextInt(length);
+    }
+}
@@ -16,36 +16,180 @@
 
 package org.bitcoin;
 
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * This class holds the context reference used in native methods 
  * to handle ECDSA operations.
+ *
+ * Contexts are created on first use, per capability: verification only needs
+ * the verify-only context, so a process that never signs never builds the
+ * signing tables. With -Dorg.bitcoin.secp256k1.tables=path the verification
+ * tables are mapped from a snapshot written at install time (see main)
+ * instead of being computed. A snapshot not matching its checksum is ignored.
  */
 public class Secp256k1Context {
+  private static final Logger LOG = Logger.getLogger(Secp256k1Context.class.getName());
   private static final boolean enabled; //true if the library is loaded
-  private static final long context; //ref to pointer to context obj
+  private static volatile long context = -1; //ref to pointer to sign-capable context obj, created on first use
+  private static volatile long verifyContext = -1; //ref to pointer to verify-only context obj, created on first use
+  private static final String engine; //engine actually in use
+  private static final Secp256k1Backend backend; //null when the JNI glue is used
+
+  /** System property choosing the engine: "jni" (default), "ffm" or "java" */
+  public static final String ENGINE_PROPERTY = "org.bitcoin.secp256k1.engine";
+
+  /** System property naming a table snapshot written by main, read when the first context is created */
+  public static final String TABLES_PROPERTY = "org.bitcoin.secp256k1.tables";
 
   static { //static initializer
-      boolean isEnabled = true;
-      long contextRef = -1;
-      try {
-          System.loadLibrary("secp256k1");
-          contextRef = secp256k1_init_context();
-      } catch (UnsatisfiedLinkError e) {
-          System.out.println("UnsatisfiedLinkError: " + e.toString());
-          isEnabled = false;
+      String requested = System.getProperty(ENGINE_PROPERTY, "jni");
+      boolean isEnabled = "jni".equals(requested);
+      Secp256k1Backend otherBackend = null;
+      if (isEnabled) {
+          try {
+              System.loadLibrary("secp256k1");
+          } catch (UnsatisfiedLinkError e) {
+              LOG.log(Level.WARNING, "Can't load the secp256k1 library, falling back to the Java engine", e);
+              isEnabled = false;
+          }
+      } else if ("ffm".equals(requested)) {
+          otherBackend = loadForeignBackend();
+      }
+      if (!isEnabled && otherBackend == null) {
+          otherBackend = new Secp256k1JavaEngine();
       }
       enabled = isEnabled;
-      context = contextRef;
+      backend = otherBackend;
+      engine = isEnabled ? "jni" : otherBackend instanceof Secp256k1JavaEngine ? "java" : "ffm";
+  }
+
+  /**
+   * The java.lang.foreign backend needs JDK 21+ and is compiled separately, so it is only looked up by name.
+   */
+  private static Secp256k1Backend loadForeignBackend() {
+      try {
+          return (Secp256k1Backend) Class.forName("org.bitcoin.Secp256k1ForeignBackend").getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+          LOG.log(Level.WARNING, "Can't load the ffm engine requested with -D" + ENGINE_PROPERTY + ", falling back to the Java engine", e);
+          return null;
+      }
   }
 
+  /**
+   * @return true if the JNI glue is loaded, the only engine supporting cloned contexts
+   */
   public static boolean isEnabled() {
      return enabled;
   }
 
+  /**
+   * @return the sign-capable context, created on first call
+   */
   public static long getContext() {
      if(!enabled) return -1; //sanity check
-     return context;
+     long ctx = context;
+     if (ctx == -1) {
+         synchronized (Secp256k1Context.class) {
+             if (context == -1) {
+                 context = secp256k1_init_context(true, System.getProperty(TABLES_PROPERTY));
+             }
+             ctx = context;
+         }
+     }
+     return ctx;
+  }
+
+  /**
+   * @return a context able to verify: the sign-capable one if it already exists, else the verify-only one
+   */
+  static long getVerifyContext() {
+     if(!enabled) return -1; //sanity check
+     long ctx = context;
+     if (ctx == -1) {
+         ctx = verifyContext;
+     }
+     if (ctx == -1) {
+         synchronized (Secp256k1Context.class) {
+             if (verifyContext == -1) {
+                 verifyContext = secp256k1_init_context(false, System.getProperty(TABLES_PROPERTY));
+             }
+             ctx = verifyContext;
+         }
+     }
+     return ctx;
+  }
+
+  /**
+   * @return true if the sign-capable context has been created
+   */
+  static boolean hasSignContext() {
+     return context != -1;
   }
 
-  private static native long secp256k1_init_context();
+  /**
+   * @return true for the contexts owned by this class, as opposed to clones
+   */
+  static boolean isShared(long ctx) {
+     return ctx != -1 && (ctx == context || ctx == verifyContext);
+  }
+
+  /**
+   * Destroys the contexts created so far; later calls create them again.
+   * The caller must make sure no operation is using them.
+   */
+  static synchronized void destroyContexts() {
+     if (context != -1) {
+         secp256k1_destroy_shared_context(context);
+         context = -1;
+     }
+     if (verifyContext != -1) {
+         secp256k1_destroy_shared_context(verifyContext);
+         verifyContext = -1;
+     }
+  }
+
+  /**
+   * Writes the verification tables of this build to a snapshot file.
+   *
+   * @param path file to (over)write
+   * @return true on success
+   */
+  public static boolean writeTableSnapshot(String path) {
+     if(!enabled) return false;
+     return secp256k1_write_tables(path) == 1;
+  }
+
+  /**
+   * @return the engine in use: "jni", "ffm", or "java" if the requested one could not be loaded
+   */
+  public static String getEngine() {
+     return engine;
+  }
+
+  static Secp256k1Backend getBackend() {
+     return backend;
+  }
+
+  /**
+   * Writes the table snapshot, run once at install time:
+   * java -Djava.library.path=... org.bitcoin.Secp256k1Context /path/to/secp256k1.tables
+   */
+  public static void main(String[] args) {
+      if (args.length != 1) {
+          System.err.println("usage: Secp256k1Context <snapshot file>");
+          System.exit(2);
+      }
+      if (!writeTableSnapshot(args[0])) {
+          System.err.println("Failed to write " + args[0]);
+          System.exit(1);
+      }
+  }
+
+  private static native long secp256k1_init_context(boolean sign, String tablesPath);
+
+  private static native void secp256k1_destroy_shared_context(long context);
+
+  private static native int secp256k1_write_tables(String path);
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded pool of contexts cloned from the global Secp256k1Context.
+ *
+ * <p>Each borrower gets exclusive use of a context, so operations need no shared
+ * lock and a context can be re-randomized without stalling the others. Idle
+ * contexts are kept in a lock-free slot array, contexts released while the pool
+ * is full or closed are destroyed.</p>
+ */
+public class Secp256k1ContextPool implements AutoCloseable {
+
+  private static final long EMPTY = 0;
+
+  private final AtomicLongArray idle;
+  private final AtomicLong releases = new AtomicLong();
+  private final int randomizeInterval;
+  private final SecureRandom random = new SecureRandom();
+  private volatile boolean closed;
+
+  /**
+   * @param maxIdle Maximum number of idle contexts kept, typically the number of workers
+   * @param randomizeInterval A released context is re-randomized once every
+   *                          randomizeInterval releases, 0 to disable
+   */
+  public Secp256k1ContextPool(int maxIdle, int randomizeInterval) {
+    Preconditions.checkArgument(maxIdle > 0 && randomizeInterval >= 0);
+    this.idle = new AtomicLongArray(maxIdle);
+    this.randomizeInterval = randomizeInterval;
+  }
+
+  public Secp256k1ContextPool(int maxIdle) {
+    this(maxIdle, 1024);
+  }
+
+  /**
+   * Borrows a context, cloning and randomizing a new one if none is idle.
+   * The context must be given back with release().
+   */
+  public long acquire() {
+    Preconditions.checkState(!closed, "Context pool is closed");
+    int size = idle.length();
+    int start = ThreadLocalRandom.current().nextInt(size);
+    for (int i = 0; i < size; i++) {
+      int slot = (start + i) % size;
+      long context = idle.get(slot);
+      if (context != EMPTY && idle.compareAndSet(slot, context, EMPTY)) {
+        return context;
+      }
+    }
+    long context = NativeSecp256k1.cloneContext();
+    randomize(context);
+    return context;
+  }
+
+  /**
+   * Gives back a context obtained from acquire().
+   */
+  public void release(long context) {
+    if (randomizeInterval > 0 && releases.incrementAndGet() % randomizeInterval == 0) {
+      randomize(context);
+    }
+    offer(context);
+  }
+
+  /**
+   * Re-randomizes every idle context, one at a time, without blocking borrowers.
+   */
+  public void randomizeIdle() {
+    for (int slot = 0; slot < idle.length(); slot++) {
+      long context = idle.get(slot);
+      if (context != EMPTY && idle.compareAndSet(slot, context, EMPTY)) {
+        randomize(context);
+        offer(context);
+      }
+    }
+  }
+
+  /**
+   * Destroys the idle contexts, contexts still borrowed are destroyed on release.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (int slot = 0; slot < idle.length(); slot++) {
+      long context = idle.getAndSet(slot, EMPTY);
+      if (context != EMPTY) {
+        NativeSecp256k1.destroyContext(context);
+      }
+    }
+  }
+
+  private void offer(long context) {
+    if (!closed) {
+      int size = idle.length();
+      int start = ThreadLocalRandom.current().nextInt(size);
+      for (int i = 0; i < size; i++) {
+        int slot = (start + i) % size;
+        if (idle.get(slot) == EMPTY && idle.compareAndSet(slot, EMPTY, context)) {
+          // close() may have drained the slots meanwhile, take the context back if so
+          if (closed && idle.compareAndSet(slot, context, EMPTY)) {
+            NativeSecp256k1.destroyContext(context);
+          }
+          return;
+        }
+      }
+    }
+    NativeSecp256k1.destroyContext(context);
+  }
+
+  private void randomize(long context) {
+    byte[] seed = new byte[32];
+    random.nextBytes(seed);
+    NativeSecp256k1.randomizeContext(context, seed);
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>A BIP32 extended key: a private or public-only secp256k1 key with its chain
+ * code, from which child keys are derived.</p>
+ *
+ * <p>deriveRange() derives consecutive children of one parent at once: the
+ * HMAC-SHA512 tweaks are computed in Java, then all the children are tweaked in a
+ * single privKeyTweakAddBatch() or pubKeyTweakAddBatch() call instead of one or
+ * two native calls each, e.g. to provision the wallets of many accounts from
+ * one parent key. Private children come with their public key, computed in the
+ * same native call.</p>
+ *
+ * <p>Public keys are kept compressed as BIP32 hashes them. Instances are
+ * immutable and the getters return copies.</p>
+ */
+public final class Secp256k1ExtendedKey {
+
+    /** Added to an index to derive the hardened child, which requires the private parent */
+    public static final int HARDENED = 0x80000000;
+
+    /** Children derived per native call, to bound the direct memory used by large ranges */
+    static final int CHUNK = 1024;
+
+    private static final byte[] MASTER_KEY = "Bitcoin seed".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] privKey;
+    private final byte[] pubKey;
+    private final byte[] chainCode;
+    private final int depth;
+    private final int childNumber;
+
+    private Secp256k1ExtendedKey(byte[] privKey, byte[] pubKey, byte[] chainCode, int depth, int childNumber) {
+        this.privKey = privKey;
+        this.pubKey = pubKey;
+        this.chainCode = chainCode;
+        this.depth = depth;
+        this.childNumber = childNumber;
+    }
+
+    /**
+     * The master key of a BIP32 seed.
+     *
+     * @param seed 16 to 64 bytes of entropy, e.g. from a BIP39 mnemonic
+     * @throws IllegalArgumentException if the seed gives an invalid key, pick another one
+     */
+    public static Secp256k1ExtendedKey fromSeed(byte[] seed) {
+        Preconditions.checkArgument(seed.length >= 16 && seed.length <= 64);
+
+        byte[] i = hmac(MASTER_KEY).doFinal(seed);
+        byte[] privKey = copy(i, 0);
+        Preconditions.checkArgument(NativeSecp256k1.secKeyVerify(privKey), "Seed gives an invalid master key");
+        return new Secp256k1ExtendedKey(privKey, computePubkey(privKey), copy(i, 32), 0, 0);
+    }
+
+    /**
+     * @param privKey 32-byte secret key
+     * @param chainCode 32-byte chain code
+     */
+    public static Secp256k1ExtendedKey fromPrivKey(byte[] privKey, byte[] chainCode) {
+        Preconditions.checkArgument(privKey.length == 32 && chainCode.length == 32);
+        Preconditions.checkArgument(NativeSecp256k1.secKeyVerify(privKey), "Invalid private key");
+
+        return new Secp256k1ExtendedKey(privKey.clone(), computePubkey(privKey), chainCode.clone(), 0, 0);
+    }
+
+    /**
+     * @param pubKey 33 or 65-byte public key
+     * @param chainCode 32-byte chain code
+     */
+    public static Secp256k1ExtendedKey fromPubKey(byte[] pubKey, byte[] chainCode) {
+        Preconditions.checkArgument((pubKey.length == 33 || pubKey.length == 65) && chainCode.length == 32);
+        byte[] compressed = NativeSecp256k1.serializePubkey(pubKey, true);
+        Preconditions.checkArgument(compressed.length == 33, "Invalid public key");
+
+        return new Secp256k1ExtendedKey(null, compressed, chainCode.clone(), 0, 0);
+    }
+
+    /**
+     * Derives one child.
+     *
+     * @param index Child index, plus HARDENED for a hardened child
+     * @return the child, or null for the roughly 1 in 2^127 indexes giving an invalid
+     *         key, which BIP32 skips
+     */
+    public Secp256k1ExtendedKey derive(int index) {
+        return deriveRange(index, 1)[0];
+    }
+
+    /**
+     * Derives a descendant along a path of child indexes such as "m/44'/60'/0'/0",
+     * relative to this key; the leading "m" is optional and ' or h mark hardened
+     * indexes.
+     *
+     * @throws IllegalArgumentException if the path is malformed
+     * @throws IllegalStateException if an index of the path gives an invalid key
+     */
+    public Secp256k1ExtendedKey derive(String path) {
+        Secp256k1ExtendedKey key = this;
+        String[] elements = path.split("/");
+        for (int i = 0; i < elements.length; i++) {
+            String element = elements[i].trim();
+            if (i == 0 && (element.equals("m") || element.equals("M") || element.isEmpty())) {
+                continue;
+            }
+            boolean hardened = element.endsWith("'") || element.endsWith("h") || element.endsWith("H");
+            int index;
+            try {
+                index = Integer.parseInt(hardened ? element.substring(0, element.length() - 1) : element);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad path element '" + element + "' in " + path);
+            }
+            Preconditions.checkArgument(index >= 0, "Bad path element '%s' in %s", element, path);
+            key = key.derive(hardened ? index | HARDENED : index);
+            Preconditions.checkState(key != null, "Path %s gives an invalid key", path);
+        }
+        return key;
+    }
+
+    /**
+     * Derives count consecutive children from index from: private ones if this key
+     * is private, public-only ones otherwise (see neuter()).
+     *
+     * @param from First child index, plus HARDENED for hardened children
+     * @param count Number of children, the range may not cross from normal to hardened indexes
+     * @return the children in index order, with null for the indexes giving an invalid
+     *         key, which BIP32 skips
+     * @throws IllegalStateException if hardened children are asked of a public key
+     */
+    public Secp256k1ExtendedKey[] deriveRange(int from, int count) {
+        Preconditions.checkArgument(count >= 0);
+        Preconditions.checkArgument(count == 0 || (from < 0) == (from + count - 1 < 0), "Range crosses the hardened boundary");
+        Preconditions.checkState(from >= 0 || count == 0 || privKey != null, "Hardened children need the private key");
+
+        Secp256k1ExtendedKey[] children = new Secp256k1ExtendedKey[count];
+        Mac mac = hmac(chainCode);
+        int keyLen = privKey != null ? 32 : 33;
+        int childLen = privKey != null ? 32 + 33 : 33;
+        int chunk = Math.min(count, CHUNK);
+
+        ByteBuffer input = ByteBuffer.allocateDirect(keyLen + 32 * chunk);
+        ByteBuffer output = ByteBuffer.allocateDirect((childLen + 1) * chunk);
+        input.order(ByteOrder.nativeOrder());
+        output.order(ByteOrder.nativeOrder());
+        input.put(privKey != null ? privKey : pubKey);
+
+        byte[] data = new byte[37];
+        byte[][] chainCodes = new byte[chunk][];
+        for (int offset = 0; offset < count; offset += chunk) {
+            int n = Math.min(chunk, count - offset);
+
+            // I = HMAC-SHA512(chain code, 0x00 || privKey || index) if hardened, HMAC-SHA512(chain code, pubKey || index) otherwise
+            input.position(keyLen);
+            for (int i = 0; i < n; i++) {
+                int index = from + offset + i;
+                if (index < 0) {
+                    data[0] = 0;
+                    System.arraycopy(privKey, 0, data, 1, 32);
+                } else {
+                    System.arraycopy(pubKey, 0, data, 0, 33);
+                }
+                data[33] = (byte) (index >>> 24);
+                data[34] = (byte) (index >>> 16);
+                data[35] = (byte) (index >>> 8);
+                data[36] = (byte) index;
+                mac.update(data);
+                byte[] digest = mac.doFinal();
+                input.put(digest, 0, 32);
+                chainCodes[i] = copy(digest, 32);
+            }
+
+            if (privKey != null) {
+                NativeSecp256k1.privKeyTweakAddBatch(input, n, 33, output);
+            } else {
+                NativeSecp256k1.pubKeyTweakAddBatch(input, n, 33, 33, output);
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (output.get(childLen * n + i) == 0) {
+                    continue;
+                }
+                byte[] child = new byte[childLen];
+                output.position(childLen * i);
+                output.get(child);
+                children[offset + i] = privKey != null
+                    ? new Secp256k1ExtendedKey(copy(child, 0), copy(child, 32, 33), chainCodes[i], depth + 1, from + offset + i)
+                    : new Secp256k1ExtendedKey(null, child, chainCodes[i], depth + 1, from + offset + i);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @return this key without its private key, which derives the same normal children, public-only
+     */
+    public Secp256k1ExtendedKey neuter() {
+        return privKey == null ? this : new Secp256k1ExtendedKey(null, pubKey, chainCode, depth, childNumber);
+    }
+
+    public boolean isPrivate() {
+        return privKey != null;
+    }
+
+    /**
+     * @return the 32-byte secret key, null for a public-only key
+     */
+    public byte[] getPrivKey() {
+        return privKey == null ? null : privKey.clone();
+    }
+
+    /**
+     * @return the 33-byte compressed public key
+     */
+    public byte[] getPubKey() {
+        return pubKey.clone();
+    }
+
+    public byte[] getChainCode() {
+        return chainCode.clone();
+    }
+
+    /**
+     * @return the number of derivations from the master key, or from the key built with fromPrivKey() or fromPubKey()
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the index this key was derived with, HARDENED included, 0 for a master key
+     */
+    public int getChildNumber() {
+        return childNumber;
+    }
+
+    private static byte[] computePubkey(byte[] privKey) {
+        byte[] pub = NativeSecp256k1.computePubkey(privKey, true);
+        Preconditions.checkState(pub.length == 33, "Public key computation failed");
+        return pub;
+    }
+
+    private static Mac hmac(byte[] key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA512");
+            mac.init(new SecretKeySpec(key, "HmacSHA512"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] copy(byte[] src, int offset) {
+        return copy(src, offset, 32);
+    }
+
+    private static byte[] copy(byte[] src, int offset, int len) {
+        byte[] r = new byte[len];
+        System.arraycopy(src, offset, r, 0, len);
+        return r;
+    }
+}
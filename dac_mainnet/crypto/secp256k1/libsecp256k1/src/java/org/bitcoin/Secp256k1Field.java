@@ -0,0 +1,480 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+/**
+ * Arithmetic modulo the secp256k1 field prime p = 2^256 - 2^32 - 977, following
+ * src/field_10x26_impl.h.
+ *
+ * <p>An element is a long[10] of 26-bit limbs (22 bits for the top one), with
+ * the same magnitude rules as the C code: add() and mulInt() let the limbs grow,
+ * mul() and sqr() accept inputs of magnitude up to 8 and return magnitude 1,
+ * and only normalize() gives the unique representation.</p>
+ */
+final class Secp256k1Field {
+
+    private static final long M = 0x3FFFFFFL;
+    private static final long M9 = 0x03FFFFFL;
+
+    private Secp256k1Field() {
+    }
+
+    static long[] create() {
+        return new long[10];
+    }
+
+    static void setInt(long[] r, int a) {
+        r[0] = a;
+        r[1] = r[2] = r[3] = r[4] = r[5] = r[6] = r[7] = r[8] = r[9] = 0;
+    }
+
+    static void copy(long[] r, long[] a) {
+        System.arraycopy(a, 0, r, 0, 10);
+    }
+
+    /**
+     * Sets r to the 32-byte big endian value at in[offset], returns false if it is not below p.
+     */
+    static boolean setBytes(long[] r, byte[] in, int offset) {
+        for (int i = 0; i < 10; i++) {
+            r[i] = 0;
+        }
+        for (int i = 0; i < 256; i += 8) {
+            long b = in[offset + 31 - (i >> 3)] & 0xFF;
+            r[i / 26] |= (b << (i % 26)) & M;
+            if (i % 26 > 18) {
+                r[i / 26 + 1] |= b >>> (26 - i % 26);
+            }
+        }
+        return !(r[9] == M9 && (r[8] & r[7] & r[6] & r[5] & r[4] & r[3] & r[2]) == M
+            && (r[1] + 0x40L + ((r[0] + 0x3D1L) >>> 26)) > M);
+    }
+
+    /**
+     * Writes the normalized element a as a 32-byte big endian value at out[offset].
+     */
+    static void getBytes(byte[] out, int offset, long[] a) {
+        for (int i = 0; i < 256; i += 8) {
+            long b = a[i / 26] >>> (i % 26);
+            if (i % 26 > 18) {
+                b |= a[i / 26 + 1] << (26 - i % 26);
+            }
+            out[offset + 31 - (i >> 3)] = (byte) b;
+        }
+    }
+
+    static void normalize(long[] r) {
+        long t0 = r[0], t1 = r[1], t2 = r[2], t3 = r[3], t4 = r[4],
+             t5 = r[5], t6 = r[6], t7 = r[7], t8 = r[8], t9 = r[9];
+
+        /* Reduce t9 at the start so there will be at most a single carry from the first pass */
+        long x = t9 >>> 22; t9 &= M9;
+
+        /* The first pass ensures the magnitude is 1, ... */
+        t0 += x * 0x3D1L; t1 += x << 6;
+        t1 += t0 >>> 26; t0 &= M;
+        t2 += t1 >>> 26; t1 &= M;
+        t3 += t2 >>> 26; t2 &= M; long m = t2;
+        t4 += t3 >>> 26; t3 &= M; m &= t3;
+        t5 += t4 >>> 26; t4 &= M; m &= t4;
+        t6 += t5 >>> 26; t5 &= M; m &= t5;
+        t7 += t6 >>> 26; t6 &= M; m &= t6;
+        t8 += t7 >>> 26; t7 &= M; m &= t7;
+        t9 += t8 >>> 26; t8 &= M; m &= t8;
+
+        /* ... except for a possible carry at bit 22 of t9 (i.e. bit 256 of the field element) */
+        x = (t9 >>> 22) | ((t9 == M9 && m == M && (t1 + 0x40L + ((t0 + 0x3D1L) >>> 26)) > M) ? 1 : 0);
+
+        /* Apply the final reduction */
+        t0 += x * 0x3D1L; t1 += x << 6;
+        t1 += t0 >>> 26; t0 &= M;
+        t2 += t1 >>> 26; t1 &= M;
+        t3 += t2 >>> 26; t2 &= M;
+        t4 += t3 >>> 26; t3 &= M;
+        t5 += t4 >>> 26; t4 &= M;
+        t6 += t5 >>> 26; t5 &= M;
+        t7 += t6 >>> 26; t6 &= M;
+        t8 += t7 >>> 26; t7 &= M;
+        t9 += t8 >>> 26; t8 &= M;
+
+        /* Mask off the possible multiple of 2^256 from the final reduction */
+        t9 &= M9;
+
+        r[0] = t0; r[1] = t1; r[2] = t2; r[3] = t3; r[4] = t4;
+        r[5] = t5; r[6] = t6; r[7] = t7; r[8] = t8; r[9] = t9;
+    }
+
+    static void normalizeWeak(long[] r) {
+        long t0 = r[0], t1 = r[1], t2 = r[2], t3 = r[3], t4 = r[4],
+             t5 = r[5], t6 = r[6], t7 = r[7], t8 = r[8], t9 = r[9];
+
+        long x = t9 >>> 22; t9 &= M9;
+
+        t0 += x * 0x3D1L; t1 += x << 6;
+        t1 += t0 >>> 26; t0 &= M;
+        t2 += t1 >>> 26; t1 &= M;
+        t3 += t2 >>> 26; t2 &= M;
+        t4 += t3 >>> 26; t3 &= M;
+        t5 += t4 >>> 26; t4 &= M;
+        t6 += t5 >>> 26; t5 &= M;
+        t7 += t6 >>> 26; t6 &= M;
+        t8 += t7 >>> 26; t7 &= M;
+        t9 += t8 >>> 26; t8 &= M;
+
+        r[0] = t0; r[1] = t1; r[2] = t2; r[3] = t3; r[4] = t4;
+        r[5] = t5; r[6] = t6; r[7] = t7; r[8] = t8; r[9] = t9;
+    }
+
+    /**
+     * Returns true if r is zero modulo p, without modifying it.
+     */
+    static boolean normalizesToZero(long[] r) {
+        long t0 = r[0], t1 = r[1], t2 = r[2], t3 = r[3], t4 = r[4],
+             t5 = r[5], t6 = r[6], t7 = r[7], t8 = r[8], t9 = r[9];
+
+        /* z0 tracks a possible raw value of 0, z1 tracks a possible raw value of P */
+        long z0, z1;
+
+        long x = t9 >>> 22; t9 &= M9;
+
+        t0 += x * 0x3D1L; t1 += x << 6;
+        t1 += t0 >>> 26; t0 &= M; z0  = t0; z1  = t0 ^ 0x3D0L;
+        t2 += t1 >>> 26; t1 &= M; z0 |= t1; z1 &= t1 ^ 0x40L;
+        t3 += t2 >>> 26; t2 &= M; z0 |= t2; z1 &= t2;
+        t4 += t3 >>> 26; t3 &= M; z0 |= t3; z1 &= t3;
+        t5 += t4 >>> 26; t4 &= M; z0 |= t4; z1 &= t4;
+        t6 += t5 >>> 26; t5 &= M; z0 |= t5; z1 &= t5;
+        t7 += t6 >>> 26; t6 &= M; z0 |= t6; z1 &= t6;
+        t8 += t7 >>> 26; t7 &= M; z0 |= t7; z1 &= t7;
+        t9 += t8 >>> 26; t8 &= M; z0 |= t8; z1 &= t8;
+                                  z0 |= t9; z1 &= t9 ^ 0x3C00000L;
+
+        return z0 == 0 || z1 == M;
+    }
+
+    /**
+     * Requires a normalized input.
+     */
+    static boolean isZero(long[] a) {
+        return (a[0] | a[1] | a[2] | a[3] | a[4] | a[5] | a[6] | a[7] | a[8] | a[9]) == 0;
+    }
+
+    /**
+     * Requires a normalized input.
+     */
+    static boolean isOdd(long[] a) {
+        return (a[0] & 1) != 0;
+    }
+
+    /**
+     * Returns true if a (magnitude 1) and b (magnitude up to 31) are equal modulo p.
+     */
+    static boolean equal(long[] a, long[] b, long[] tmp) {
+        negate(tmp, a, 1);
+        add(tmp, b);
+        return normalizesToZero(tmp);
+    }
+
+    /**
+     * Sets r to -a, where m is an upper bound on the magnitude of a.
+     * The result has magnitude m + 1.
+     */
+    static void negate(long[] r, long[] a, int m) {
+        long k = 2L * (m + 1);
+        r[0] = 0x3FFFC2FL * k - a[0];
+        r[1] = 0x3FFFFBFL * k - a[1];
+        r[2] = M * k - a[2];
+        r[3] = M * k - a[3];
+        r[4] = M * k - a[4];
+        r[5] = M * k - a[5];
+        r[6] = M * k - a[6];
+        r[7] = M * k - a[7];
+        r[8] = M * k - a[8];
+        r[9] = M9 * k - a[9];
+    }
+
+    /**
+     * Multiplies r by a small integer, multiplying its magnitude as well.
+     */
+    static void mulInt(long[] r, int a) {
+        for (int i = 0; i < 10; i++) {
+            r[i] *= a;
+        }
+    }
+
+    /**
+     * Adds a to r, the magnitude of the result is the sum of both magnitudes.
+     */
+    static void add(long[] r, long[] a) {
+        for (int i = 0; i < 10; i++) {
+            r[i] += a[i];
+        }
+    }
+
+    static void mul(long[] r, long[] a, long[] b) {
+        long a0 = a[0], a1 = a[1], a2 = a[2], a3 = a[3], a4 = a[4],
+             a5 = a[5], a6 = a[6], a7 = a[7], a8 = a[8], a9 = a[9];
+        long b0 = b[0], b1 = b[1], b2 = b[2], b3 = b[3], b4 = b[4],
+             b5 = b[5], b6 = b[6], b7 = b[7], b8 = b[8], b9 = b[9];
+
+        long t0 = a0 * b0;
+        long t1 = a0 * b1 + a1 * b0;
+        long t2 = a0 * b2 + a1 * b1 + a2 * b0;
+        long t3 = a0 * b3 + a1 * b2 + a2 * b1 + a3 * b0;
+        long t4 = a0 * b4 + a1 * b3 + a2 * b2 + a3 * b1 + a4 * b0;
+        long t5 = a0 * b5 + a1 * b4 + a2 * b3 + a3 * b2 + a4 * b1 + a5 * b0;
+        long t6 = a0 * b6 + a1 * b5 + a2 * b4 + a3 * b3 + a4 * b2 + a5 * b1 + a6 * b0;
+        long t7 = a0 * b7 + a1 * b6 + a2 * b5 + a3 * b4 + a4 * b3 + a5 * b2 + a6 * b1 + a7 * b0;
+        long t8 = a0 * b8 + a1 * b7 + a2 * b6 + a3 * b5 + a4 * b4 + a5 * b3 + a6 * b2 + a7 * b1 + a8 * b0;
+        long t9 = a0 * b9 + a1 * b8 + a2 * b7 + a3 * b6 + a4 * b5 + a5 * b4 + a6 * b3 + a7 * b2 + a8 * b1 + a9 * b0;
+        long t10 = a1 * b9 + a2 * b8 + a3 * b7 + a4 * b6 + a5 * b5 + a6 * b4 + a7 * b3 + a8 * b2 + a9 * b1;
+        long t11 = a2 * b9 + a3 * b8 + a4 * b7 + a5 * b6 + a6 * b5 + a7 * b4 + a8 * b3 + a9 * b2;
+        long t12 = a3 * b9 + a4 * b8 + a5 * b7 + a6 * b6 + a7 * b5 + a8 * b4 + a9 * b3;
+        long t13 = a4 * b9 + a5 * b8 + a6 * b7 + a7 * b6 + a8 * b5 + a9 * b4;
+        long t14 = a5 * b9 + a6 * b8 + a7 * b7 + a8 * b6 + a9 * b5;
+        long t15 = a6 * b9 + a7 * b8 + a8 * b7 + a9 * b6;
+        long t16 = a7 * b9 + a8 * b8 + a9 * b7;
+        long t17 = a8 * b9 + a9 * b8;
+        long t18 = a9 * b9;
+
+        /* Carry the 512-bit product into 26-bit limbs t0..t19 */
+        t1 += t0 >>> 26; t0 &= M;
+        t2 += t1 >>> 26; t1 &= M;
+        t3 += t2 >>> 26; t2 &= M;
+        t4 += t3 >>> 26; t3 &= M;
+        t5 += t4 >>> 26; t4 &= M;
+        t6 += t5 >>> 26; t5 &= M;
+        t7 += t6 >>> 26; t6 &= M;
+        t8 += t7 >>> 26; t7 &= M;
+        t9 += t8 >>> 26; t8 &= M;
+        t10 += t9 >>> 26; t9 &= M;
+        t11 += t10 >>> 26; t10 &= M;
+        t12 += t11 >>> 26; t11 &= M;
+        t13 += t12 >>> 26; t12 &= M;
+        t14 += t13 >>> 26; t13 &= M;
+        t15 += t14 >>> 26; t14 &= M;
+        t16 += t15 >>> 26; t15 &= M;
+        t17 += t16 >>> 26; t16 &= M;
+        t18 += t17 >>> 26; t17 &= M;
+        long t19 = t18 >>> 26; t18 &= M;
+
+        /* Fold limbs 10..19 back in, as 2^260 = 0x1000003D10 (mod p) */
+        t9 += t19 * 0x3D10L; t10 += t19 << 10;
+        t8 += t18 * 0x3D10L; t9 += t18 << 10;
+        t7 += t17 * 0x3D10L; t8 += t17 << 10;
+        t6 += t16 * 0x3D10L; t7 += t16 << 10;
+        t5 += t15 * 0x3D10L; t6 += t15 << 10;
+        t4 += t14 * 0x3D10L; t5 += t14 << 10;
+        t3 += t13 * 0x3D10L; t4 += t13 << 10;
+        t2 += t12 * 0x3D10L; t3 += t12 << 10;
+        t1 += t11 * 0x3D10L; t2 += t11 << 10;
+        t0 += t10 * 0x3D10L; t1 += t10 << 10;
+
+        /* Carry again and fold bits 256 and up of t9, as 2^256 = 0x1000003D1 (mod p) */
+        t1 += t0 >>> 26; t0 &= M;
+        t2 += t1 >>> 26; t1 &= M;
+        t3 += t2 >>> 26; t2 &= M;
+        t4 += t3 >>> 26; t3 &= M;
+        t5 += t4 >>> 26; t4 &= M;
+        t6 += t5 >>> 26; t5 &= M;
+        t7 += t6 >>> 26; t6 &= M;
+        t8 += t7 >>> 26; t7 &= M;
+        t9 += t8 >>> 26; t8 &= M;
+        long x = t9 >>> 22; t9 &= M9;
+        t0 += x * 0x3D1L; t1 += x << 6;
+        t1 += t0 >>> 26; t0 &= M;
+        t2 += t1 >>> 26; t1 &= M;
+
+        r[0] = t0; r[1] = t1; r[2] = t2; r[3] = t3; r[4] = t4;
+        r[5] = t5; r[6] = t6; r[7] = t7; r[8] = t8; r[9] = t9;
+    }
+
+    static void sqr(long[] r, long[] a) {
+        long a0 = a[0], a1 = a[1], a2 = a[2], a3 = a[3], a4 = a[4],
+             a5 = a[5], a6 = a[6], a7 = a[7], a8 = a[8], a9 = a[9];
+        long d0 = a0 * 2, d1 = a1 * 2, d2 = a2 * 2, d3 = a3 * 2, d4 = a4 * 2, d5 = a5 * 2, d6 = a6 * 2, d7 = a7 * 2, d8 = a8 * 2;
+
+        long t0 = a0 * a0;
+        long t1 = d0 * a1;
+        long t2 = d0 * a2 + a1 * a1;
+        long t3 = d0 * a3 + d1 * a2;
+        long t4 = d0 * a4 + d1 * a3 + a2 * a2;
+        long t5 = d0 * a5 + d1 * a4 + d2 * a3;
+        long t6 = d0 * a6 + d1 * a5 + d2 * a4 + a3 * a3;
+        long t7 = d0 * a7 + d1 * a6 + d2 * a5 + d3 * a4;
+        long t8 = d0 * a8 + d1 * a7 + d2 * a6 + d3 * a5 + a4 * a4;
+        long t9 = d0 * a9 + d1 * a8 + d2 * a7 + d3 * a6 + d4 * a5;
+        long t10 = d1 * a9 + d2 * a8 + d3 * a7 + d4 * a6 + a5 * a5;
+        long t11 = d2 * a9 + d3 * a8 + d4 * a7 + d5 * a6;
+        long t12 = d3 * a9 + d4 * a8 + d5 * a7 + a6 * a6;
+        long t13 = d4 * a9 + d5 * a8 + d6 * a7;
+        long t14 = d5 * a9 + d6 * a8 + a7 * a7;
+        long t15 = d6 * a9 + d7 * a8;
+        long t16 = d7 * a9 + a8 * a8;
+        long t17 = d8 * a9;
+        long t18 = a9 * a9;
+
+        /* Carry the 512-bit product into 26-bit limbs t0..t19 */
+        t1 += t0 >>> 26; t0 &= M;
+        t2 += t1 >>> 26; t1 &= M;
+        t3 += t2 >>> 26; t2 &= M;
+        t4 += t3 >>> 26; t3 &= M;
+        t5 += t4 >>> 26; t4 &= M;
+        t6 += t5 >>> 26; t5 &= M;
+        t7 += t6 >>> 26; t6 &= M;
+        t8 += t7 >>> 26; t7 &= M;
+        t9 += t8 >>> 26; t8 &= M;
+        t10 += t9 >>> 26; t9 &= M;
+        t11 += t10 >>> 26; t10 &= M;
+        t12 += t11 >>> 26; t11 &= M;
+        t13 += t12 >>> 26; t12 &= M;
+        t14 += t13 >>> 26; t13 &= M;
+        t15 += t14 >>> 26; t14 &= M;
+        t16 += t15 >>> 26; t15 &= M;
+        t17 += t16 >>> 26; t16 &= M;
+        t18 += t17 >>> 26; t17 &= M;
+        long t19 = t18 >>> 26; t18 &= M;
+
+        /* Fold limbs 10..19 back in, as 2^260 = 0x1000003D10 (mod p) */
+        t9 += t19 * 0x3D10L; t10 += t19 << 10;
+        t8 += t18 * 0x3D10L; t9 += t18 << 10;
+        t7 += t17 * 0x3D10L; t8 += t17 << 10;
+        t6 += t16 * 0x3D10L; t7 += t16 << 10;
+        t5 += t15 * 0x3D10L; t6 += t15 << 10;
+        t4 += t14 * 0x3D10L; t5 += t14 << 10;
+        t3 += t13 * 0x3D10L; t4 += t13 << 10;
+        t2 += t12 * 0x3D10L; t3 += t12 << 10;
+        t1 += t11 * 0x3D10L; t2 += t11 << 10;
+        t0 += t10 * 0x3D10L; t1 += t10 << 10;
+
+        /* Carry again and fold bits 256 and up of t9, as 2^256 = 0x1000003D1 (mod p) */
+        t1 += t0 >>> 26; t0 &= M;
+        t2 += t1 >>> 26; t1 &= M;
+        t3 += t2 >>> 26; t2 &= M;
+        t4 += t3 >>> 26; t3 &= M;
+        t5 += t4 >>> 26; t4 &= M;
+        t6 += t5 >>> 26; t5 &= M;
+        t7 += t6 >>> 26; t6 &= M;
+        t8 += t7 >>> 26; t7 &= M;
+        t9 += t8 >>> 26; t8 &= M;
+        long x = t9 >>> 22; t9 &= M9;
+        t0 += x * 0x3D1L; t1 += x << 6;
+        t1 += t0 >>> 26; t0 &= M;
+        t2 += t1 >>> 26; t1 &= M;
+
+        r[0] = t0; r[1] = t1; r[2] = t2; r[3] = t3; r[4] = t4;
+        r[5] = t5; r[6] = t6; r[7] = t7; r[8] = t8; r[9] = t9;
+    }
+
+    /**
+     * Sets r to the inverse of a, as a^(p - 2). r may be a itself.
+     */
+    static void inv(long[] r, long[] a) {
+        long[] x2 = create(), x3 = create(), x6 = create(), x11 = create(), x22 = create(), t1 = create();
+
+        /* The binary representation of (p - 2) has 5 blocks of 1s, with lengths in
+         * { 1, 2, 22, 223 }. Use an addition chain to calculate 2^n - 1 for each block:
+         * [1], [2], 3, 6, 9, 11, [22], 44, 88, 176, 220, [223]
+         */
+        powChain(x2, x3, x6, x11, x22, t1, a);
+
+        sqrN(t1, 23);
+        mul(t1, t1, x22);
+        sqrN(t1, 5);
+        mul(t1, t1, a);
+        sqrN(t1, 3);
+        mul(t1, t1, x2);
+        sqrN(t1, 2);
+        mul(r, a, t1);
+    }
+
+    /**
+     * Sets r to a square root of a, as a^((p + 1) / 4), returns false if a has none.
+     * r must not be a itself.
+     */
+    static boolean sqrt(long[] r, long[] a) {
+        long[] x2 = create(), x3 = create(), x6 = create(), x11 = create(), x22 = create(), t1 = create();
+
+        /* The binary representation of (p + 1)/4 has 3 blocks of 1s, with lengths in
+         * { 2, 22, 223 }. Use an addition chain to calculate 2^n - 1 for each block:
+         * 1, [2], 3, 6, 9, 11, [22], 44, 88, 176, 220, [223]
+         */
+        powChain(x2, x3, x6, x11, x22, t1, a);
+
+        sqrN(t1, 23);
+        mul(t1, t1, x22);
+        sqrN(t1, 6);
+        mul(t1, t1, x2);
+        sqr(t1, t1);
+        sqr(r, t1);
+
+        /* Check that a square root was actually calculated */
+        sqr(t1, r);
+        return equal(t1, a, x2);
+    }
+
+    /**
+     * Shared head of the inv() and sqrt() addition chains, leaves a^(2^223 - 1) in t1.
+     */
+    private static void powChain(long[] x2, long[] x3, long[] x6, long[] x11, long[] x22, long[] t1, long[] a) {
+        sqr(x2, a);
+        mul(x2, x2, a);
+
+        sqr(x3, x2);
+        mul(x3, x3, a);
+
+        copy(x6, x3);
+        sqrN(x6, 3);
+        mul(x6, x6, x3);
+
+        copy(x11, x6);
+        sqrN(x11, 3);
+        mul(x11, x11, x3);
+        sqrN(x11, 2);
+        mul(x11, x11, x2);
+
+        copy(x22, x11);
+        sqrN(x22, 11);
+        mul(x22, x22, x11);
+
+        long[] x44 = x6;
+        copy(x44, x22);
+        sqrN(x44, 22);
+        mul(x44, x44, x22);
+
+        copy(t1, x44);
+        sqrN(t1, 44);
+        mul(t1, t1, x44);
+
+        long[] x88 = x11;
+        copy(x88, t1);
+        sqrN(t1, 88);
+        mul(t1, t1, x88);
+
+        sqrN(t1, 44);
+        mul(t1, t1, x44);
+
+        sqrN(t1, 3);
+        mul(t1, t1, x3);
+    }
+
+    private static void sqrN(long[] r, int n) {
+        for (int i = 0; i < n; i++) {
+            sqr(r, r);
+        }
+    }
+}
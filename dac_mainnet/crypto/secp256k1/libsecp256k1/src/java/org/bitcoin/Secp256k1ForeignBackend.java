@@ -0,0 +1,963 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.io.File;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * <p>Calls the public API of include/secp256k1.h through java.lang.foreign,
+ * without the JNI glue: direct buffers are passed as segments over the same
+ * memory, byte[] arguments are copied into a per-thread native scratch segment,
+ * and no Java arrays are allocated on the native side.</p>
+ *
+ * <p>Selected with -Dorg.bitcoin.secp256k1.engine=ffm. It is compiled apart from
+ * the other sources since it needs JDK 22, or JDK 21 with --enable-preview: it
+ * only uses the parts of the API which did not change between the two. The
+ * library is looked up in java.library.path, then in the system search path.
+ * Run with --enable-native-access=ALL-UNNAMED to silence the restricted method
+ * warnings.</p>
+ */
+final class Secp256k1ForeignBackend implements Secp256k1Backend {
+
+    private static final int CONTEXT_SIGN_VERIFY = (1 | 1 << 8) | (1 | 1 << 9);
+    private static final int EC_UNCOMPRESSED = 1 << 1;
+    private static final int EC_COMPRESSED = 1 << 1 | 1 << 8;
+
+    private static final Linker LINKER = Linker.nativeLinker();
+    private static final SymbolLookup LIBRARY = lookupLibrary();
+
+    /* size_t is mapped to JAVA_LONG, only 64-bit platforms are supported */
+    private static final MethodHandle CONTEXT_CREATE = function("secp256k1_context_create", ADDRESS, JAVA_INT);
+    private static final MethodHandle CONTEXT_DESTROY = function("secp256k1_context_destroy", null, ADDRESS);
+    private static final MethodHandle CONTEXT_RANDOMIZE = function("secp256k1_context_randomize", JAVA_INT, ADDRESS, ADDRESS);
+    private static final MethodHandle SIGNATURE_PARSE_DER = function("secp256k1_ecdsa_signature_parse_der", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_LONG);
+    private static final MethodHandle SIGNATURE_PARSE_COMPACT = function("secp256k1_ecdsa_signature_parse_compact", JAVA_INT, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle SIGNATURE_SERIALIZE_DER = function("secp256k1_ecdsa_signature_serialize_der", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle SIGNATURE_SERIALIZE_COMPACT = function("secp256k1_ecdsa_signature_serialize_compact", JAVA_INT, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle ECDSA_VERIFY = function("secp256k1_ecdsa_verify", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle ECDSA_SIGN = function("secp256k1_ecdsa_sign", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle SECKEY_VERIFY = function("secp256k1_ec_seckey_verify", JAVA_INT, ADDRESS, ADDRESS);
+    private static final MethodHandle PUBKEY_CREATE = function("secp256k1_ec_pubkey_create", JAVA_INT, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle PUBKEY_PARSE = function("secp256k1_ec_pubkey_parse", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_LONG);
+    private static final MethodHandle PUBKEY_SERIALIZE = function("secp256k1_ec_pubkey_serialize", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS, JAVA_INT);
+    private static final MethodHandle PRIVKEY_TWEAK_ADD = function("secp256k1_ec_privkey_tweak_add", JAVA_INT, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle PRIVKEY_TWEAK_MUL = function("secp256k1_ec_privkey_tweak_mul", JAVA_INT, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle PUBKEY_TWEAK_ADD = function("secp256k1_ec_pubkey_tweak_add", JAVA_INT, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle PUBKEY_TWEAK_MUL = function("secp256k1_ec_pubkey_tweak_mul", JAVA_INT, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle ECDH = function("secp256k1_ecdh", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle RECOVERABLE_PARSE_COMPACT = function("secp256k1_ecdsa_recoverable_signature_parse_compact", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_INT);
+    private static final MethodHandle RECOVERABLE_SERIALIZE_COMPACT = function("secp256k1_ecdsa_recoverable_signature_serialize_compact", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle ECDSA_SIGN_RECOVERABLE = function("secp256k1_ecdsa_sign_recoverable", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS, ADDRESS, ADDRESS);
+    private static final MethodHandle ECDSA_RECOVER = function("secp256k1_ecdsa_recover", JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS);
+
+    private static final MemorySegment CONTEXT = contextCreate();
+
+    /* Same locking as the JNI glue: randomize() and cleanup() need exclusive use of the context */
+    private static final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
+    private static final Lock r = rwl.readLock();
+    private static final Lock w = rwl.writeLock();
+
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    @Override
+    public boolean verify(byte[] data, byte[] signature, byte[] pub) {
+        Scratch s = scratch.get();
+        s.copyIn(data, signature, pub);
+        r.lock();
+        try {
+          return verify(s, s.in, s.in.asSlice(32), signature.length, s.in.asSlice(32 + signature.length), pub.length);
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public boolean verifyCompact(byte[] data, byte[] signature, byte[] pub) {
+        Scratch s = scratch.get();
+        s.copyIn(data, signature, pub);
+        r.lock();
+        try {
+          return verifyCompact(s, s.in, pub.length) == 1;
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int verifyCompact(ByteBuffer input, int pubLen) {
+        Scratch s = scratch.get();
+        r.lock();
+        try {
+          return verifyCompact(s, segment(input), pubLen);
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public byte[] verifyBatch(ByteBuffer input, int count, int[] sigOffsets, int[] sigLens, int[] pubOffsets, int[] pubLens) {
+        Scratch s = scratch.get();
+        MemorySegment in = segment(input);
+        byte[] bitmap = new byte[(count + 7) / 8];
+        r.lock();
+        try {
+          for (int i = 0; i < count; i++) {
+              if (verify(s, in.asSlice(32L * i), in.asSlice(sigOffsets[i]), sigLens[i], in.asSlice(pubOffsets[i]), pubLens[i])) {
+                  bitmap[i >> 3] = (byte) (bitmap[i >> 3] | 1 << (i & 7));
+              }
+          }
+        } finally {
+          r.unlock();
+        }
+        return bitmap;
+    }
+
+    @Override
+    public byte[] parsePubkey(byte[] pub) {
+        Scratch s = scratch.get();
+        s.copyIn(pub);
+        r.lock();
+        try {
+          return pubkeyParse(s.pub, s.in, pub.length) == 1 ? s.pub.toArray(JAVA_BYTE) : new byte[0];
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public boolean verifyParsed(byte[] data, byte[] signature, byte[] parsedPub) {
+        Scratch s = scratch.get();
+        s.copyIn(data, signature);
+        MemorySegment.copy(parsedPub, 0, s.pub, JAVA_BYTE, 0, 64);
+        r.lock();
+        try {
+          return signatureParseDer(s.sig, s.in.asSlice(32), signature.length) == 1 && ecdsaVerify(s.sig, s.in, s.pub) == 1;
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public byte[] sign(byte[] data, byte[] sec) {
+        Scratch s = scratch.get();
+        s.copyIn(data, sec);
+        r.lock();
+        try {
+          int sigLen = sign(s, s.in, s.out);
+          return s.out.asSlice(0, sigLen).toArray(JAVA_BYTE);
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int sign(ByteBuffer input, ByteBuffer output) {
+        Scratch s = scratch.get();
+        r.lock();
+        try {
+          return sign(s, segment(input), segment(output));
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public byte[] signCompact(byte[] data, byte[] sec) {
+        Scratch s = scratch.get();
+        s.copyIn(data, sec);
+        r.lock();
+        try {
+          int sigLen = signCompact(s, s.in, s.out);
+          return s.out.asSlice(0, sigLen).toArray(JAVA_BYTE);
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int signCompact(ByteBuffer input, ByteBuffer output) {
+        Scratch s = scratch.get();
+        r.lock();
+        try {
+          return signCompact(s, segment(input), segment(output));
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int signBatch(ByteBuffer input, int count, boolean sharedKey, ByteBuffer output) {
+        Scratch s = scratch.get();
+        MemorySegment in = segment(input);
+        MemorySegment out = segment(output);
+        int signed = 0;
+        r.lock();
+        try {
+          for (int i = 0; i < count; i++) {
+              MemorySegment sec = in.asSlice(32L * count + (sharedKey ? 0 : 32L * i));
+              int ret = ecdsaSign(s.sig, in.asSlice(32L * i), sec);
+              if (ret == 1) {
+                  signatureSerializeCompact(out.asSlice(64L * i), s.sig);
+                  signed++;
+              } else {
+                  out.asSlice(64L * i, 64).fill((byte) 0);
+              }
+              out.set(JAVA_BYTE, 64L * count + i, (byte) ret);
+          }
+        } finally {
+          r.unlock();
+        }
+        return signed;
+    }
+
+    @Override
+    public boolean secKeyVerify(byte[] seckey) {
+        Scratch s = scratch.get();
+        s.copyIn(seckey);
+        r.lock();
+        try {
+          return seckeyVerify(s.in) == 1;
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public byte[] computePubkey(byte[] seckey) {
+        Scratch s = scratch.get();
+        s.copyIn(seckey);
+        r.lock();
+        try {
+          int pubLen = computePubkey(s, s.in, s.out);
+          return s.out.asSlice(0, pubLen).toArray(JAVA_BYTE);
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int computePubkey(ByteBuffer input, ByteBuffer output, boolean compressed) {
+        Scratch s = scratch.get();
+        r.lock();
+        try {
+          return pubkeyCreate(s.pub, segment(input)) == 1 ? serialize(s, segment(output), compressed ? 33 : 65) : 0;
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public byte[] serializePubkey(byte[] pubkey, boolean compressed) {
+        Scratch s = scratch.get();
+        s.copyIn(pubkey);
+        r.lock();
+        try {
+          int pubLen = pubkeyParse(s.pub, s.in, pubkey.length) == 1 ? serialize(s, s.out, compressed ? 33 : 65) : 0;
+          return s.out.asSlice(0, pubLen).toArray(JAVA_BYTE);
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int serializePubkey(ByteBuffer input, int pubLen, boolean compressed, ByteBuffer output) {
+        Scratch s = scratch.get();
+        r.lock();
+        try {
+          return pubkeyParse(s.pub, segment(input), pubLen) == 1 ? serialize(s, segment(output), compressed ? 33 : 65) : 0;
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public byte[] privKeyTweakAdd(byte[] privkey, byte[] tweak) {
+        return privKeyTweak(privkey, tweak, false);
+    }
+
+    @Override
+    public int privKeyTweakAdd(ByteBuffer input, ByteBuffer output) {
+        return privKeyTweak(input, output, false);
+    }
+
+    @Override
+    public int privKeyTweakAddBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output) {
+        Scratch s = scratch.get();
+        MemorySegment in = segment(input);
+        MemorySegment out = segment(output);
+        int tweaked = 0;
+        r.lock();
+        try {
+          for (int i = 0; i < count; i++) {
+              MemorySegment child = out.asSlice((32L + pubLen) * i, 32 + pubLen);
+              MemorySegment.copy(in, 0, child, 0, 32);
+              int ret = privkeyTweakAdd(child, in.asSlice(32 + 32L * i));
+              if (ret == 1 && pubLen != 0) {
+                  ret = pubkeyCreate(s.pub, child) == 1 ? serialize(s, child.asSlice(32), pubLen) : 0;
+              }
+              if (ret != 0) {
+                  tweaked++;
+              } else {
+                  child.fill((byte) 0);
+              }
+              out.set(JAVA_BYTE, (32L + pubLen) * count + i, (byte) (ret == 0 ? 0 : 1));
+          }
+        } finally {
+          r.unlock();
+        }
+        return tweaked;
+    }
+
+    @Override
+    public byte[] privKeyTweakMul(byte[] privkey, byte[] tweak) {
+        return privKeyTweak(privkey, tweak, true);
+    }
+
+    @Override
+    public int privKeyTweakMul(ByteBuffer input, ByteBuffer output) {
+        return privKeyTweak(input, output, true);
+    }
+
+    @Override
+    public byte[] pubKeyTweakAdd(byte[] pubkey, byte[] tweak) {
+        return pubKeyTweak(pubkey, tweak, false);
+    }
+
+    @Override
+    public int pubKeyTweakAdd(ByteBuffer input, int pubLen, ByteBuffer output, boolean compressed) {
+        return pubKeyTweak(input, pubLen, output, false, compressed);
+    }
+
+    @Override
+    public int pubKeyTweakAddBatch(ByteBuffer input, int count, int pubLen, int outLen, ByteBuffer output) {
+        Scratch s = scratch.get();
+        MemorySegment in = segment(input);
+        MemorySegment out = segment(output);
+        int tweaked = 0;
+        r.lock();
+        try {
+          int parsed = pubkeyParse(s.parent, in, pubLen);
+          for (int i = 0; i < count; i++) {
+              MemorySegment.copy(s.parent, 0, s.pub, 0, 64);
+              int ret = parsed == 1 && pubkeyTweakAdd(s.pub, in.asSlice(pubLen + 32L * i)) == 1
+                  ? serialize(s, out.asSlice((long) outLen * i), outLen) : 0;
+              if (ret != 0) {
+                  tweaked++;
+              } else {
+                  out.asSlice((long) outLen * i, outLen).fill((byte) 0);
+              }
+              out.set(JAVA_BYTE, (long) outLen * count + i, (byte) (ret == 0 ? 0 : 1));
+          }
+        } finally {
+          r.unlock();
+        }
+        return tweaked;
+    }
+
+    @Override
+    public byte[] pubKeyTweakMul(byte[] pubkey, byte[] tweak) {
+        return pubKeyTweak(pubkey, tweak, true);
+    }
+
+    @Override
+    public int pubKeyTweakMul(ByteBuffer input, int pubLen, ByteBuffer output, boolean compressed) {
+        return pubKeyTweak(input, pubLen, output, true, compressed);
+    }
+
+    @Override
+    public byte[] createECDHSecret(byte[] seckey, byte[] pubkey) {
+        Scratch s = scratch.get();
+        s.copyIn(seckey, pubkey);
+        r.lock();
+        try {
+          return createECDHSecret(s, s.in, pubkey.length, s.out) == 1 ? s.out.asSlice(0, 32).toArray(JAVA_BYTE) : null;
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int createECDHSecret(ByteBuffer input, int pubLen, ByteBuffer output) {
+        Scratch s = scratch.get();
+        r.lock();
+        try {
+          return createECDHSecret(s, segment(input), pubLen, segment(output));
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int createECDHSecretBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output) {
+        Scratch s = scratch.get();
+        MemorySegment in = segment(input);
+        MemorySegment out = segment(output);
+        int derived = 0;
+        r.lock();
+        try {
+          for (int i = 0; i < count; i++) {
+              int ret = pubkeyParse(s.pub, in.asSlice(32L + (long) pubLen * i), pubLen) == 1 ? ecdh(out.asSlice(32L * i), s.pub, in) : 0;
+              if (ret == 1) {
+                  derived++;
+              } else {
+                  out.asSlice(32L * i, 32).fill((byte) 0);
+              }
+              out.set(JAVA_BYTE, 32L * count + i, (byte) ret);
+          }
+        } finally {
+          r.unlock();
+        }
+        return derived;
+    }
+
+    @Override
+    public byte[] signRecoverable(byte[] data, byte[] sec) {
+        Scratch s = scratch.get();
+        s.copyIn(data, sec);
+        r.lock();
+        try {
+          return signRecoverable(s, s.in, s.out) == 1 ? s.out.asSlice(0, 65).toArray(JAVA_BYTE) : new byte[0];
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int signRecoverable(ByteBuffer input, ByteBuffer output) {
+        Scratch s = scratch.get();
+        r.lock();
+        try {
+          return signRecoverable(s, segment(input), segment(output));
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public byte[] recoverPubkey(byte[] data, byte[] signature) {
+        Scratch s = scratch.get();
+        s.copyIn(data, signature);
+        r.lock();
+        try {
+          int pubLen = recoverPubkey(s, s.in, s.out, 65);
+          return s.out.asSlice(0, pubLen).toArray(JAVA_BYTE);
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int recoverPubkey(ByteBuffer input, ByteBuffer output, boolean compressed) {
+        Scratch s = scratch.get();
+        r.lock();
+        try {
+          return recoverPubkey(s, segment(input), segment(output), compressed ? 33 : 65);
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int recoverPubkeyBatch(ByteBuffer input, int count, ByteBuffer output, boolean compressed) {
+        Scratch s = scratch.get();
+        MemorySegment in = segment(input);
+        MemorySegment out = segment(output);
+        int pubLen = compressed ? 33 : 65;
+        int recovered = 0;
+        r.lock();
+        try {
+          for (int i = 0; i < count; i++) {
+              int ret = recoverPubkey(s, in.asSlice((32L + 65L) * i), out.asSlice((long) pubLen * i), pubLen) == 0 ? 0 : 1;
+              if (ret == 1) {
+                  recovered++;
+              } else {
+                  out.asSlice((long) pubLen * i, pubLen).fill((byte) 0);
+              }
+              out.set(JAVA_BYTE, (long) pubLen * count + i, (byte) ret);
+          }
+        } finally {
+          r.unlock();
+        }
+        return recovered;
+    }
+
+    @Override
+    public int computeAddressBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output) {
+        Scratch s = scratch.get();
+        MemorySegment in = segment(input);
+        MemorySegment out = segment(output);
+        int computed = 0;
+        r.lock();
+        try {
+          for (int i = 0; i < count; i++) {
+              int ret = pubLen == 0 ? pubkeyCreate(s.pub, in.asSlice(32L * i)) : pubkeyParse(s.pub, in.asSlice((long) pubLen * i), pubLen);
+              if (ret == 1 && serialize(s, s.out, 65) == 65) {
+                  MemorySegment.copy(Keccak256.address(s.out.asSlice(0, 65).toArray(JAVA_BYTE)), 0, out, JAVA_BYTE, 20L * i, 20);
+                  computed++;
+              } else {
+                  ret = 0;
+                  out.asSlice(20L * i, 20).fill((byte) 0);
+              }
+              out.set(JAVA_BYTE, 20L * count + i, (byte) ret);
+          }
+        } finally {
+          r.unlock();
+        }
+        return computed;
+    }
+
+    @Override
+    public int signMessage(ByteBuffer input, int msgLen, boolean personal, ByteBuffer output) {
+        Scratch s = scratch.get();
+        MemorySegment in = segment(input);
+        s.copyIn(Keccak256.messageHash(input, 32, msgLen, personal));
+        MemorySegment.copy(in, 0, s.in, 32, 32);
+        r.lock();
+        try {
+          return signRecoverable(s, s.in, segment(output));
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public int verifyMessage(ByteBuffer input, int msgLen, int pubLen, boolean personal) {
+        Scratch s = scratch.get();
+        MemorySegment in = segment(input);
+        s.copyIn(Keccak256.messageHash(input, 65 + pubLen, msgLen, personal));
+        r.lock();
+        try {
+          return signatureParseCompact(s.sig, in) == 1
+              && pubkeyParse(s.pub, in.asSlice(65), pubLen) == 1
+              && ecdsaVerify(s.sig, s.in, s.pub) == 1 ? 1 : 0;
+        } finally {
+          r.unlock();
+        }
+    }
+
+    @Override
+    public boolean randomize(byte[] seed) {
+        Scratch s = scratch.get();
+        s.copyIn(seed);
+        w.lock();
+        try {
+          return contextRandomize(s.in) == 1;
+        } finally {
+          w.unlock();
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        w.lock();
+        try {
+          contextDestroy();
+        } finally {
+          w.unlock();
+        }
+    }
+
+    private static boolean verify(Scratch s, MemorySegment msg, MemorySegment sig, int sigLen, MemorySegment pub, int pubLen) {
+        return signatureParseDer(s.sig, sig, sigLen) == 1
+            && pubkeyParse(s.pub, pub, pubLen) == 1
+            && ecdsaVerify(s.sig, msg, s.pub) == 1;
+    }
+
+    private static int sign(Scratch s, MemorySegment in, MemorySegment out) {
+        if (ecdsaSign(s.sig, in, in.asSlice(32)) == 0) {
+            return 0;
+        }
+        s.len.set(JAVA_LONG, 0, 72L);
+        return signatureSerializeDer(out, s.len, s.sig) == 1 ? (int) s.len.get(JAVA_LONG, 0) : 0;
+    }
+
+    private static int verifyCompact(Scratch s, MemorySegment in, int pubLen) {
+        return signatureParseCompact(s.sig, in.asSlice(32)) == 1
+            && pubkeyParse(s.pub, in.asSlice(32 + 64), pubLen) == 1
+            && ecdsaVerify(s.sig, in, s.pub) == 1 ? 1 : 0;
+    }
+
+    private static int signCompact(Scratch s, MemorySegment in, MemorySegment out) {
+        if (ecdsaSign(s.sig, in, in.asSlice(32)) == 0) {
+            return 0;
+        }
+        signatureSerializeCompact(out, s.sig);
+        return 64;
+    }
+
+    private static int computePubkey(Scratch s, MemorySegment in, MemorySegment out) {
+        return pubkeyCreate(s.pub, in) == 1 ? serializeUncompressed(s, out) : 0;
+    }
+
+    private byte[] privKeyTweak(byte[] privkey, byte[] tweak, boolean mul) {
+        Scratch s = scratch.get();
+        s.copyIn(tweak);
+        MemorySegment.copy(privkey, 0, s.out, JAVA_BYTE, 0, 32);
+        r.lock();
+        try {
+          int ret = mul ? privkeyTweakMul(s.out, s.in) : privkeyTweakAdd(s.out, s.in);
+          return ret == 1 ? s.out.asSlice(0, 32).toArray(JAVA_BYTE) : null;
+        } finally {
+          r.unlock();
+        }
+    }
+
+    private int privKeyTweak(ByteBuffer input, ByteBuffer output, boolean mul) {
+        MemorySegment in = segment(input);
+        MemorySegment out = segment(output);
+        MemorySegment.copy(in, 0, out, 0, 32);
+        r.lock();
+        try {
+          return mul ? privkeyTweakMul(out, in.asSlice(32)) : privkeyTweakAdd(out, in.asSlice(32));
+        } finally {
+          r.unlock();
+        }
+    }
+
+    private byte[] pubKeyTweak(byte[] pubkey, byte[] tweak, boolean mul) {
+        Scratch s = scratch.get();
+        s.copyIn(pubkey, tweak);
+        r.lock();
+        try {
+          int pubLen = pubKeyTweak(s, s.in, pubkey.length, s.out, mul, 65);
+          return pubLen == 0 ? null : s.out.asSlice(0, pubLen).toArray(JAVA_BYTE);
+        } finally {
+          r.unlock();
+        }
+    }
+
+    private int pubKeyTweak(ByteBuffer input, int pubLen, ByteBuffer output, boolean mul, boolean compressed) {
+        Scratch s = scratch.get();
+        r.lock();
+        try {
+          return pubKeyTweak(s, segment(input), pubLen, segment(output), mul, compressed ? 33 : 65);
+        } finally {
+          r.unlock();
+        }
+    }
+
+    /**
+     * Writes the tweaked key compressed if outLen is 33, uncompressed otherwise, returns its length or 0.
+     */
+    private static int pubKeyTweak(Scratch s, MemorySegment in, int pubLen, MemorySegment out, boolean mul, int outLen) {
+        if (pubkeyParse(s.pub, in, pubLen) == 0) {
+            return 0;
+        }
+        int ret = mul ? pubkeyTweakMul(s.pub, in.asSlice(pubLen)) : pubkeyTweakAdd(s.pub, in.asSlice(pubLen));
+        return ret == 1 ? serialize(s, out, outLen) : 0;
+    }
+
+    private static int createECDHSecret(Scratch s, MemorySegment in, int pubLen, MemorySegment out) {
+        return pubkeyParse(s.pub, in.asSlice(32), pubLen) == 1 ? ecdh(out, s.pub, in) : 0;
+    }
+
+    private static int signRecoverable(Scratch s, MemorySegment in, MemorySegment out) {
+        if (ecdsaSignRecoverable(s.sig, in, in.asSlice(32)) == 0) {
+            return 0;
+        }
+        recoverableSerializeCompact(out, s.recid, s.sig);
+        out.set(JAVA_BYTE, 64, (byte) s.recid.get(JAVA_INT, 0));
+        return 1;
+    }
+
+    /**
+     * Accepts Ethereum style v values like the JNI glue, writes the key compressed if
+     * outLen is 33, uncompressed otherwise, returns its length or 0.
+     */
+    private static int recoverPubkey(Scratch s, MemorySegment in, MemorySegment out, int outLen) {
+        int recid = in.get(JAVA_BYTE, 32 + 64) & 0xFF;
+        if (recid >= 27) {
+            recid -= 27;
+        }
+        if (recid > 3
+            || recoverableParseCompact(s.sig, in.asSlice(32), recid) == 0
+            || ecdsaRecover(s.pub, s.sig, in) == 0) {
+            return 0;
+        }
+        return serialize(s, out, outLen);
+    }
+
+    private static int serializeUncompressed(Scratch s, MemorySegment out) {
+        s.len.set(JAVA_LONG, 0, 65L);
+        return pubkeySerialize(out, s.len, s.pub, EC_UNCOMPRESSED) == 1 ? (int) s.len.get(JAVA_LONG, 0) : 0;
+    }
+
+    /**
+     * Serializes s.pub compressed if len is 33, uncompressed otherwise, returns the length or 0.
+     */
+    private static int serialize(Scratch s, MemorySegment out, int len) {
+        s.len.set(JAVA_LONG, 0, (long) len);
+        return pubkeySerialize(out, s.len, s.pub, len == 33 ? EC_COMPRESSED : EC_UNCOMPRESSED) == 1 ? (int) s.len.get(JAVA_LONG, 0) : 0;
+    }
+
+    /**
+     * The whole buffer from index 0 whatever its position, as GetDirectBufferAddress() gives it.
+     */
+    private static MemorySegment segment(ByteBuffer buffer) {
+        return MemorySegment.ofBuffer(buffer.duplicate().clear());
+    }
+
+    private static SymbolLookup lookupLibrary() {
+        String name = System.mapLibraryName("secp256k1");
+        for (String dir : System.getProperty("java.library.path", "").split(File.pathSeparator)) {
+            Path path = Paths.get(dir, name);
+            if (!dir.isEmpty() && Files.isRegularFile(path)) {
+                return SymbolLookup.libraryLookup(path, Arena.global());
+            }
+        }
+        return SymbolLookup.libraryLookup(name, Arena.global());
+    }
+
+    private static MethodHandle function(String name, MemoryLayout result, MemoryLayout... args) {
+        MemorySegment symbol = LIBRARY.find(name).orElseThrow(() -> new UnsatisfiedLinkError("Missing symbol " + name));
+        FunctionDescriptor descriptor = result == null ? FunctionDescriptor.ofVoid(args) : FunctionDescriptor.of(result, args);
+        return LINKER.downcallHandle(symbol, descriptor);
+    }
+
+    private static MemorySegment contextCreate() {
+        try {
+            return (MemorySegment) CONTEXT_CREATE.invokeExact(CONTEXT_SIGN_VERIFY);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static void contextDestroy() {
+        try {
+            CONTEXT_DESTROY.invokeExact(CONTEXT);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int contextRandomize(MemorySegment seed32) {
+        try {
+            return (int) CONTEXT_RANDOMIZE.invokeExact(CONTEXT, seed32);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int signatureParseDer(MemorySegment sig, MemorySegment input, int inputLen) {
+        try {
+            return (int) SIGNATURE_PARSE_DER.invokeExact(CONTEXT, sig, input, (long) inputLen);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int signatureParseCompact(MemorySegment sig, MemorySegment input64) {
+        try {
+            return (int) SIGNATURE_PARSE_COMPACT.invokeExact(CONTEXT, sig, input64);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int signatureSerializeDer(MemorySegment output, MemorySegment outputLen, MemorySegment sig) {
+        try {
+            return (int) SIGNATURE_SERIALIZE_DER.invokeExact(CONTEXT, output, outputLen, sig);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int signatureSerializeCompact(MemorySegment output64, MemorySegment sig) {
+        try {
+            return (int) SIGNATURE_SERIALIZE_COMPACT.invokeExact(CONTEXT, output64, sig);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int ecdsaVerify(MemorySegment sig, MemorySegment msg32, MemorySegment pubkey) {
+        try {
+            return (int) ECDSA_VERIFY.invokeExact(CONTEXT, sig, msg32, pubkey);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int ecdsaSign(MemorySegment sig, MemorySegment msg32, MemorySegment seckey) {
+        try {
+            return (int) ECDSA_SIGN.invokeExact(CONTEXT, sig, msg32, seckey, MemorySegment.NULL, MemorySegment.NULL);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int seckeyVerify(MemorySegment seckey) {
+        try {
+            return (int) SECKEY_VERIFY.invokeExact(CONTEXT, seckey);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int pubkeyCreate(MemorySegment pubkey, MemorySegment seckey) {
+        try {
+            return (int) PUBKEY_CREATE.invokeExact(CONTEXT, pubkey, seckey);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int pubkeyParse(MemorySegment pubkey, MemorySegment input, int inputLen) {
+        try {
+            return (int) PUBKEY_PARSE.invokeExact(CONTEXT, pubkey, input, (long) inputLen);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int pubkeySerialize(MemorySegment output, MemorySegment outputLen, MemorySegment pubkey, int flags) {
+        try {
+            return (int) PUBKEY_SERIALIZE.invokeExact(CONTEXT, output, outputLen, pubkey, flags);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int privkeyTweakAdd(MemorySegment seckey, MemorySegment tweak) {
+        try {
+            return (int) PRIVKEY_TWEAK_ADD.invokeExact(CONTEXT, seckey, tweak);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int privkeyTweakMul(MemorySegment seckey, MemorySegment tweak) {
+        try {
+            return (int) PRIVKEY_TWEAK_MUL.invokeExact(CONTEXT, seckey, tweak);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int pubkeyTweakAdd(MemorySegment pubkey, MemorySegment tweak) {
+        try {
+            return (int) PUBKEY_TWEAK_ADD.invokeExact(CONTEXT, pubkey, tweak);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int pubkeyTweakMul(MemorySegment pubkey, MemorySegment tweak) {
+        try {
+            return (int) PUBKEY_TWEAK_MUL.invokeExact(CONTEXT, pubkey, tweak);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int ecdh(MemorySegment result, MemorySegment pubkey, MemorySegment privkey) {
+        try {
+            return (int) ECDH.invokeExact(CONTEXT, result, pubkey, privkey);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int recoverableParseCompact(MemorySegment sig, MemorySegment input64, int recid) {
+        try {
+            return (int) RECOVERABLE_PARSE_COMPACT.invokeExact(CONTEXT, sig, input64, recid);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int recoverableSerializeCompact(MemorySegment output64, MemorySegment recid, MemorySegment sig) {
+        try {
+            return (int) RECOVERABLE_SERIALIZE_COMPACT.invokeExact(CONTEXT, output64, recid, sig);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int ecdsaSignRecoverable(MemorySegment sig, MemorySegment msg32, MemorySegment seckey) {
+        try {
+            return (int) ECDSA_SIGN_RECOVERABLE.invokeExact(CONTEXT, sig, msg32, seckey, MemorySegment.NULL, MemorySegment.NULL);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static int ecdsaRecover(MemorySegment pubkey, MemorySegment sig, MemorySegment msg32) {
+        try {
+            return (int) ECDSA_RECOVER.invokeExact(CONTEXT, pubkey, sig, msg32);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Native memory owned by one thread: the packed byte[] arguments, the opaque
+     * structs of the library and the serialized output.
+     */
+    private static final class Scratch {
+
+        final MemorySegment in;
+        final MemorySegment sig;
+        final MemorySegment pub;
+        final MemorySegment parent;
+        final MemorySegment out;
+        final MemorySegment len;
+        final MemorySegment recid;
+
+        Scratch() {
+            MemorySegment all = Arena.ofAuto().allocate(32 + 2 * 520 + 16 + 72 + 64 + 72 + 8 + 8 + 64, 8);
+            in = all.asSlice(0, 32 + 2 * 520 + 16);
+            sig = all.asSlice(in.byteSize(), 72);
+            pub = all.asSlice(in.byteSize() + 72, 64);
+            out = all.asSlice(in.byteSize() + 72 + 64, 72);
+            len = all.asSlice(in.byteSize() + 72 + 64 + 72, 8);
+            recid = all.asSlice(in.byteSize() + 72 + 64 + 72 + 8, 8);
+            parent = all.asSlice(in.byteSize() + 72 + 64 + 72 + 8 + 8, 64);
+        }
+
+        void copyIn(byte[]... args) {
+            long offset = 0;
+            for (byte[] arg : args) {
+                MemorySegment.copy(arg, 0, in, JAVA_BYTE, offset, arg.length);
+                offset += arg.length;
+            }
+        }
+    }
+}
@@ -0,0 +1,530 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.math.BigInteger;
+
+import static org.bitcoin.Secp256k1Field.*;
+
+/**
+ * Point arithmetic and multiplication on secp256k1, following src/group_impl.h
+ * and src/ecmult_impl.h.
+ *
+ * <p>Generator multiples come from tables built once per JVM: a comb of
+ * 64 x 15 affine points for k*G, and wNAF tables of odd multiples of G and
+ * 2^128*G for verification. Other points are multiplied with the GLV
+ * endomorphism and wNAF, so a*P + b*G costs about 130 doublings.</p>
+ *
+ * <p>An instance holds the temporaries of the point operations so that they do
+ * not allocate, it must only be used by one thread at a time.</p>
+ */
+final class Secp256k1Group {
+
+    static final BigInteger ORDER = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141", 16);
+    static final BigInteger HALF_ORDER = ORDER.shiftRight(1);
+
+    /* Lattice basis of the split of k into k1 + k2 * lambda, where lambda * (x, y) = (beta * x, y), see src/scalar_impl.h */
+    private static final BigInteger A1 = new BigInteger("3086D221A7D46BCDE86C90E49284EB15", 16);
+    private static final BigInteger MINUS_B1 = new BigInteger("E4437ED6010E88286F547FA90ABFE4C3", 16);
+    private static final BigInteger A2 = new BigInteger("114CA50F7A8E2F3F657C1108D9D44CFD8", 16);
+    private static final BigInteger B2 = A1;
+
+    private static final long[] BETA = fieldConstant("7AE96A2B657C07106E64479EAC3434E99CF0497512F58995C1396C28719501EE");
+    private static final long[] SEVEN = fieldConstant("07");
+
+    /** Window of the wNAF of variable points, with 2^(WINDOW_A - 2) precomputed odd multiples. */
+    private static final int WINDOW_A = 5;
+    /** Window of the wNAF of the generator, with 2^(WINDOW_G - 2) precomputed odd multiples. */
+    private static final int WINDOW_G = 8;
+
+    static final class Affine {
+        final long[] x = create();
+        final long[] y = create();
+        boolean infinity;
+    }
+
+    static final class Jacobian {
+        final long[] x = create();
+        final long[] y = create();
+        final long[] z = create();
+        boolean infinity;
+    }
+
+    private final long[] z12 = create(), u1 = create(), u2 = create(), s1 = create(), s2 = create();
+    private final long[] h = create(), i = create(), i2 = create(), h2 = create(), h3 = create(), t = create();
+    private final Affine negated = new Affine();
+    private final Jacobian doubled = new Jacobian();
+    private final Affine[] tableA = affineArray(1 << (WINDOW_A - 2));
+    private final Affine[] tableLambdaA = affineArray(1 << (WINDOW_A - 2));
+    private final Jacobian[] tableJacobian = jacobianArray(1 << (WINDOW_A - 2));
+    private final long[] tableZ = new long[10 * (1 << (WINDOW_A - 2))];
+    private final int[] wnaf1 = new int[130], wnaf2 = new int[130], wnafG = new int[130], wnafG128 = new int[130];
+
+    static void setAffine(Jacobian r, Affine a) {
+        r.infinity = a.infinity;
+        copy(r.x, a.x);
+        copy(r.y, a.y);
+        setInt(r.z, 1);
+    }
+
+    /**
+     * Sets r to the affine form of a, with normalized coordinates. a is left unusable.
+     */
+    void toAffine(Affine r, Jacobian a) {
+        r.infinity = a.infinity;
+        if (a.infinity) {
+            return;
+        }
+        inv(a.z, a.z);
+        sqr(t, a.z);
+        mul(r.x, a.x, t);
+        mul(t, t, a.z);
+        mul(r.y, a.y, t);
+        normalize(r.x);
+        normalize(r.y);
+    }
+
+    /**
+     * Converts many points to affine form with a single field inversion.
+     * zs is scratch space of at least 10 * len longs.
+     */
+    static void toAffineAll(Affine[] r, Jacobian[] a, int len, long[] zs) {
+        long[] acc = create(), zi = create(), zi2 = create(), tmp = create();
+        setInt(acc, 1);
+        for (int k = 0; k < len; k++) {
+            System.arraycopy(acc, 0, zs, 10 * k, 10);
+            if (!a[k].infinity) {
+                mul(acc, acc, a[k].z);
+            }
+        }
+        inv(acc, acc);
+        for (int k = len - 1; k >= 0; k--) {
+            r[k].infinity = a[k].infinity;
+            if (a[k].infinity) {
+                continue;
+            }
+            System.arraycopy(zs, 10 * k, tmp, 0, 10);
+            mul(zi, acc, tmp);
+            mul(acc, acc, a[k].z);
+            sqr(zi2, zi);
+            mul(r[k].x, a[k].x, zi2);
+            mul(zi2, zi2, zi);
+            mul(r[k].y, a[k].y, zi2);
+            normalize(r[k].x);
+            normalize(r[k].y);
+        }
+    }
+
+    /**
+     * Sets r to the point with the given x coordinate and y parity, returns false if there is none.
+     */
+    static boolean setXOdd(Affine r, long[] x, boolean odd) {
+        long[] x3 = create();
+        copy(r.x, x);
+        sqr(x3, x);
+        mul(x3, x3, x);
+        add(x3, SEVEN);
+        r.infinity = false;
+        if (!sqrt(r.y, x3)) {
+            return false;
+        }
+        normalize(r.x);
+        normalize(r.y);
+        if (isOdd(r.y) != odd) {
+            negate(r.y, r.y, 1);
+            normalize(r.y);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the affine point a, with normalized coordinates, is on the curve.
+     */
+    static boolean isValid(Affine a) {
+        if (a.infinity) {
+            return false;
+        }
+        long[] y2 = create(), x3 = create(), tmp = create();
+        sqr(y2, a.y);
+        sqr(x3, a.x);
+        mul(x3, x3, a.x);
+        add(x3, SEVEN);
+        normalizeWeak(x3);
+        return equal(y2, x3, tmp);
+    }
+
+    static void negatePoint(Affine r, Affine a) {
+        r.infinity = a.infinity;
+        copy(r.x, a.x);
+        negate(r.y, a.y, 1);
+        normalizeWeak(r.y);
+    }
+
+    /**
+     * Sets r to lambda * a, which is (beta * x, y).
+     */
+    static void mulLambda(Affine r, Affine a) {
+        r.infinity = a.infinity;
+        mul(r.x, a.x, BETA);
+        copy(r.y, a.y);
+    }
+
+    /**
+     * Returns true if the affine x coordinate of a, which must not be infinity, equals x.
+     */
+    boolean eqX(long[] x, Jacobian a) {
+        sqr(t, a.z);
+        mul(t, t, x);
+        copy(u1, a.x);
+        normalizeWeak(u1);
+        return equal(t, u1, u2);
+    }
+
+    /**
+     * Sets r to 2 * a, r may be a itself.
+     */
+    void dbl(Jacobian r, Jacobian a) {
+        r.infinity = a.infinity;
+        if (r.infinity) {
+            return;
+        }
+
+        long[] t1 = z12, t2 = u1, t3 = u2, t4 = s1;
+        mul(r.z, a.z, a.y);
+        mulInt(r.z, 2);                       /* Z' = 2*Y*Z (2) */
+        sqr(t1, a.x);
+        mulInt(t1, 3);                        /* T1 = 3*X^2 (3) */
+        sqr(t2, t1);                          /* T2 = 9*X^4 (1) */
+        sqr(t3, a.y);
+        mulInt(t3, 2);                        /* T3 = 2*Y^2 (2) */
+        sqr(t4, t3);
+        mulInt(t4, 2);                        /* T4 = 8*Y^4 (2) */
+        mul(t3, t3, a.x);                     /* T3 = 2*X*Y^2 (1) */
+        copy(r.x, t3);
+        mulInt(r.x, 4);                       /* X' = 8*X*Y^2 (4) */
+        negate(r.x, r.x, 4);                  /* X' = -8*X*Y^2 (5) */
+        add(r.x, t2);                         /* X' = 9*X^4 - 8*X*Y^2 (6) */
+        negate(t2, t2, 1);                    /* T2 = -9*X^4 (2) */
+        mulInt(t3, 6);                        /* T3 = 12*X*Y^2 (6) */
+        add(t3, t2);                          /* T3 = 12*X*Y^2 - 9*X^4 (8) */
+        mul(r.y, t1, t3);                     /* Y' = 36*X^3*Y^2 - 27*X^6 (1) */
+        negate(t2, t4, 2);                    /* T2 = -8*Y^4 (3) */
+        add(r.y, t2);                         /* Y' = 36*X^3*Y^2 - 27*X^6 - 8*Y^4 (4) */
+    }
+
+    /**
+     * Sets r to a + b, r may be a itself.
+     */
+    void addPoint(Jacobian r, Jacobian a, Jacobian b) {
+        if (a.infinity) {
+            copyPoint(r, b);
+            return;
+        }
+        if (b.infinity) {
+            copyPoint(r, a);
+            return;
+        }
+
+        sqr(h2, b.z);
+        sqr(z12, a.z);
+        mul(u1, a.x, h2);
+        mul(u2, b.x, z12);
+        mul(s1, a.y, h2); mul(s1, s1, b.z);
+        mul(s2, b.y, z12); mul(s2, s2, a.z);
+        if (finishAdd(r, a)) {
+            mul(r.z, r.z, b.z);
+        }
+    }
+
+    /**
+     * Sets r to a + b for an affine b, r may be a itself.
+     */
+    void addPoint(Jacobian r, Jacobian a, Affine b) {
+        if (a.infinity) {
+            setAffine(r, b);
+            return;
+        }
+        if (b.infinity) {
+            copyPoint(r, a);
+            return;
+        }
+
+        sqr(z12, a.z);
+        copy(u1, a.x); normalizeWeak(u1);
+        mul(u2, b.x, z12);
+        copy(s1, a.y); normalizeWeak(s1);
+        mul(s2, b.y, z12); mul(s2, s2, a.z);
+        finishAdd(r, a);
+    }
+
+    /**
+     * Common tail of both additions once u1, u2, s1 and s2 are known. Returns false
+     * if the result was computed as a doubling or is infinity, true if the caller
+     * still has to multiply r.z by the z of its second operand.
+     */
+    private boolean finishAdd(Jacobian r, Jacobian a) {
+        negate(h, u1, 1); add(h, u2);
+        negate(i, s1, 1); add(i, s2);
+        if (normalizesToZero(h)) {
+            if (normalizesToZero(i)) {
+                dbl(r, a);
+            } else {
+                r.infinity = true;
+            }
+            return false;
+        }
+        r.infinity = false;
+        sqr(i2, i);
+        sqr(h2, h);
+        mul(h3, h, h2);
+        mul(r.z, a.z, h);
+        mul(t, u1, h2);
+        copy(r.x, t); mulInt(r.x, 2); add(r.x, h3); negate(r.x, r.x, 3); add(r.x, i2);
+        negate(r.y, r.x, 5); add(r.y, t); mul(r.y, r.y, i);
+        mul(h3, h3, s1); negate(h3, h3, 1);
+        add(r.y, h3);
+        return true;
+    }
+
+    /**
+     * Sets r to k * G, k being below the group order.
+     */
+    void ecmultGen(Jacobian r, BigInteger k) {
+        Affine[][] comb = Tables.COMB;
+        r.infinity = true;
+        for (int w = 0; w < 64; w++) {
+            int nibble = k.testBit(4 * w) ? 1 : 0;
+            nibble |= k.testBit(4 * w + 1) ? 2 : 0;
+            nibble |= k.testBit(4 * w + 2) ? 4 : 0;
+            nibble |= k.testBit(4 * w + 3) ? 8 : 0;
+            if (nibble != 0) {
+                addPoint(r, r, comb[w][nibble - 1]);
+            }
+        }
+    }
+
+    /**
+     * Sets r to na * a + ng * G, both scalars being below the group order.
+     * ng may be null when only na * a is needed.
+     */
+    void ecmult(Jacobian r, Affine a, BigInteger na, BigInteger ng) {
+        /* Split na into na1 + na2 * lambda with na1 and na2 of about 128 bits */
+        BigInteger c1 = roundDiv(B2.multiply(na));
+        BigInteger c2 = roundDiv(MINUS_B1.multiply(na));
+        BigInteger na1 = na.subtract(c1.multiply(A1)).subtract(c2.multiply(A2));
+        BigInteger na2 = c1.multiply(MINUS_B1).subtract(c2.multiply(B2));
+
+        int len1 = wnaf(wnaf1, na1.abs(), WINDOW_A);
+        int len2 = wnaf(wnaf2, na2.abs(), WINDOW_A);
+        int lenG = 0, lenG128 = 0;
+        if (ng != null) {
+            lenG = wnaf(wnafG, ng.and(LOW_128), WINDOW_G);
+            lenG128 = wnaf(wnafG128, ng.shiftRight(128), WINDOW_G);
+        }
+
+        /* Odd multiples a, 3a, 5a, ... of a and of lambda * a, made affine together */
+        int size = 1 << (WINDOW_A - 2);
+        setAffine(tableJacobian[0], a);
+        dbl(doubled, tableJacobian[0]);
+        for (int k = 1; k < size; k++) {
+            addPoint(tableJacobian[k], tableJacobian[k - 1], doubled);
+        }
+        toAffineAll(tableA, tableJacobian, size, tableZ);
+        for (int k = 0; k < size; k++) {
+            mulLambda(tableLambdaA[k], tableA[k]);
+        }
+        boolean negate1 = na1.signum() < 0;
+        boolean negate2 = na2.signum() < 0;
+
+        r.infinity = true;
+        for (int bit = Math.max(Math.max(len1, len2), Math.max(lenG, lenG128)) - 1; bit >= 0; bit--) {
+            dbl(r, r);
+            if (bit < len1) {
+                addDigit(r, tableA, wnaf1[bit], negate1);
+            }
+            if (bit < len2) {
+                addDigit(r, tableLambdaA, wnaf2[bit], negate2);
+            }
+            if (bit < lenG) {
+                addDigit(r, Tables.ODD_G, wnafG[bit], false);
+            }
+            if (bit < lenG128) {
+                addDigit(r, Tables.ODD_G128, wnafG128[bit], false);
+            }
+        }
+    }
+
+    private void addDigit(Jacobian r, Affine[] table, int digit, boolean negateTable) {
+        if (digit == 0) {
+            return;
+        }
+        Affine p = table[(Math.abs(digit) - 1) >> 1];
+        if ((digit < 0) != negateTable) {
+            negatePoint(negated, p);
+            p = negated;
+        }
+        addPoint(r, r, p);
+    }
+
+    private static final BigInteger LOW_128 = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+    private static BigInteger roundDiv(BigInteger x) {
+        return x.add(HALF_ORDER).divide(ORDER);
+    }
+
+    /**
+     * Writes the width-w non-adjacent form of the non-negative k, following
+     * secp256k1_ecmult_wnaf, and returns its length.
+     */
+    static int wnaf(int[] wnaf, BigInteger k, int w) {
+        long[] words = new long[6];
+        for (int b = 0; b < 6; b++) {
+            words[b] = k.shiftRight(64 * b).longValue();
+        }
+        int len = wnaf.length;
+        int lastSetBit = -1;
+        int carry = 0;
+        int bit = 0;
+        java.util.Arrays.fill(wnaf, 0);
+        while (bit < len) {
+            if (((int) (words[bit >> 6] >>> (bit & 63)) & 1) == carry) {
+                bit++;
+                continue;
+            }
+            int now = Math.min(w, len - bit);
+            int word = bits(words, bit, now) + carry;
+            carry = (word >> (w - 1)) & 1;
+            word -= carry << w;
+            wnaf[bit] = word;
+            lastSetBit = bit;
+            bit += now;
+        }
+        return lastSetBit + 1;
+    }
+
+    private static int bits(long[] words, int offset, int count) {
+        long value = words[offset >> 6] >>> (offset & 63);
+        if ((offset & 63) + count > 64) {
+            value |= words[(offset >> 6) + 1] << (64 - (offset & 63));
+        }
+        return (int) (value & ((1L << count) - 1));
+    }
+
+    private static void copyPoint(Jacobian r, Jacobian a) {
+        r.infinity = a.infinity;
+        copy(r.x, a.x);
+        copy(r.y, a.y);
+        copy(r.z, a.z);
+    }
+
+    private static long[] fieldConstant(String hex) {
+        long[] r = create();
+        byte[] bytes = new byte[32];
+        byte[] value = new BigInteger(hex, 16).toByteArray();
+        int length = Math.min(value.length, 32);
+        System.arraycopy(value, value.length - length, bytes, 32 - length, length);
+        setBytes(r, bytes, 0);
+        return r;
+    }
+
+    private static Affine[] affineArray(int size) {
+        Affine[] r = new Affine[size];
+        for (int k = 0; k < size; k++) {
+            r[k] = new Affine();
+        }
+        return r;
+    }
+
+    private static Jacobian[] jacobianArray(int size) {
+        Jacobian[] r = new Jacobian[size];
+        for (int k = 0; k < size; k++) {
+            r[k] = new Jacobian();
+        }
+        return r;
+    }
+
+    /**
+     * Generator tables, built on first use.
+     */
+    private static final class Tables {
+
+        static final Affine G = new Affine();
+        /** COMB[w][j - 1] = j * 16^w * G */
+        static final Affine[][] COMB = new Affine[64][];
+        /** Odd multiples G, 3G, ... */
+        static final Affine[] ODD_G;
+        /** Odd multiples of 2^128 * G */
+        static final Affine[] ODD_G128;
+
+        static {
+            setBytes(G.x, hex("79BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F81798"), 0);
+            setBytes(G.y, hex("483ADA7726A3C4655DA4FBFC0E1108A8FD17B448A68554199C47D08FFB10D4B8"), 0);
+
+            Secp256k1Group group = new Secp256k1Group();
+            Jacobian[] points = jacobianArray(64 * 15);
+            Jacobian base = new Jacobian();
+            setAffine(base, G);
+            for (int w = 0; w < 64; w++) {
+                copyPoint(points[15 * w], base);
+                for (int j = 1; j < 15; j++) {
+                    group.addPoint(points[15 * w + j], points[15 * w + j - 1], base);
+                }
+                for (int d = 0; d < 4; d++) {
+                    group.dbl(base, base);
+                }
+            }
+            Affine[] affine = affineArray(64 * 15);
+            toAffineAll(affine, points, points.length, new long[10 * points.length]);
+            for (int w = 0; w < 64; w++) {
+                COMB[w] = new Affine[15];
+                System.arraycopy(affine, 15 * w, COMB[w], 0, 15);
+            }
+
+            ODD_G = oddMultiples(group, G);
+            Jacobian g128 = new Jacobian();
+            setAffine(g128, G);
+            for (int d = 0; d < 128; d++) {
+                group.dbl(g128, g128);
+            }
+            Affine g128Affine = new Affine();
+            group.toAffine(g128Affine, g128);
+            ODD_G128 = oddMultiples(group, g128Affine);
+        }
+
+        private static Affine[] oddMultiples(Secp256k1Group group, Affine p) {
+            int size = 1 << (WINDOW_G - 2);
+            Jacobian[] points = jacobianArray(size);
+            Jacobian p2 = new Jacobian();
+            setAffine(points[0], p);
+            group.dbl(p2, points[0]);
+            for (int k = 1; k < size; k++) {
+                group.addPoint(points[k], points[k - 1], p2);
+            }
+            Affine[] r = affineArray(size);
+            toAffineAll(r, points, size, new long[10 * size]);
+            return r;
+        }
+
+        private static byte[] hex(String hex) {
+            byte[] r = new byte[32];
+            for (int k = 0; k < 32; k++) {
+                r[k] = (byte) Integer.parseInt(hex.substring(2 * k, 2 * k + 2), 16);
+            }
+            return r;
+        }
+    }
+}
@@ -0,0 +1,769 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bitcoin.Secp256k1Group.Affine;
+import org.bitcoin.Secp256k1Group.Jacobian;
+
+import static org.bitcoin.Secp256k1Group.HALF_ORDER;
+import static org.bitcoin.Secp256k1Group.ORDER;
+
+/**
+ * <p>Pure Java implementation of the NativeSecp256k1 operations, used when
+ * libsecp256k1 could not be loaded. Results are the same as the native ones
+ * (signatures use the same RFC6979 nonces), except for the 64-byte internal
+ * form returned by parsePubkey(), which is x || y here.</p>
+ *
+ * <p>This engine does not run in constant time: the JVM gives no guarantee about
+ * it. Hosts signing with keys worth protecting from timing attacks should ship
+ * the native library.</p>
+ */
+final class Secp256k1JavaEngine implements Secp256k1Backend {
+
+    /** p - n, x coordinates below it have a second candidate x + n */
+    private static final BigInteger P_MINUS_ORDER = new BigInteger("14551231950B75FC4402DA1722FC9BAEE", 16);
+
+    private static final ThreadLocal<Secp256k1Group> group = new ThreadLocal<Secp256k1Group>() {
+        @Override
+        protected Secp256k1Group initialValue() {
+            return new Secp256k1Group();
+        }
+    };
+
+    @Override
+    public boolean verify(byte[] data, byte[] signature, byte[] pub) {
+        Affine q = new Affine();
+        BigInteger[] rs = parseDer(signature, 0, signature.length);
+        return rs != null && parsePubkey(q, pub, 0, pub.length) && verify(data, rs[0], rs[1], q);
+    }
+
+    @Override
+    public boolean verifyCompact(byte[] data, byte[] signature, byte[] pub) {
+        Affine q = new Affine();
+        BigInteger r = scalar(signature, 0);
+        BigInteger s = scalar(signature, 32);
+        return r.compareTo(ORDER) < 0 && s.compareTo(ORDER) < 0 && parsePubkey(q, pub, 0, pub.length) && verify(data, r, s, q);
+    }
+
+    @Override
+    public int verifyCompact(ByteBuffer input, int pubLen) {
+        return verifyCompact(bytes(input, 0, 32), bytes(input, 32, 64), bytes(input, 32 + 64, pubLen)) ? 1 : 0;
+    }
+
+    @Override
+    public byte[] verifyBatch(ByteBuffer input, int count, int[] sigOffsets, int[] sigLens, int[] pubOffsets, int[] pubLens) {
+        byte[] in = bytes(input, 0, input.capacity());
+        byte[] bitmap = new byte[(count + 7) / 8];
+        Affine q = new Affine();
+        for (int i = 0; i < count; i++) {
+            BigInteger[] rs = parseDer(in, sigOffsets[i], sigLens[i]);
+            if (rs != null && parsePubkey(q, in, pubOffsets[i], pubLens[i])
+                && verify(Arrays.copyOfRange(in, 32 * i, 32 * i + 32), rs[0], rs[1], q)) {
+                bitmap[i >> 3] = (byte) (bitmap[i >> 3] | 1 << (i & 7));
+            }
+        }
+        return bitmap;
+    }
+
+    @Override
+    public byte[] parsePubkey(byte[] pub) {
+        Affine q = new Affine();
+        if (!parsePubkey(q, pub, 0, pub.length)) {
+            return new byte[0];
+        }
+        byte[] parsed = new byte[64];
+        Secp256k1Field.getBytes(parsed, 0, q.x);
+        Secp256k1Field.getBytes(parsed, 32, q.y);
+        return parsed;
+    }
+
+    @Override
+    public boolean verifyParsed(byte[] data, byte[] signature, byte[] parsedPub) {
+        Affine q = new Affine();
+        BigInteger[] rs = parseDer(signature, 0, signature.length);
+        return rs != null
+            && Secp256k1Field.setBytes(q.x, parsedPub, 0) && Secp256k1Field.setBytes(q.y, parsedPub, 32)
+            && verify(data, rs[0], rs[1], q);
+    }
+
+    @Override
+    public byte[] sign(byte[] data, byte[] sec) {
+        BigInteger[] sig = signScalars(data, sec);
+        return sig == null ? new byte[0] : serializeDer(sig[0], sig[1]);
+    }
+
+    @Override
+    public int sign(ByteBuffer input, ByteBuffer output) {
+        byte[] sig = sign(bytes(input, 0, 32), bytes(input, 32, 32));
+        put(output, 0, sig);
+        return sig.length;
+    }
+
+    @Override
+    public byte[] signCompact(byte[] data, byte[] sec) {
+        BigInteger[] sig = signScalars(data, sec);
+        if (sig == null) {
+            return new byte[0];
+        }
+        byte[] compact = new byte[64];
+        scalarBytes(compact, 0, sig[0]);
+        scalarBytes(compact, 32, sig[1]);
+        return compact;
+    }
+
+    @Override
+    public int signCompact(ByteBuffer input, ByteBuffer output) {
+        byte[] sig = signCompact(bytes(input, 0, 32), bytes(input, 32, 32));
+        put(output, 0, sig);
+        return sig.length;
+    }
+
+    @Override
+    public int signBatch(ByteBuffer input, int count, boolean sharedKey, ByteBuffer output) {
+        int signed = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] sec = bytes(input, 32 * count + (sharedKey ? 0 : 32 * i), 32);
+            BigInteger[] sig = signScalars(bytes(input, 32 * i, 32), sec);
+            byte[] compact = new byte[64];
+            if (sig != null) {
+                scalarBytes(compact, 0, sig[0]);
+                scalarBytes(compact, 32, sig[1]);
+                signed++;
+            }
+            put(output, 64 * i, compact);
+            output.put(64 * count + i, (byte) (sig != null ? 1 : 0));
+        }
+        return signed;
+    }
+
+    @Override
+    public boolean secKeyVerify(byte[] seckey) {
+        return isValidScalar(scalar(seckey, 0));
+    }
+
+    @Override
+    public byte[] computePubkey(byte[] seckey) {
+        BigInteger d = scalar(seckey, 0);
+        if (!isValidScalar(d)) {
+            return new byte[0];
+        }
+        Secp256k1Group g = group.get();
+        Jacobian pj = new Jacobian();
+        g.ecmultGen(pj, d);
+        return serialize(g, pj);
+    }
+
+    @Override
+    public int computePubkey(ByteBuffer input, ByteBuffer output, boolean compressed) {
+        return putPubKey(output, encode(computePubkey(bytes(input, 0, 32)), compressed ? 33 : 65));
+    }
+
+    @Override
+    public byte[] serializePubkey(byte[] pubkey, boolean compressed) {
+        Affine p = new Affine();
+        if (!parsePubkey(p, pubkey, 0, pubkey.length)) {
+            return new byte[0];
+        }
+        byte[] pub = new byte[65];
+        pub[0] = 0x04;
+        Secp256k1Field.getBytes(pub, 1, p.x);
+        Secp256k1Field.getBytes(pub, 33, p.y);
+        return encode(pub, compressed ? 33 : 65);
+    }
+
+    @Override
+    public int serializePubkey(ByteBuffer input, int pubLen, boolean compressed, ByteBuffer output) {
+        return putPubKey(output, serializePubkey(bytes(input, 0, pubLen), compressed));
+    }
+
+    @Override
+    public byte[] privKeyTweakAdd(byte[] privkey, byte[] tweak) {
+        BigInteger term = scalar(tweak, 0);
+        if (term.compareTo(ORDER) >= 0) {
+            return null;
+        }
+        BigInteger sec = scalar(privkey, 0).add(term).mod(ORDER);
+        if (sec.signum() == 0) {
+            return null;
+        }
+        byte[] r = new byte[32];
+        scalarBytes(r, 0, sec);
+        return r;
+    }
+
+    @Override
+    public int privKeyTweakAdd(ByteBuffer input, ByteBuffer output) {
+        return putPrivKey(output, privKeyTweakAdd(bytes(input, 0, 32), bytes(input, 32, 32)));
+    }
+
+    @Override
+    public int privKeyTweakAddBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output) {
+        byte[] seckey = bytes(input, 0, 32);
+        int tweaked = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] child = privKeyTweakAdd(seckey, bytes(input, 32 + 32 * i, 32));
+            byte[] pub = child == null || pubLen == 0 ? null : encode(computePubkey(child), pubLen);
+            boolean ok = child != null && (pubLen == 0 || pub != null);
+            put(output, (32 + pubLen) * i, ok ? child : new byte[32]);
+            if (pubLen != 0) {
+                put(output, (32 + pubLen) * i + 32, ok ? pub : new byte[pubLen]);
+            }
+            output.put((32 + pubLen) * count + i, (byte) (ok ? 1 : 0));
+            tweaked += ok ? 1 : 0;
+        }
+        return tweaked;
+    }
+
+    @Override
+    public byte[] privKeyTweakMul(byte[] privkey, byte[] tweak) {
+        BigInteger factor = scalar(tweak, 0);
+        if (factor.signum() == 0 || factor.compareTo(ORDER) >= 0) {
+            return null;
+        }
+        byte[] r = new byte[32];
+        scalarBytes(r, 0, scalar(privkey, 0).multiply(factor).mod(ORDER));
+        return r;
+    }
+
+    @Override
+    public int privKeyTweakMul(ByteBuffer input, ByteBuffer output) {
+        return putPrivKey(output, privKeyTweakMul(bytes(input, 0, 32), bytes(input, 32, 32)));
+    }
+
+    @Override
+    public byte[] pubKeyTweakAdd(byte[] pubkey, byte[] tweak) {
+        BigInteger term = scalar(tweak, 0);
+        Affine p = new Affine();
+        if (term.compareTo(ORDER) >= 0 || !parsePubkey(p, pubkey, 0, pubkey.length)) {
+            return null;
+        }
+        Secp256k1Group g = group.get();
+        Jacobian r = new Jacobian();
+        g.ecmult(r, p, BigInteger.ONE, term);
+        return r.infinity ? null : serialize(g, r);
+    }
+
+    @Override
+    public int pubKeyTweakAdd(ByteBuffer input, int pubLen, ByteBuffer output, boolean compressed) {
+        return putPubKey(output, encode(pubKeyTweakAdd(bytes(input, 0, pubLen), bytes(input, pubLen, 32)), compressed ? 33 : 65));
+    }
+
+    @Override
+    public int pubKeyTweakAddBatch(ByteBuffer input, int count, int pubLen, int outLen, ByteBuffer output) {
+        byte[] pubkey = bytes(input, 0, pubLen);
+        int tweaked = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] child = encode(pubKeyTweakAdd(pubkey, bytes(input, pubLen + 32 * i, 32)), outLen);
+            put(output, outLen * i, child == null ? new byte[outLen] : child);
+            output.put(outLen * count + i, (byte) (child == null ? 0 : 1));
+            tweaked += child == null ? 0 : 1;
+        }
+        return tweaked;
+    }
+
+    @Override
+    public byte[] pubKeyTweakMul(byte[] pubkey, byte[] tweak) {
+        BigInteger factor = scalar(tweak, 0);
+        Affine p = new Affine();
+        if (factor.signum() == 0 || factor.compareTo(ORDER) >= 0 || !parsePubkey(p, pubkey, 0, pubkey.length)) {
+            return null;
+        }
+        Secp256k1Group g = group.get();
+        Jacobian r = new Jacobian();
+        g.ecmult(r, p, factor, null);
+        return serialize(g, r);
+    }
+
+    @Override
+    public int pubKeyTweakMul(ByteBuffer input, int pubLen, ByteBuffer output, boolean compressed) {
+        return putPubKey(output, encode(pubKeyTweakMul(bytes(input, 0, pubLen), bytes(input, pubLen, 32)), compressed ? 33 : 65));
+    }
+
+    /**
+     * ECDH as in libsecp256k1's ecdh module: SHA256 of the compressed shared point.
+     */
+    @Override
+    public byte[] createECDHSecret(byte[] seckey, byte[] pubkey) {
+        BigInteger s = scalar(seckey, 0);
+        Affine p = new Affine();
+        if (!isValidScalar(s) || !parsePubkey(p, pubkey, 0, pubkey.length)) {
+            return null;
+        }
+        Secp256k1Group g = group.get();
+        Jacobian r = new Jacobian();
+        g.ecmult(r, p, s, null);
+        g.toAffine(p, r);
+
+        byte[] compressed = new byte[33];
+        compressed[0] = (byte) (Secp256k1Field.isOdd(p.y) ? 0x03 : 0x02);
+        Secp256k1Field.getBytes(compressed, 1, p.x);
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(compressed);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int createECDHSecret(ByteBuffer input, int pubLen, ByteBuffer output) {
+        byte[] secret = createECDHSecret(bytes(input, 0, 32), bytes(input, 32, pubLen));
+        if (secret == null) {
+            return 0;
+        }
+        put(output, 0, secret);
+        return 1;
+    }
+
+    @Override
+    public int createECDHSecretBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output) {
+        byte[] seckey = bytes(input, 0, 32);
+        int derived = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] secret = createECDHSecret(seckey, bytes(input, 32 + pubLen * i, pubLen));
+            put(output, 32 * i, secret == null ? new byte[32] : secret);
+            output.put(32 * count + i, (byte) (secret == null ? 0 : 1));
+            derived += secret == null ? 0 : 1;
+        }
+        return derived;
+    }
+
+    @Override
+    public byte[] signRecoverable(byte[] data, byte[] sec) {
+        BigInteger[] sig = signScalars(data, sec);
+        if (sig == null) {
+            return new byte[0];
+        }
+        byte[] r = new byte[65];
+        scalarBytes(r, 0, sig[0]);
+        scalarBytes(r, 32, sig[1]);
+        r[64] = sig[2].byteValue();
+        return r;
+    }
+
+    @Override
+    public int signRecoverable(ByteBuffer input, ByteBuffer output) {
+        byte[] sig = signRecoverable(bytes(input, 0, 32), bytes(input, 32, 32));
+        if (sig.length == 0) {
+            return 0;
+        }
+        put(output, 0, sig);
+        return 1;
+    }
+
+    @Override
+    public byte[] recoverPubkey(byte[] data, byte[] signature) {
+        return recoverPubkey(data, signature, 0);
+    }
+
+    @Override
+    public int recoverPubkey(ByteBuffer input, ByteBuffer output, boolean compressed) {
+        return putPubKey(output, encode(recoverPubkey(bytes(input, 0, 32), bytes(input, 32, 65), 0), compressed ? 33 : 65));
+    }
+
+    @Override
+    public int recoverPubkeyBatch(ByteBuffer input, int count, ByteBuffer output, boolean compressed) {
+        byte[] in = bytes(input, 0, 97 * count);
+        int pubLen = compressed ? 33 : 65;
+        int recovered = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] pub = encode(recoverPubkey(Arrays.copyOfRange(in, 97 * i, 97 * i + 32), in, 97 * i + 32), pubLen);
+            put(output, pubLen * i, pub == null ? new byte[pubLen] : pub);
+            output.put(pubLen * count + i, (byte) (pub == null ? 0 : 1));
+            recovered += pub == null ? 0 : 1;
+        }
+        return recovered;
+    }
+
+    @Override
+    public int computeAddressBatch(ByteBuffer input, int count, int pubLen, ByteBuffer output) {
+        int keyLen = pubLen == 0 ? 32 : pubLen;
+        int computed = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] key = bytes(input, keyLen * i, keyLen);
+            byte[] pub = pubLen == 0 ? computePubkey(key) : serializePubkey(key, false);
+            put(output, 20 * i, pub.length == 0 ? new byte[20] : Keccak256.address(pub));
+            output.put(20 * count + i, (byte) (pub.length == 0 ? 0 : 1));
+            computed += pub.length == 0 ? 0 : 1;
+        }
+        return computed;
+    }
+
+    @Override
+    public int signMessage(ByteBuffer input, int msgLen, boolean personal, ByteBuffer output) {
+        byte[] sig = signRecoverable(Keccak256.messageHash(input, 32, msgLen, personal), bytes(input, 0, 32));
+        if (sig.length == 0) {
+            return 0;
+        }
+        put(output, 0, sig);
+        return 1;
+    }
+
+    @Override
+    public int verifyMessage(ByteBuffer input, int msgLen, int pubLen, boolean personal) {
+        byte[] in = bytes(input, 0, 65 + pubLen);
+        BigInteger r = scalar(in, 0);
+        BigInteger s = scalar(in, 32);
+        Affine q = new Affine();
+        /* secp256k1_ecdsa_signature_parse_compact rejects overflowing scalars */
+        boolean valid = r.compareTo(ORDER) < 0 && s.compareTo(ORDER) < 0 && parsePubkey(q, in, 65, pubLen)
+            && verify(Keccak256.messageHash(input, 65 + pubLen, msgLen, personal), r, s, q);
+        return valid ? 1 : 0;
+    }
+
+    /**
+     * There is no precomputed context to blind, the engine is not constant time anyway.
+     */
+    @Override
+    public boolean randomize(byte[] seed) {
+        return true;
+    }
+
+    @Override
+    public void cleanup() {
+    }
+
+    private static boolean verify(byte[] data, BigInteger r, BigInteger s, Affine q) {
+        /* Like libsecp256k1, only lower-S signatures are valid */
+        if (r.signum() == 0 || s.signum() == 0 || s.compareTo(HALF_ORDER) > 0) {
+            return false;
+        }
+        BigInteger sn = s.modInverse(ORDER);
+        BigInteger u1 = sn.multiply(scalar(data, 0)).mod(ORDER);
+        BigInteger u2 = sn.multiply(r).mod(ORDER);
+
+        Secp256k1Group g = group.get();
+        Jacobian pr = new Jacobian();
+        g.ecmult(pr, q, u2, u1);
+        if (pr.infinity) {
+            return false;
+        }
+
+        /* Compare x without leaving Jacobian coordinates, also trying r + n which is below p for small r */
+        long[] xr = field(r);
+        if (g.eqX(xr, pr)) {
+            return true;
+        }
+        return r.compareTo(P_MINUS_ORDER) < 0 && g.eqX(field(r.add(ORDER)), pr);
+    }
+
+    /**
+     * Signs with the RFC6979 nonce of libsecp256k1, returns { r, s, recid } or null if sec is invalid.
+     */
+    private static BigInteger[] signScalars(byte[] data, byte[] sec) {
+        BigInteger d = scalar(sec, 0);
+        if (!isValidScalar(d)) {
+            return null;
+        }
+        BigInteger m = scalar(data, 0);
+        Secp256k1Group g = group.get();
+        Jacobian rj = new Jacobian();
+        Affine ra = new Affine();
+        Rfc6979 nonces = new Rfc6979(sec, data);
+        byte[] x = new byte[32];
+        while (true) {
+            BigInteger k = scalar(nonces.next(), 0);
+            if (!isValidScalar(k)) {
+                continue;
+            }
+            g.ecmultGen(rj, k);
+            g.toAffine(ra, rj);
+            Secp256k1Field.getBytes(x, 0, ra.x);
+            BigInteger rx = scalar(x, 0);
+            int recid = (rx.compareTo(ORDER) >= 0 ? 2 : 0) | (Secp256k1Field.isOdd(ra.y) ? 1 : 0);
+            BigInteger r = rx.mod(ORDER);
+            BigInteger s = k.modInverse(ORDER).multiply(m.add(r.multiply(d))).mod(ORDER);
+            if (s.signum() == 0) {
+                continue;
+            }
+            if (s.compareTo(HALF_ORDER) > 0) {
+                s = ORDER.subtract(s);
+                recid ^= 1;
+            }
+            return new BigInteger[] { r, s, BigInteger.valueOf(recid) };
+        }
+    }
+
+    private static byte[] recoverPubkey(byte[] data, byte[] signature, int offset) {
+        int recid = signature[offset + 64] & 0xFF;
+        if (recid >= 27) {
+            recid -= 27;
+        }
+        BigInteger r = scalar(signature, offset);
+        BigInteger s = scalar(signature, offset + 32);
+        if (recid > 3 || !isValidScalar(r) || !isValidScalar(s)) {
+            return new byte[0];
+        }
+        if ((recid & 2) != 0 && r.compareTo(P_MINUS_ORDER) >= 0) {
+            return new byte[0];
+        }
+
+        Affine x = new Affine();
+        if (!Secp256k1Group.setXOdd(x, field((recid & 2) != 0 ? r.add(ORDER) : r), (recid & 1) != 0)) {
+            return new byte[0];
+        }
+        BigInteger rn = r.modInverse(ORDER);
+        BigInteger u1 = ORDER.subtract(rn.multiply(scalar(data, 0)).mod(ORDER)).mod(ORDER);
+        BigInteger u2 = rn.multiply(s).mod(ORDER);
+
+        Secp256k1Group g = group.get();
+        Jacobian q = new Jacobian();
+        g.ecmult(q, x, u2, u1);
+        return q.infinity ? new byte[0] : serialize(g, q);
+    }
+
+    /**
+     * Parses a serialized public key as secp256k1_eckey_pubkey_parse does.
+     */
+    private static boolean parsePubkey(Affine r, byte[] pub, int offset, int len) {
+        r.infinity = false;
+        if (len == 33 && (pub[offset] == 0x02 || pub[offset] == 0x03)) {
+            long[] x = Secp256k1Field.create();
+            return Secp256k1Field.setBytes(x, pub, offset + 1) && Secp256k1Group.setXOdd(r, x, pub[offset] == 0x03);
+        } else if (len == 65 && (pub[offset] == 0x04 || pub[offset] == 0x06 || pub[offset] == 0x07)) {
+            if (!Secp256k1Field.setBytes(r.x, pub, offset + 1) || !Secp256k1Field.setBytes(r.y, pub, offset + 33)) {
+                return false;
+            }
+            if ((pub[offset] == 0x06 || pub[offset] == 0x07) && Secp256k1Field.isOdd(r.y) != (pub[offset] == 0x07)) {
+                return false;
+            }
+            return Secp256k1Group.isValid(r);
+        }
+        return false;
+    }
+
+    private static byte[] serialize(Secp256k1Group g, Jacobian p) {
+        Affine a = new Affine();
+        g.toAffine(a, p);
+        byte[] pub = new byte[65];
+        pub[0] = 0x04;
+        Secp256k1Field.getBytes(pub, 1, a.x);
+        Secp256k1Field.getBytes(pub, 33, a.y);
+        return pub;
+    }
+
+    /**
+     * Re-encodes an uncompressed public key, compressed if len is 33, null if there is none.
+     */
+    private static byte[] encode(byte[] pub, int len) {
+        if (pub == null || pub.length == 0) {
+            return null;
+        }
+        if (len == 65) {
+            return pub;
+        }
+        byte[] compressed = new byte[33];
+        compressed[0] = (byte) ((pub[64] & 1) == 0 ? 0x02 : 0x03);
+        System.arraycopy(pub, 1, compressed, 1, 32);
+        return compressed;
+    }
+
+    /**
+     * Strict DER parsing as secp256k1_ecdsa_signature_parse_der does, returns { r, s } or null.
+     * Integers which do not fit below the group order parse as 0, which never verifies.
+     */
+    private static BigInteger[] parseDer(byte[] sig, int offset, int len) {
+        int[] pos = { offset };
+        int end = offset + len;
+        if (pos[0] == end || sig[pos[0]++] != 0x30) {
+            return null;
+        }
+        int seqLen = derLength(sig, pos, end);
+        if (seqLen < 0 || pos[0] + seqLen != end) {
+            return null;
+        }
+        BigInteger r = derInteger(sig, pos, end);
+        BigInteger s = r == null ? null : derInteger(sig, pos, end);
+        if (s == null || pos[0] != end) {
+            return null;
+        }
+        return new BigInteger[] { r, s };
+    }
+
+    private static int derLength(byte[] sig, int[] pos, int end) {
+        if (pos[0] >= end) {
+            return -1;
+        }
+        int b1 = sig[pos[0]++] & 0xFF;
+        if (b1 == 0xFF || b1 == 0x80) {
+            return -1;
+        }
+        if ((b1 & 0x80) == 0) {
+            return b1;
+        }
+        int lenLeft = b1 & 0x7F;
+        if (lenLeft > end - pos[0] || sig[pos[0]] == 0 || lenLeft > 4) {
+            return -1;
+        }
+        long ret = 0;
+        while (lenLeft > 0) {
+            ret = (ret << 8) | (sig[pos[0]] & 0xFF);
+            if (ret + lenLeft > end - pos[0]) {
+                return -1;
+            }
+            pos[0]++;
+            lenLeft--;
+        }
+        return ret < 128 ? -1 : (int) ret;
+    }
+
+    private static BigInteger derInteger(byte[] sig, int[] pos, int end) {
+        if (pos[0] == end || sig[pos[0]] != 0x02) {
+            return null;
+        }
+        pos[0]++;
+        int len = derLength(sig, pos, end);
+        if (len <= 0 || pos[0] + len > end) {
+            return null;
+        }
+        int start = pos[0];
+        if (sig[start] == 0x00 && len > 1 && (sig[start + 1] & 0x80) == 0) {
+            return null;
+        }
+        if (sig[start] == (byte) 0xFF && len > 1 && (sig[start + 1] & 0x80) != 0) {
+            return null;
+        }
+        pos[0] += len;
+        if ((sig[start] & 0x80) != 0) {
+            return BigInteger.ZERO;
+        }
+        BigInteger value = new BigInteger(1, Arrays.copyOfRange(sig, start, start + len));
+        return value.bitLength() > 256 || value.compareTo(ORDER) >= 0 ? BigInteger.ZERO : value;
+    }
+
+    private static byte[] serializeDer(BigInteger r, BigInteger s) {
+        byte[] rb = r.toByteArray();
+        byte[] sb = s.toByteArray();
+        byte[] der = new byte[6 + rb.length + sb.length];
+        der[0] = 0x30;
+        der[1] = (byte) (4 + rb.length + sb.length);
+        der[2] = 0x02;
+        der[3] = (byte) rb.length;
+        System.arraycopy(rb, 0, der, 4, rb.length);
+        der[4 + rb.length] = 0x02;
+        der[5 + rb.length] = (byte) sb.length;
+        System.arraycopy(sb, 0, der, 6 + rb.length, sb.length);
+        return der;
+    }
+
+    private static boolean isValidScalar(BigInteger k) {
+        return k.signum() > 0 && k.compareTo(ORDER) < 0;
+    }
+
+    private static BigInteger scalar(byte[] in, int offset) {
+        return new BigInteger(1, Arrays.copyOfRange(in, offset, offset + 32));
+    }
+
+    private static void scalarBytes(byte[] out, int offset, BigInteger k) {
+        byte[] b = k.toByteArray();
+        int len = Math.min(b.length, 32);
+        Arrays.fill(out, offset, offset + 32 - len, (byte) 0);
+        System.arraycopy(b, b.length - len, out, offset + 32 - len, len);
+    }
+
+    private static long[] field(BigInteger x) {
+        byte[] b = new byte[32];
+        scalarBytes(b, 0, x);
+        long[] r = Secp256k1Field.create();
+        Secp256k1Field.setBytes(r, b, 0);
+        return r;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int offset, int len) {
+        byte[] r = new byte[len];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(r);
+        return r;
+    }
+
+    private static void put(ByteBuffer buffer, int offset, byte[] src) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.put(src);
+    }
+
+    private static int putPrivKey(ByteBuffer output, byte[] privkey) {
+        if (privkey == null) {
+            return 0;
+        }
+        put(output, 0, privkey);
+        return 1;
+    }
+
+    private static int putPubKey(ByteBuffer output, byte[] pubkey) {
+        if (pubkey == null || pubkey.length == 0) {
+            return 0;
+        }
+        put(output, 0, pubkey);
+        return pubkey.length;
+    }
+
+    /**
+     * The RFC6979 HMAC-SHA256 nonce generator of libsecp256k1, keyed with seckey || msg32.
+     */
+    private static final class Rfc6979 {
+
+        private final Mac hmac;
+        private byte[] k = new byte[32];
+        private byte[] v = new byte[32];
+        private boolean retry;
+
+        Rfc6979(byte[] key32, byte[] msg32) {
+            try {
+                hmac = Mac.getInstance("HmacSHA256");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            Arrays.fill(v, (byte) 0x01);
+            k = hmac(k, v, new byte[] { 0x00 }, key32, msg32);
+            v = hmac(k, v);
+            k = hmac(k, v, new byte[] { 0x01 }, key32, msg32);
+            v = hmac(k, v);
+        }
+
+        byte[] next() {
+            if (retry) {
+                k = hmac(k, v, new byte[] { 0x00 });
+                v = hmac(k, v);
+            }
+            v = hmac(k, v);
+            retry = true;
+            return v;
+        }
+
+        private byte[] hmac(byte[] key, byte[]... data) {
+            try {
+                hmac.init(new SecretKeySpec(key, "HmacSHA256"));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            for (byte[] d : data) {
+                hmac.update(d);
+            }
+            return hmac.doFinal();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>Call counts and latency histograms of the NativeSecp256k1 operations, time
+ * spent waiting for its read and write locks, and scratch buffer usage, published
+ * as the MXBean org.bitcoin:type=Secp256k1Metrics.</p>
+ *
+ * <p>Collection is off unless -Dorg.bitcoin.secp256k1.metrics=true is set, which
+ * also registers the MXBean, or it is turned on through setEnabled(). While off,
+ * each hook costs one volatile read. Only the JNI engine is instrumented.</p>
+ */
+public final class Secp256k1Metrics implements Secp256k1MetricsMXBean {
+
+    /** System property enabling collection and registering the MXBean at startup */
+    public static final String METRICS_PROPERTY = "org.bitcoin.secp256k1.metrics";
+
+    public static final String OBJECT_NAME = "org.bitcoin:type=Secp256k1Metrics";
+
+    /** Power of two latency buckets, the last one also counts anything slower (2^31 ns is about 2s) */
+    static final int BUCKETS = 32;
+
+    enum Op {
+        VERIFY("verify"),
+        VERIFY_BATCH("verifyBatch"),
+        VERIFY_COMPACT("verifyCompact"),
+        PARSE_PUBKEY("parsePubkey"),
+        VERIFY_PARSED("verifyParsed"),
+        SIGN("sign"),
+        SIGN_BATCH("signBatch"),
+        SIGN_COMPACT("signCompact"),
+        SECKEY_VERIFY("secKeyVerify"),
+        COMPUTE_PUBKEY("computePubkey"),
+        SERIALIZE_PUBKEY("serializePubkey"),
+        PRIVKEY_TWEAK_ADD("privKeyTweakAdd"),
+        PRIVKEY_TWEAK_ADD_BATCH("privKeyTweakAddBatch"),
+        PRIVKEY_TWEAK_MUL("privKeyTweakMul"),
+        PUBKEY_TWEAK_ADD("pubKeyTweakAdd"),
+        PUBKEY_TWEAK_ADD_BATCH("pubKeyTweakAddBatch"),
+        PUBKEY_TWEAK_MUL("pubKeyTweakMul"),
+        ECDH("createECDHSecret"),
+        ECDH_BATCH("createECDHSecretBatch"),
+        SIGN_RECOVERABLE("signRecoverable"),
+        RECOVER("recoverPubkey"),
+        RECOVER_BATCH("recoverPubkeyBatch"),
+        ADDRESS_BATCH("computeAddressBatch"),
+        SIGN_MESSAGE("signMessage"),
+        VERIFY_MESSAGE("verifyMessage"),
+        RANDOMIZE("randomize");
+
+        final String operation;
+
+        Op(String operation) {
+            this.operation = operation;
+        }
+    }
+
+    private static final Secp256k1Metrics INSTANCE = new Secp256k1Metrics();
+
+    private static final LongAdder[] calls = adders(Op.values().length);
+    private static final LongAdder[] nanos = adders(Op.values().length);
+    private static final LongAdder[] histograms = adders(Op.values().length * BUCKETS);
+    private static final LongAdder readLockWaits = new LongAdder();
+    private static final LongAdder readLockWaitNanos = new LongAdder();
+    private static final LongAdder writeLockWaits = new LongAdder();
+    private static final LongAdder writeLockWaitNanos = new LongAdder();
+    private static final LongAdder scratchAllocations = new LongAdder();
+    private static final LongAdder scratchBytes = new LongAdder();
+
+    private static volatile boolean enabled;
+
+    static {
+        if (Boolean.getBoolean(METRICS_PROPERTY)) {
+            enabled = true;
+            register();
+        }
+    }
+
+    private Secp256k1Metrics() {
+    }
+
+    public static Secp256k1Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the MXBean with the platform MBean server if it is not already.
+     */
+    public static synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return a start timestamp to pass to the record methods, 0 when disabled
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    static void record(Op op, long start) {
+        if (start == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        int i = op.ordinal();
+        calls[i].increment();
+        nanos[i].add(elapsed);
+        histograms[i * BUCKETS + Math.min(64 - Long.numberOfLeadingZeros(elapsed), BUCKETS - 1)].increment();
+    }
+
+    static void recordLockWait(boolean write, long start) {
+        if (start == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        (write ? writeLockWaits : readLockWaits).increment();
+        (write ? writeLockWaitNanos : readLockWaitNanos).add(elapsed);
+    }
+
+    static void recordScratchAllocation(int capacity) {
+        scratchAllocations.increment();
+        scratchBytes.add(capacity);
+    }
+
+    /**
+     * A scratch buffer was dropped rather than pooled, its memory goes back with the next GC.
+     */
+    static void recordScratchRelease(int capacity) {
+        scratchBytes.add(-capacity);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        Secp256k1Metrics.enabled = enabled;
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Op op : Op.values()) {
+            long count = calls[op.ordinal()].sum();
+            if (count != 0) {
+                result.put(op.operation, count);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getTotalLatencyNanos() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Op op : Op.values()) {
+            if (calls[op.ordinal()].sum() != 0) {
+                result.put(op.operation, nanos[op.ordinal()].sum());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, long[]> getLatencyHistograms() {
+        Map<String, long[]> result = new LinkedHashMap<String, long[]>();
+        for (Op op : Op.values()) {
+            if (calls[op.ordinal()].sum() != 0) {
+                long[] histogram = new long[BUCKETS];
+                for (int b = 0; b < BUCKETS; b++) {
+                    histogram[b] = histograms[op.ordinal() * BUCKETS + b].sum();
+                }
+                result.put(op.operation, histogram);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long getReadLockWaitCount() {
+        return readLockWaits.sum();
+    }
+
+    @Override
+    public long getReadLockWaitNanos() {
+        return readLockWaitNanos.sum();
+    }
+
+    @Override
+    public long getWriteLockWaitCount() {
+        return writeLockWaits.sum();
+    }
+
+    @Override
+    public long getWriteLockWaitNanos() {
+        return writeLockWaitNanos.sum();
+    }
+
+    @Override
+    public long getScratchBufferAllocations() {
+        return scratchAllocations.sum();
+    }
+
+    @Override
+    public long getScratchBufferBytes() {
+        return scratchBytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : calls) {
+            adder.reset();
+        }
+        for (LongAdder adder : nanos) {
+            adder.reset();
+        }
+        for (LongAdder adder : histograms) {
+            adder.reset();
+        }
+        readLockWaits.reset();
+        readLockWaitNanos.reset();
+        writeLockWaits.reset();
+        writeLockWaitNanos.reset();
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.util.Map;
+
+/**
+ * Management interface of Secp256k1Metrics. Maps are keyed by operation name
+ * (verify, sign, recoverPubkey, ...) and only hold operations called at least once.
+ */
+public interface Secp256k1MetricsMXBean {
+
+    boolean isEnabled();
+
+    /** Starts or stops collecting call counts, latencies and lock waits */
+    void setEnabled(boolean enabled);
+
+    Map<String, Long> getCallCounts();
+
+    /** Total time spent in native code per operation, lock waits excluded */
+    Map<String, Long> getTotalLatencyNanos();
+
+    /** Per operation, element i counts the calls taking at least 2^(i-1) and less than 2^i ns, the last element also the slower ones */
+    Map<String, long[]> getLatencyHistograms();
+
+    long getReadLockWaitCount();
+
+    long getReadLockWaitNanos();
+
+    long getWriteLockWaitCount();
+
+    long getWriteLockWaitNanos();
+
+    /** Scratch buffers allocated because none was idle in the pool or a batch needed a larger one, counted even while disabled */
+    long getScratchBufferAllocations();
+
+    /** Direct memory held by pooled and in-use scratch buffers */
+    long getScratchBufferBytes();
+
+    /** Clears everything but the scratch buffer figures */
+    void reset();
+}
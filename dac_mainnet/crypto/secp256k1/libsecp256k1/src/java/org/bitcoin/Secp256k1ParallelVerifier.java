@@ -0,0 +1,261 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Verifies large sets of signatures (a block, a mempool burst) across a fixed
+ * pool of worker threads.
+ *
+ * <p>Jobs are split in chunks, each chunk is verified with a single
+ * NativeSecp256k1.verifyBatch() call on a worker owning its scratch buffer,
+ * with a context borrowed from a pool for the chunk, so workers share no lock
+ * and the pool keeps re-randomizing the contexts in use. Results come back in
+ * job order.</p>
+ */
+public class Secp256k1ParallelVerifier implements AutoCloseable {
+
+  private final int chunkSize;
+  private final ExecutorService executor;
+  private final Secp256k1ContextPool contextPool;
+  private final ThreadLocal<Worker> worker = new ThreadLocal<Worker>() {
+    @Override
+    protected Worker initialValue() {
+      return new Worker();
+    }
+  };
+
+  /**
+   * @param threads Number of worker threads, typically the number of cores
+   * @param chunkSize Number of signatures verified per native call
+   */
+  public Secp256k1ParallelVerifier(int threads, int chunkSize) {
+    Preconditions.checkArgument(threads > 0 && chunkSize > 0);
+    this.chunkSize = chunkSize;
+    this.contextPool = new Secp256k1ContextPool(threads);
+    this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "secp256k1-verifier-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  public Secp256k1ParallelVerifier(int threads) {
+    this(threads, 64);
+  }
+
+  /**
+   * Verifies all the given signatures.
+   *
+   * @param data The data which was signed, each must be exactly 32 bytes
+   * @param signatures The DER signatures
+   * @param pubs The public keys which did the signing
+   *
+   * Return values
+   * @param results true at index i if signature i is valid
+   */
+  public boolean[] verifyAll(byte[][] data, byte[][] signatures, byte[][] pubs) throws InterruptedException {
+    boolean[] results = new boolean[data.length];
+    List<Future<Boolean>> chunks = submit(data, signatures, pubs, results, null);
+    try {
+      for (Future<Boolean> chunk : chunks) {
+        await(chunk);
+      }
+    } finally {
+      cancel(chunks);
+    }
+    return results;
+  }
+
+  /**
+   * Verifies that all the given signatures are valid, e.g. for block validation.
+   * Chunks not started yet are cancelled as soon as an invalid signature is found,
+   * or when a chunk fails.
+   *
+   * @param data The data which was signed, each must be exactly 32 bytes
+   * @param signatures The DER signatures
+   * @param pubs The public keys which did the signing
+   *
+   * Return values
+   * @param valid true if every signature is valid
+   */
+  public boolean verifyBlock(byte[][] data, byte[][] signatures, byte[][] pubs) throws InterruptedException {
+    AtomicBoolean failed = new AtomicBoolean();
+    List<Future<Boolean>> chunks = submit(data, signatures, pubs, new boolean[data.length], failed);
+    try {
+      for (Future<Boolean> chunk : chunks) {
+        if (failed.get()) {
+          break;
+        }
+        try {
+          if (!await(chunk)) {
+            break;
+          }
+        } catch (CancellationException e) {
+          break;
+        }
+      }
+      return !failed.get();
+    } finally {
+      // Also when a chunk threw or the wait was interrupted, nobody reads the others
+      cancel(chunks);
+    }
+  }
+
+  /**
+   * Stops the workers and destroys their contexts. If interrupted while waiting
+   * for the running chunks, returns with the interrupt flag set; their contexts
+   * are destroyed when they complete.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    contextPool.close();
+  }
+
+  private List<Future<Boolean>> submit(final byte[][] data,
+                                       final byte[][] signatures,
+                                       final byte[][] pubs,
+                                       final boolean[] results,
+                                       final AtomicBoolean failed) {
+    Preconditions.checkArgument(data.length == signatures.length && data.length == pubs.length);
+    // Checked before queueing anything, so that no chunk fails half way
+    for (int i = 0; i < data.length; i++) {
+      Preconditions.checkArgument(data[i].length == 32 && signatures[i].length <= 520 && pubs[i].length <= 520);
+    }
+
+    List<Future<Boolean>> chunks = new ArrayList<Future<Boolean>>((data.length + chunkSize - 1) / chunkSize);
+    for (int start = 0; start < data.length; start += chunkSize) {
+      final int from = start;
+      final int to = Math.min(start + chunkSize, data.length);
+      chunks.add(executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          if (failed != null && failed.get()) {
+            return false;
+          }
+          // Without the native library the workers run the Java engine, which needs no context
+          long context = Secp256k1Context.isEnabled() ? contextPool.acquire() : -1;
+          boolean valid;
+          try {
+            valid = worker.get().verify(context, data, signatures, pubs, from, to, results);
+          } finally {
+            if (context != -1) {
+              contextPool.release(context);
+            }
+          }
+          if (!valid && failed != null) {
+            failed.set(true);
+          }
+          return valid;
+        }
+      }));
+    }
+    return chunks;
+  }
+
+  private static void cancel(List<Future<Boolean>> chunks) {
+    for (Future<Boolean> chunk : chunks) {
+      chunk.cancel(false);
+    }
+  }
+
+  private static boolean await(Future<Boolean> chunk) throws InterruptedException {
+    try {
+      return chunk.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * A worker thread's own scratch buffer.
+   */
+  private static class Worker {
+
+    private ByteBuffer scratch;
+
+    private boolean verify(long context, byte[][] data, byte[][] signatures, byte[][] pubs, int from, int to, boolean[] results) {
+      int count = to - from;
+      int size = 32 * count;
+      for (int i = from; i < to; i++) {
+        size += signatures[i].length + pubs[i].length;
+      }
+
+      if (scratch == null || scratch.capacity() < size) {
+        scratch = ByteBuffer.allocateDirect(size);
+        scratch.order(ByteOrder.nativeOrder());
+      }
+      scratch.rewind();
+
+      int[] sigOffsets = new int[count];
+      int[] sigLens = new int[count];
+      int[] pubOffsets = new int[count];
+      int[] pubLens = new int[count];
+      for (int i = from; i < to; i++) {
+        scratch.put(data[i]);
+      }
+      for (int i = 0; i < count; i++) {
+        sigOffsets[i] = scratch.position();
+        sigLens[i] = signatures[from + i].length;
+        scratch.put(signatures[from + i]);
+        pubOffsets[i] = scratch.position();
+        pubLens[i] = pubs[from + i].length;
+        scratch.put(pubs[from + i]);
+      }
+
+      byte[] bitmap = NativeSecp256k1.verifyBatch(context, scratch, count, sigOffsets, sigLens, pubOffsets, pubLens);
+
+      boolean allValid = true;
+      for (int i = 0; i < count; i++) {
+        results[from + i] = (bitmap[i >> 3] & (1 << (i & 7))) != 0;
+        allValid &= results[from + i];
+      }
+      return allValid;
+    }
+  }
+}
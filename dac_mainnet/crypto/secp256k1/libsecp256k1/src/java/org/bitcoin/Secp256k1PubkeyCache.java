@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * A bounded LRU cache of parsed public keys, keyed by their serialized bytes.
+ *
+ * <p>Verifying against a hot key (a validator, a contract owner...) then skips
+ * parsing and point decompression, see NativeSecp256k1.parsePubkey().</p>
+ */
+public class Secp256k1PubkeyCache {
+
+  private final Cache<ByteBuffer, byte[]> parsedPubkeys;
+
+  /**
+   * @param maximumSize Maximum number of parsed public keys kept
+   */
+  public Secp256k1PubkeyCache(long maximumSize) {
+    Preconditions.checkArgument(maximumSize > 0);
+    this.parsedPubkeys = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+  }
+
+  /**
+   * Returns the parsed form of a public key, parsing and caching it if needed.
+   *
+   * @param pub The serialized public key, 33 or 65 bytes
+   *
+   * Return values
+   * @param parsedPub 64-byte internal public key, empty if pub is invalid; a copy,
+   *                  the cached one is never handed out
+   */
+  public byte[] get(byte[] pub) {
+    return parse(pub).clone();
+  }
+
+  /**
+   * Verifies the given secp256k1 signature, parsing the public key only on a cache miss.
+   *
+   * @param data The data which was signed, must be exactly 32 bytes
+   * @param signature The signature
+   * @param pub The public key which did the signing
+   */
+  public boolean verify(byte[] data, byte[] signature, byte[] pub) {
+    byte[] parsedPub = parse(pub);
+    return parsedPub.length != 0 && NativeSecp256k1.verifyParsed(data, signature, parsedPub);
+  }
+
+  private byte[] parse(byte[] pub) {
+    ByteBuffer key = ByteBuffer.wrap(pub);
+    byte[] parsedPub = parsedPubkeys.getIfPresent(key);
+    if (parsedPub == null) {
+      parsedPub = NativeSecp256k1.parsePubkey(pub);
+      if (parsedPub.length == 0) {
+        // Don't let invalid keys evict valid ones
+        return parsedPub;
+      }
+      parsedPubkeys.put(ByteBuffer.wrap(pub.clone()), parsedPub);
+    }
+    return parsedPub;
+  }
+
+  public void invalidateAll() {
+    parsedPubkeys.invalidateAll();
+  }
+
+  public long size() {
+    return parsedPubkeys.size();
+  }
+
+  public CacheStats stats() {
+    return parsedPubkeys.stats();
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014-2016 the libsecp256k1 contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoin;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import static org.bitcoin.NativeSecp256k1Util.*;
+
+/**
+ * A bounded cache of valid signatures, so that a signature verified when its
+ * transaction entered the mempool is not verified again when it shows up in a
+ * block or after a re-org, as Bitcoin's sigcache does.
+ *
+ * <p>Only valid results are cached. An entry is a 128-bit fingerprint of
+ * SHA-256(salt || data || signature || pub), the salt being random per cache
+ * so that nobody can craft colliding entries: 16 bytes per signature, kept
+ * in a lock-free table of 4-entry buckets. A full bucket evicts one of its
+ * entries.</p>
+ */
+public class Secp256k1SignatureCache {
+
+  private static final int BUCKET_SIZE = 4;
+
+  private final HashFunction sha256 = Hashing.sha256();
+  private final byte[] salt = new byte[32];
+  private final int bucketMask;
+  /** Entry i is at 2 * i and 2 * i + 1, 0 / 0 when empty */
+  private final AtomicLongArray entries;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder size = new LongAdder();
+
+  /**
+   * @param maximumSize Maximum number of signatures kept, rounded up to a power of two
+   */
+  public Secp256k1SignatureCache(int maximumSize) {
+    Preconditions.checkArgument(maximumSize > 0 && maximumSize <= 1 << 28);
+    int buckets = Integer.highestOneBit(Math.max(maximumSize / BUCKET_SIZE, 1) * 2 - 1);
+    this.bucketMask = buckets - 1;
+    this.entries = new AtomicLongArray(2 * BUCKET_SIZE * buckets);
+    new SecureRandom().nextBytes(salt);
+  }
+
+  /**
+   * Verifies the given secp256k1 signature, unless it was found valid before.
+   *
+   * @param data The data which was signed, must be exactly 32 bytes
+   * @param signature The signature
+   * @param pub The public key which did the signing
+   */
+  public boolean verify(byte[] data, byte[] signature, byte[] pub) throws AssertFailException {
+    Preconditions.checkArgument(data.length == 32 && signature.length <= 520 && pub.length <= 520);
+
+    byte[] fingerprint = fingerprint(data, signature, pub);
+    if (contains(fingerprint)) {
+      hits.increment();
+      return true;
+    }
+    misses.increment();
+    boolean valid = NativeSecp256k1.verify(data, signature, pub);
+    if (valid) {
+      add(fingerprint);
+    }
+    return valid;
+  }
+
+  /**
+   * Verifies a batch of secp256k1 signatures, the ones not found valid before in
+   * a single NativeSecp256k1.verifyBatch() call.
+   *
+   * @param data The data which was signed, each must be exactly 32 bytes
+   * @param signatures The signatures
+   * @param pubs The public keys which did the signing
+   *
+   * Return values
+   * @param results true at index i if signature i is valid
+   */
+  public boolean[] verifyBatch(byte[][] data, byte[][] signatures, byte[][] pubs) {
+    Preconditions.checkArgument(data.length == signatures.length && data.length == pubs.length);
+
+    int count = data.length;
+    boolean[] results = new boolean[count];
+    byte[][] fingerprints = new byte[count][];
+    int missCount = 0;
+    for (int i = 0; i < count; i++) {
+      Preconditions.checkArgument(data[i].length == 32 && signatures[i].length <= 520 && pubs[i].length <= 520);
+      fingerprints[i] = fingerprint(data[i], signatures[i], pubs[i]);
+      results[i] = contains(fingerprints[i]);
+      if (!results[i]) {
+        missCount++;
+      }
+    }
+    hits.add(count - missCount);
+    misses.add(missCount);
+    if (missCount == 0) {
+      return results;
+    }
+
+    int[] missing = new int[missCount];
+    byte[][] missingData = new byte[missCount][];
+    byte[][] missingSignatures = new byte[missCount][];
+    byte[][] missingPubs = new byte[missCount][];
+    for (int i = 0, j = 0; i < count; i++) {
+      if (!results[i]) {
+        missing[j] = i;
+        missingData[j] = data[i];
+        missingSignatures[j] = signatures[i];
+        missingPubs[j] = pubs[i];
+        j++;
+      }
+    }
+    boolean[] verified = NativeSecp256k1.verifyBatch(missingData, missingSignatures, missingPubs);
+    for (int j = 0; j < missCount; j++) {
+      if (verified[j]) {
+        results[missing[j]] = true;
+        add(fingerprints[missing[j]]);
+      }
+    }
+    return results;
+  }
+
+  public void invalidateAll() {
+    for (int i = 0; i < entries.length(); i++) {
+      entries.set(i, 0);
+    }
+    size.reset();
+  }
+
+  /**
+   * @return the approximate number of signatures kept
+   */
+  public long size() {
+    return size.sum();
+  }
+
+  /**
+   * @return the hit, miss and eviction counts; nothing is loaded, so the load figures are 0
+   */
+  public CacheStats stats() {
+    return new CacheStats(hits.sum(), misses.sum(), 0, 0, 0, evictions.sum());
+  }
+
+  private byte[] fingerprint(byte[] data, byte[] signature, byte[] pub) {
+    return sha256.newHasher()
+        .putBytes(salt)
+        .putBytes(data)
+        .putInt(signature.length)
+        .putBytes(signature)
+        .putBytes(pub)
+        .hash()
+        .asBytes();
+  }
+
+  private boolean contains(byte[] fingerprint) {
+    ByteBuffer hash = ByteBuffer.wrap(fingerprint);
+    long high = hash.getLong(0) | 1;
+    long low = hash.getLong(8);
+    int first = bucket(hash) * BUCKET_SIZE;
+    for (int i = first; i < first + BUCKET_SIZE; i++) {
+      // A torn read of an entry being replaced matches neither fingerprint
+      if (entries.get(2 * i) == high && entries.get(2 * i + 1) == low) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void add(byte[] fingerprint) {
+    ByteBuffer hash = ByteBuffer.wrap(fingerprint);
+    // The low bit is set so that no fingerprint looks like an empty entry
+    long high = hash.getLong(0) | 1;
+    long low = hash.getLong(8);
+    int first = bucket(hash) * BUCKET_SIZE;
+    for (int i = first; i < first + BUCKET_SIZE; i++) {
+      if (entries.get(2 * i) == 0 && entries.compareAndSet(2 * i, 0, high)) {
+        entries.set(2 * i + 1, low);
+        size.increment();
+        return;
+      }
+    }
+    // Full bucket, the hash picks the victim
+    int victim = first + (int) (hash.getLong(24) & (BUCKET_SIZE - 1));
+    entries.set(2 * victim, high);
+    entries.set(2 * victim + 1, low);
+    evictions.increment();
+  }
+
+  private int bucket(ByteBuffer hash) {
+    return (int) hash.getLong(16) & bucketMask;
+  }
+}
@@ -5,6 +5,7 @@
 #include "include/secp256k1.h"
 #include "include/secp256k1_ecdh.h"
 #include "include/secp256k1_recovery.h"
+#include "keccak256.h"
 
 
 SECP256K1_API jlong JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ctx_1clone
@@ -70,6 +71,134 @@ SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1ve
   return ret;
 }
 
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1verify_1compact
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l, jint publen)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+
+  unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* sigdata = (unsigned char*) (data + 32);
+  const unsigned char* pubdata = (unsigned char*) (data + 32 + 64);
+
+  secp256k1_ecdsa_signature sig;
+  secp256k1_pubkey pubkey;
+
+  int ret = secp256k1_ecdsa_signature_parse_compact(ctx, &sig, sigdata);
+
+  if( ret ) {
+    ret = secp256k1_ec_pubkey_parse(ctx, &pubkey, pubdata, publen);
+
+    if( ret ) {
+      ret = secp256k1_ecdsa_verify(ctx, &sig, data, &pubkey);
+    }
+  }
+
+  (void)classObject;
+
+  return ret;
+}
+
+SECP256K1_API jbyteArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1verify_1batch
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l, jint count, jintArray sigOffsetsArray, jintArray sigLensArray, jintArray pubOffsetsArray, jintArray pubLensArray)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+
+  unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  jint* sigOffsets = NULL;
+  jint* sigLens = NULL;
+  jint* pubOffsets = NULL;
+  jint* pubLens = NULL;
+
+  jbyteArray bitmapArray = NULL;
+  jsize bitmapLen = (count + 7) / 8;
+  unsigned char* bitmap = NULL;
+
+  secp256k1_ecdsa_signature sig;
+  secp256k1_pubkey pubkey;
+  jint i;
+
+  /* A NULL result leaves an OutOfMemoryError pending, thrown when returning */
+  if( (sigOffsets = (*env)->GetIntArrayElements(env, sigOffsetsArray, NULL)) == NULL
+      || (sigLens = (*env)->GetIntArrayElements(env, sigLensArray, NULL)) == NULL
+      || (pubOffsets = (*env)->GetIntArrayElements(env, pubOffsetsArray, NULL)) == NULL
+      || (pubLens = (*env)->GetIntArrayElements(env, pubLensArray, NULL)) == NULL ) {
+    goto cleanup;
+  }
+
+  bitmap = (unsigned char*) calloc(bitmapLen > 0 ? bitmapLen : 1, 1);
+  if( bitmap == NULL ) {
+    jclass oomClass = (*env)->FindClass(env, "java/lang/OutOfMemoryError");
+    if( oomClass != NULL ) {
+      (*env)->ThrowNew(env, oomClass, "Can't allocate the verify batch result");
+    }
+    goto cleanup;
+  }
+
+  for( i = 0; i < count; i++ ) {
+    int ret = secp256k1_ecdsa_signature_parse_der(ctx, &sig, data + sigOffsets[i], sigLens[i]);
+
+    if( ret ) {
+      ret = secp256k1_ec_pubkey_parse(ctx, &pubkey, data + pubOffsets[i], pubLens[i]);
+
+      if( ret ) {
+        ret = secp256k1_ecdsa_verify(ctx, &sig, data + 32 * i, &pubkey);
+      }
+    }
+
+    if( ret ) {
+      bitmap[i >> 3] |= (unsigned char)(1 << (i & 7));
+    }
+  }
+
+  bitmapArray = (*env)->NewByteArray(env, bitmapLen);
+  if( bitmapArray != NULL ) {
+    (*env)->SetByteArrayRegion(env, bitmapArray, 0, bitmapLen, (jbyte*)bitmap);
+  }
+
+cleanup:
+  free(bitmap);
+  if( pubLens != NULL ) {
+    (*env)->ReleaseIntArrayElements(env, pubLensArray, pubLens, JNI_ABORT);
+  }
+  if( pubOffsets != NULL ) {
+    (*env)->ReleaseIntArrayElements(env, pubOffsetsArray, pubOffsets, JNI_ABORT);
+  }
+  if( sigLens != NULL ) {
+    (*env)->ReleaseIntArrayElements(env, sigLensArray, sigLens, JNI_ABORT);
+  }
+  if( sigOffsets != NULL ) {
+    (*env)->ReleaseIntArrayElements(env, sigOffsetsArray, sigOffsets, JNI_ABORT);
+  }
+
+  (void)classObject;
+
+  return bitmapArray;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1verify_1parsed
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l, jint siglen)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+
+  unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* pubdata = { (unsigned char*) (data + 32) };
+  const unsigned char* sigdata = { (unsigned char*) (data + 32 + 64) };
+
+  secp256k1_ecdsa_signature sig;
+  secp256k1_pubkey pubkey;
+
+  int ret = secp256k1_ecdsa_signature_parse_der(ctx, &sig, sigdata, siglen);
+
+  if( ret ) {
+    memcpy(pubkey.data, pubdata, sizeof(pubkey.data));
+    ret = secp256k1_ecdsa_verify(ctx, &sig, data, &pubkey);
+  }
+
+  (void)classObject;
+
+  return ret;
+}
+
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign
   (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l)
 {
@@ -112,6 +241,81 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1e
   return retArray;
 }
 
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  unsigned char* secKey = (unsigned char*) (data + 32);
+  unsigned char* outputSer = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  secp256k1_ecdsa_signature sig;
+  size_t outputLen = 72;
+
+  int ret = secp256k1_ecdsa_sign(ctx, &sig, data, secKey, NULL, NULL );
+
+  if( ret ) {
+    ret = secp256k1_ecdsa_signature_serialize_der(ctx, outputSer, &outputLen, &sig );
+  }
+
+  (void)classObject;
+
+  return ret ? (jint)outputLen : 0;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign_1compact_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  unsigned char* secKey = (unsigned char*) (data + 32);
+  unsigned char* outputSer = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  secp256k1_ecdsa_signature sig;
+
+  int ret = secp256k1_ecdsa_sign(ctx, &sig, data, secKey, NULL, NULL );
+
+  if( ret ) {
+    ret = secp256k1_ecdsa_signature_serialize_compact(ctx, outputSer, &sig );
+  }
+
+  (void)classObject;
+
+  return ret ? 64 : 0;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign_1batch
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint count, jboolean sharedKey)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* secKeys = data + 32 * count;
+  unsigned char* sigs = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+  unsigned char* status = sigs + 64 * count;
+
+  secp256k1_ecdsa_signature sig;
+  jint i, signedCount = 0;
+
+  for( i = 0; i < count; i++ ) {
+    const unsigned char* secKey = sharedKey ? secKeys : secKeys + 32 * i;
+
+    int ret = secp256k1_ecdsa_sign(ctx, &sig, data + 32 * i, secKey, NULL, NULL );
+
+    if( ret ) {
+      int ret2 = secp256k1_ecdsa_signature_serialize_compact(ctx, sigs + 64 * i, &sig ); (void)ret2;
+      signedCount++;
+    } else {
+      memset(sigs + 64 * i, 0, 64);
+    }
+
+    status[i] = (unsigned char) ret;
+  }
+
+  (void)classObject;
+
+  return signedCount;
+}
+
 SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1seckey_1verify
   (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l)
 {
@@ -165,6 +369,69 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1e
 
 }
 
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1pubkey_1create_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jboolean compressed)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* secKey = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  unsigned char* outputSer = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  secp256k1_pubkey pubkey;
+  size_t outputLen = 65;
+
+  int ret = secp256k1_ec_pubkey_create(ctx, &pubkey, secKey);
+
+  if( ret ) {
+    ret = secp256k1_ec_pubkey_serialize(ctx, outputSer, &outputLen, &pubkey, compressed ? SECP256K1_EC_COMPRESSED : SECP256K1_EC_UNCOMPRESSED );
+  }
+
+  (void)classObject;
+
+  return ret ? (jint)outputLen : 0;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1pubkey_1parse
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint inputlen)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* pubdata = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  unsigned char* parsed = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  secp256k1_pubkey pubkey;
+
+  int ret = secp256k1_ec_pubkey_parse(ctx, &pubkey, pubdata, inputlen);
+
+  if( ret ) {
+    memcpy(parsed, pubkey.data, sizeof(pubkey.data));
+  }
+
+  (void)classObject;
+
+  return ret;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1pubkey_1serialize_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint inputlen, jboolean compressed)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* pubdata = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  unsigned char* outputSer = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  secp256k1_pubkey pubkey;
+  size_t outputLen = 65;
+
+  /* Parsed before anything is written, so output may be the input buffer */
+  int ret = secp256k1_ec_pubkey_parse(ctx, &pubkey, pubdata, inputlen);
+
+  if( ret ) {
+    ret = secp256k1_ec_pubkey_serialize(ctx, outputSer, &outputLen, &pubkey, compressed ? SECP256K1_EC_COMPRESSED : SECP256K1_EC_UNCOMPRESSED );
+  }
+
+  (void)classObject;
+
+  return ret ? (jint)outputLen : 0;
+}
+
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1privkey_1tweak_1add
   (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l)
 {
@@ -200,6 +467,21 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1p
   return retArray;
 }
 
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1privkey_1tweak_1add_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* tweak = (unsigned char*) (data + 32);
+  unsigned char* privkey = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  memmove(privkey, data, 32);
+
+  (void)classObject;
+
+  return secp256k1_ec_privkey_tweak_add(ctx, privkey, tweak);
+}
+
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1privkey_1tweak_1mul
   (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l)
 {
@@ -235,6 +517,21 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1p
   return retArray;
 }
 
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1privkey_1tweak_1mul_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* tweak = (unsigned char*) (data + 32);
+  unsigned char* privkey = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  memmove(privkey, data, 32);
+
+  (void)classObject;
+
+  return secp256k1_ec_privkey_tweak_mul(ctx, privkey, tweak);
+}
+
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1pubkey_1tweak_1add
   (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l, jint publen)
 {
@@ -280,6 +577,32 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1p
   return retArray;
 }
 
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1pubkey_1tweak_1add_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint publen, jboolean compressed)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* pkey = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* tweak = (unsigned char*) (pkey + publen);
+  unsigned char* outputSer = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  secp256k1_pubkey pubkey;
+  size_t outputLen = 65;
+
+  int ret = secp256k1_ec_pubkey_parse(ctx, &pubkey, pkey, publen);
+
+  if( ret ) {
+    ret = secp256k1_ec_pubkey_tweak_add(ctx, &pubkey, tweak);
+  }
+
+  if( ret ) {
+    ret = secp256k1_ec_pubkey_serialize(ctx, outputSer, &outputLen, &pubkey, compressed ? SECP256K1_EC_COMPRESSED : SECP256K1_EC_UNCOMPRESSED );
+  }
+
+  (void)classObject;
+
+  return ret ? (jint)outputLen : 0;
+}
+
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1pubkey_1tweak_1mul
   (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l, jint publen)
 {
@@ -324,6 +647,118 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1p
   return retArray;
 }
 
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1pubkey_1tweak_1mul_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint publen, jboolean compressed)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* pkey = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* tweak = (unsigned char*) (pkey + publen);
+  unsigned char* outputSer = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  secp256k1_pubkey pubkey;
+  size_t outputLen = 65;
+
+  int ret = secp256k1_ec_pubkey_parse(ctx, &pubkey, pkey, publen);
+
+  if( ret ) {
+    ret = secp256k1_ec_pubkey_tweak_mul(ctx, &pubkey, tweak);
+  }
+
+  if( ret ) {
+    ret = secp256k1_ec_pubkey_serialize(ctx, outputSer, &outputLen, &pubkey, compressed ? SECP256K1_EC_COMPRESSED : SECP256K1_EC_UNCOMPRESSED );
+  }
+
+  (void)classObject;
+
+  return ret ? (jint)outputLen : 0;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1privkey_1tweak_1add_1batch
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint count, jint publen)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* secdata = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* tweaks = (const unsigned char*) (secdata + 32);
+  unsigned char* children = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+  unsigned char* status = children + (32 + publen) * count;
+  unsigned int flags = publen == 33 ? SECP256K1_EC_COMPRESSED : SECP256K1_EC_UNCOMPRESSED;
+
+  secp256k1_pubkey pubkey;
+  jint i, derived = 0;
+
+  for( i = 0; i < count; i++ ) {
+    unsigned char* child = children + (32 + publen) * i;
+    int ret;
+
+    memmove(child, secdata, 32);
+    ret = secp256k1_ec_privkey_tweak_add(ctx, child, tweaks + 32 * i);
+
+    /* The public key comes along if asked for, which needs a signing context */
+    if( ret && publen ) {
+      size_t outputLen = publen;
+      ret = secp256k1_ec_pubkey_create(ctx, &pubkey, child);
+      if( ret ) {
+        ret = secp256k1_ec_pubkey_serialize(ctx, child + 32, &outputLen, &pubkey, flags);
+      }
+    }
+
+    if( ret ) {
+      derived++;
+    } else {
+      memset(child, 0, 32 + publen);
+    }
+
+    status[i] = (unsigned char) ret;
+  }
+
+  (void)classObject;
+
+  return derived;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1pubkey_1tweak_1add_1batch
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint count, jint publen, jint outlen)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* pkey = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* tweaks = (const unsigned char*) (pkey + publen);
+  unsigned char* children = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+  unsigned char* status = children + outlen * count;
+  unsigned int flags = outlen == 33 ? SECP256K1_EC_COMPRESSED : SECP256K1_EC_UNCOMPRESSED;
+
+  secp256k1_pubkey parent, pubkey;
+  jint i, derived = 0;
+
+  /* The parent is parsed once, each child tweaks its own copy of it */
+  int parsed = secp256k1_ec_pubkey_parse(ctx, &parent, pkey, publen);
+
+  for( i = 0; i < count; i++ ) {
+    size_t outputLen = outlen;
+    int ret = parsed;
+
+    if( ret ) {
+      pubkey = parent;
+      ret = secp256k1_ec_pubkey_tweak_add(ctx, &pubkey, tweaks + 32 * i);
+    }
+
+    if( ret ) {
+      ret = secp256k1_ec_pubkey_serialize(ctx, children + outlen * i, &outputLen, &pubkey, flags);
+    }
+
+    if( ret ) {
+      derived++;
+    } else {
+      memset(children + outlen * i, 0, outlen);
+    }
+
+    status[i] = (unsigned char) ret;
+  }
+
+  (void)classObject;
+
+  return derived;
+}
+
 SECP256K1_API jlong JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1pubkey_1combine
   (JNIEnv * env, jclass classObject, jobject byteBufferObject, jlong ctx_l, jint numkeys)
 {
@@ -375,3 +810,271 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1e
 
   return retArray;
 }
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdh_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint publen)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* secdata = (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* pubdata = (const unsigned char*) (secdata + 32);
+  unsigned char* nonce_res = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  secp256k1_pubkey pubkey;
+
+  int ret = secp256k1_ec_pubkey_parse(ctx, &pubkey, pubdata, publen);
+
+  if (ret) {
+    ret = secp256k1_ecdh(
+      ctx,
+      nonce_res,
+      &pubkey,
+      secdata
+    );
+  }
+
+  (void)classObject;
+
+  return ret;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdh_1batch
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint count, jint publen)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* secdata = (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* pubs = (const unsigned char*) (secdata + 32);
+  unsigned char* secrets = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+  unsigned char* status = secrets + 32 * count;
+
+  secp256k1_pubkey pubkey;
+  jint i, derived = 0;
+
+  for( i = 0; i < count; i++ ) {
+    int ret = secp256k1_ec_pubkey_parse(ctx, &pubkey, pubs + publen * i, publen);
+
+    if( ret ) {
+      ret = secp256k1_ecdh(ctx, secrets + 32 * i, &pubkey, secdata);
+    }
+
+    if( ret ) {
+      derived++;
+    } else {
+      memset(secrets + 32 * i, 0, 32);
+    }
+
+    status[i] = (unsigned char) ret;
+  }
+
+  (void)classObject;
+
+  return derived;
+}
+
+/* The Ethereum address of a public key: the last 20 bytes of the Keccak-256 of its uncompressed X || Y */
+static int secp256k1_jni_address(const secp256k1_context* ctx, unsigned char* output20, const secp256k1_pubkey* pubkey)
+{
+  unsigned char pub65[65];
+  unsigned char hash[32];
+  size_t outputLen = 65;
+
+  int ret = secp256k1_ec_pubkey_serialize(ctx, pub65, &outputLen, pubkey, SECP256K1_EC_UNCOMPRESSED );
+
+  if( ret ) {
+    keccak256_message(hash, pub65 + 1, 64, 0);
+    memcpy(output20, hash + 12, 20);
+  }
+
+  return ret;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1address_1batch
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint count, jint publen)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* keys = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  unsigned char* addresses = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+  unsigned char* status = addresses + 20 * count;
+
+  secp256k1_pubkey pubkey;
+  jint i, derived = 0;
+
+  for( i = 0; i < count; i++ ) {
+    int ret;
+
+    /* Secret keys if publen is 0, which needs a signing context, serialized public keys otherwise */
+    if( publen == 0 ) {
+      ret = secp256k1_ec_pubkey_create(ctx, &pubkey, keys + 32 * i);
+    } else {
+      ret = secp256k1_ec_pubkey_parse(ctx, &pubkey, keys + publen * i, publen);
+    }
+
+    if( ret ) {
+      ret = secp256k1_jni_address(ctx, addresses + 20 * i, &pubkey);
+    }
+
+    if( ret ) {
+      derived++;
+    } else {
+      memset(addresses + 20 * i, 0, 20);
+    }
+
+    status[i] = (unsigned char) ret;
+  }
+
+  (void)classObject;
+
+  return derived;
+}
+
+static int secp256k1_jni_parse_recoverable(const secp256k1_context* ctx, secp256k1_ecdsa_recoverable_signature* sig, const unsigned char* input65)
+{
+  int recid = input65[64];
+
+  /* Accept Ethereum style v values, anything else out of 0-3 would trip the illegal argument callback */
+  if( recid >= 27 ) {
+    recid -= 27;
+  }
+  if( recid < 0 || recid > 3 ) {
+    return 0;
+  }
+
+  return secp256k1_ecdsa_recoverable_signature_parse_compact(ctx, sig, input65, recid);
+}
+
+/* Returns the length of the public key written to output, 33 or 65, 0 if recovery failed */
+static int secp256k1_jni_recover(const secp256k1_context* ctx, unsigned char* output, const unsigned char* msg32, const unsigned char* input65, int compressed)
+{
+  secp256k1_ecdsa_recoverable_signature sig;
+  secp256k1_pubkey pubkey;
+  size_t outputLen = 65;
+
+  int ret = secp256k1_jni_parse_recoverable(ctx, &sig, input65);
+
+  if( ret ) {
+    ret = secp256k1_ecdsa_recover(ctx, &pubkey, &sig, msg32);
+  }
+
+  if( ret ) {
+    ret = secp256k1_ec_pubkey_serialize(ctx, output, &outputLen, &pubkey, compressed ? SECP256K1_EC_COMPRESSED : SECP256K1_EC_UNCOMPRESSED );
+  }
+
+  return ret ? (int)outputLen : 0;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign_1recoverable_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* secKey = (unsigned char*) (data + 32);
+  unsigned char* outputSer = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  secp256k1_ecdsa_recoverable_signature sig;
+  int recid = 0;
+
+  int ret = secp256k1_ecdsa_sign_recoverable(ctx, &sig, data, secKey, NULL, NULL );
+
+  if( ret ) {
+    int ret2 = secp256k1_ecdsa_recoverable_signature_serialize_compact(ctx, outputSer, &recid, &sig ); (void)ret2;
+    outputSer[64] = (unsigned char) recid;
+  }
+
+  (void)classObject;
+
+  return ret;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1recover_1into
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jboolean compressed)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  unsigned char* outputSer = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  (void)classObject;
+
+  return secp256k1_jni_recover(ctx, outputSer, data, data + 32, compressed);
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1recover_1batch
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint count, jboolean compressed)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* data = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  unsigned char* pubkeys = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+  size_t pubLen = compressed ? 33 : 65;
+  unsigned char* status = pubkeys + pubLen * count;
+
+  jint i, recovered = 0;
+
+  for( i = 0; i < count; i++ ) {
+    const unsigned char* entry = data + (32 + 65) * i;
+
+    int ret = secp256k1_jni_recover(ctx, pubkeys + pubLen * i, entry, entry + 32, compressed) != 0;
+
+    if( ret ) {
+      recovered++;
+    } else {
+      memset(pubkeys + pubLen * i, 0, pubLen);
+    }
+
+    status[i] = (unsigned char) ret;
+  }
+
+  (void)classObject;
+
+  return recovered;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign_1message
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jobject outBufferObject, jlong ctx_l, jint msgLen, jboolean personal)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* secKey = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  unsigned char* outputSer = (unsigned char*) (*env)->GetDirectBufferAddress(env, outBufferObject);
+
+  secp256k1_ecdsa_recoverable_signature sig;
+  unsigned char msg32[32];
+  int recid = 0;
+  int ret;
+
+  keccak256_message(msg32, secKey + 32, msgLen, personal);
+
+  ret = secp256k1_ecdsa_sign_recoverable(ctx, &sig, msg32, secKey, NULL, NULL );
+
+  if( ret ) {
+    int ret2 = secp256k1_ecdsa_recoverable_signature_serialize_compact(ctx, outputSer, &recid, &sig ); (void)ret2;
+    outputSer[64] = (unsigned char) recid;
+  }
+
+  (void)classObject;
+
+  return ret;
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1verify_1message
+  (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l, jint msgLen, jint publen, jboolean personal)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+  const unsigned char* sigdata = (unsigned char*) (*env)->GetDirectBufferAddress(env, byteBufferObject);
+  const unsigned char* pubdata = sigdata + 65;
+
+  secp256k1_ecdsa_signature sig;
+  secp256k1_pubkey pubkey;
+  unsigned char msg32[32];
+
+  int ret = secp256k1_ecdsa_signature_parse_compact(ctx, &sig, sigdata);
+
+  if( ret ) {
+    ret = secp256k1_ec_pubkey_parse(ctx, &pubkey, pubdata, publen);
+  }
+
+  if( ret ) {
+    keccak256_message(msg32, pubdata + publen, msgLen, personal);
+    ret = secp256k1_ecdsa_verify(ctx, &sig, msg32, &pubkey);
+  }
+
+  (void)classObject;
+
+  return ret;
+}
@@ -32,6 +32,14 @@ SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1context_1
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1privkey_1tweak_1add
   (JNIEnv *, jclass, jobject, jlong);
 
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_privkey_tweak_add_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;J)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1privkey_1tweak_1add_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong);
+
 /*
  * Class:     org_bitcoin_NativeSecp256k1
  * Method:    secp256k1_privkey_tweak_mul
@@ -40,6 +48,14 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1p
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1privkey_1tweak_1mul
   (JNIEnv *, jclass, jobject, jlong);
 
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_privkey_tweak_mul_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;J)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1privkey_1tweak_1mul_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong);
+
 /*
  * Class:     org_bitcoin_NativeSecp256k1
  * Method:    secp256k1_pubkey_tweak_add
@@ -48,6 +64,14 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1p
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1pubkey_1tweak_1add
   (JNIEnv *, jclass, jobject, jlong, jint);
 
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_pubkey_tweak_add_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JIZ)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1pubkey_1tweak_1add_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint, jboolean);
+
 /*
  * Class:     org_bitcoin_NativeSecp256k1
  * Method:    secp256k1_pubkey_tweak_mul
@@ -56,6 +80,30 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1p
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1pubkey_1tweak_1mul
   (JNIEnv *, jclass, jobject, jlong, jint);
 
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_pubkey_tweak_mul_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JIZ)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1pubkey_1tweak_1mul_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint, jboolean);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_privkey_tweak_add_batch
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JII)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1privkey_1tweak_1add_1batch
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint, jint);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_pubkey_tweak_add_batch
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JIII)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1pubkey_1tweak_1add_1batch
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint, jint, jint);
+
 /*
  * Class:     org_bitcoin_NativeSecp256k1
  * Method:    secp256k1_destroy_context
@@ -72,6 +120,30 @@ SECP256K1_API void JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1destroy_1
 SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1verify
   (JNIEnv *, jclass, jobject, jlong, jint, jint);
 
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_verify_compact
+ * Signature: (Ljava/nio/ByteBuffer;JI)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1verify_1compact
+  (JNIEnv *, jclass, jobject, jlong, jint);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_verify_batch
+ * Signature: (Ljava/nio/ByteBuffer;JI[I[I[I[I)[B
+ */
+SECP256K1_API jbyteArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1verify_1batch
+  (JNIEnv *, jclass, jobject, jlong, jint, jintArray, jintArray, jintArray, jintArray);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_verify_parsed
+ * Signature: (Ljava/nio/ByteBuffer;JI)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1verify_1parsed
+  (JNIEnv *, jclass, jobject, jlong, jint);
+
 /*
  * Class:     org_bitcoin_NativeSecp256k1
  * Method:    secp256k1_ecdsa_sign
@@ -80,6 +152,30 @@ SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1ve
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign
   (JNIEnv *, jclass, jobject, jlong);
 
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_sign_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;J)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_sign_compact_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;J)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign_1compact_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_sign_batch
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JIZ)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign_1batch
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint, jboolean);
+
 /*
  * Class:     org_bitcoin_NativeSecp256k1
  * Method:    secp256k1_ec_seckey_verify
@@ -96,13 +192,29 @@ SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1secke
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1pubkey_1create
   (JNIEnv *, jclass, jobject, jlong);
 
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ec_pubkey_create_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JZ)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1pubkey_1create_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong, jboolean);
+
 /*
  * Class:     org_bitcoin_NativeSecp256k1
  * Method:    secp256k1_ec_pubkey_parse
- * Signature: (Ljava/nio/ByteBuffer;JI)[[B
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JI)I
  */
-SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1pubkey_1parse
-  (JNIEnv *, jclass, jobject, jlong, jint);
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1pubkey_1parse
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ec_pubkey_serialize_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JIZ)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1pubkey_1serialize_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint, jboolean);
 
 /*
  * Class:     org_bitcoin_NativeSecp256k1
@@ -112,6 +224,70 @@ SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1e
 SECP256K1_API jobjectArray JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdh
   (JNIEnv* env, jclass classObject, jobject byteBufferObject, jlong ctx_l, jint publen);
 
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdh_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JI)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdh_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdh_batch
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JII)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdh_1batch
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint, jint);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ec_address_batch
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JII)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ec_1address_1batch
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint, jint);
+
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_sign_recoverable_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;J)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign_1recoverable_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_recover_into
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JZ)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1recover_1into
+  (JNIEnv *, jclass, jobject, jobject, jlong, jboolean);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_recover_batch
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JIZ)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1recover_1batch
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint, jboolean);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_sign_message
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;JIZ)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1sign_1message
+  (JNIEnv *, jclass, jobject, jobject, jlong, jint, jboolean);
+
+/*
+ * Class:     org_bitcoin_NativeSecp256k1
+ * Method:    secp256k1_ecdsa_verify_message
+ * Signature: (Ljava/nio/ByteBuffer;JIIZ)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_NativeSecp256k1_secp256k1_1ecdsa_1verify_1message
+  (JNIEnv *, jclass, jobject, jlong, jint, jint, jboolean);
 
 #ifdef __cplusplus
 }
@@ -1,15 +1,156 @@
 #include <stdlib.h>
 #include <stdint.h>
+#include <stdio.h>
+#include <string.h>
+#ifndef _WIN32
+#include <fcntl.h>
+#include <unistd.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#endif
 #include "org_bitcoin_Secp256k1Context.h"
 #include "include/secp256k1.h"
+#include "src/ecmult_tables.h"
+
+/* Snapshot file: magic, layout, table size, checksum of the tables, padding to keep the tables
+ * 64-byte aligned, tables. */
+#define TABLES_MAGIC "secp256k1-ecmult"
+#define TABLES_HEADER_SIZE 64
+#define TABLES_CHECKSUM_OFFSET 24
+
+/* Mapped once and shared by the verify-only and sign-capable contexts for the life of the process. */
+static const unsigned char* mapped_tables = NULL;
+
+static void write_u32(unsigned char* p, uint32_t v) {
+  p[0] = v >> 24; p[1] = v >> 16; p[2] = v >> 8; p[3] = v;
+}
+
+static uint32_t read_u32(const unsigned char* p) {
+  return ((uint32_t)p[0] << 24) | ((uint32_t)p[1] << 16) | ((uint32_t)p[2] << 8) | p[3];
+}
+
+/* 64-bit FNV-1a: not cryptographic, catches truncated or corrupted snapshots, not tampered ones. */
+static uint64_t tables_checksum(const unsigned char* tables, size_t size) {
+  uint64_t hash = 0xcbf29ce484222325ULL;
+  size_t i;
+  for (i = 0; i < size; i++) {
+    hash ^= tables[i];
+    hash *= 0x100000001b3ULL;
+  }
+  return hash;
+}
+
+static void tables_header(unsigned char* header, const unsigned char* tables) {
+  uint64_t checksum = tables_checksum(tables, secp256k1_ecmult_tables_size());
+  memset(header, 0, TABLES_HEADER_SIZE);
+  memcpy(header, TABLES_MAGIC, 16);
+  write_u32(header + 16, secp256k1_ecmult_tables_layout());
+  write_u32(header + 20, (uint32_t)secp256k1_ecmult_tables_size());
+  write_u32(header + TABLES_CHECKSUM_OFFSET, (uint32_t)(checksum >> 32));
+  write_u32(header + TABLES_CHECKSUM_OFFSET + 4, (uint32_t)checksum);
+}
+
+static const unsigned char* map_tables(const char* path)
+{
+#ifdef _WIN32
+  (void)path;
+  return NULL;
+#else
+  unsigned char header[TABLES_HEADER_SIZE];
+  size_t size = TABLES_HEADER_SIZE + secp256k1_ecmult_tables_size();
+  struct stat st;
+  void* map;
+  int fd = open(path, O_RDONLY);
+
+  if (fd < 0) {
+    return NULL;
+  }
+  if (fstat(fd, &st) != 0 || (size_t)st.st_size != size) {
+    close(fd);
+    return NULL;
+  }
+  map = mmap(NULL, size, PROT_READ, MAP_PRIVATE, fd, 0);
+  close(fd);
+  if (map == MAP_FAILED) {
+    return NULL;
+  }
+  /* The checksum reads the whole body once, a mismatch falls back to computing the tables */
+  tables_header(header, (const unsigned char*)map + TABLES_HEADER_SIZE);
+  if (memcmp(map, header, TABLES_HEADER_SIZE) != 0) {
+    munmap(map, size);
+    return NULL;
+  }
+  return (const unsigned char*)map + TABLES_HEADER_SIZE;
+#endif
+}
 
 SECP256K1_API jlong JNICALL Java_org_bitcoin_Secp256k1Context_secp256k1_1init_1context
-  (JNIEnv* env, jclass classObject)
+  (JNIEnv* env, jclass classObject, jboolean sign, jstring tablesPath)
 {
-  secp256k1_context *ctx = secp256k1_context_create(SECP256K1_CONTEXT_SIGN | SECP256K1_CONTEXT_VERIFY);
+  secp256k1_context *ctx;
+  unsigned int flags = sign ? SECP256K1_CONTEXT_SIGN | SECP256K1_CONTEXT_VERIFY : SECP256K1_CONTEXT_VERIFY;
 
-  (void)classObject;(void)env;
+  (void)classObject;
+
+  if (tablesPath != NULL && mapped_tables == NULL) {
+    const char* path = (*env)->GetStringUTFChars(env, tablesPath, NULL);
+    if (path != NULL) {
+      mapped_tables = map_tables(path);
+      if (mapped_tables == NULL) {
+        fprintf(stderr, "[libsecp256k1] ignoring unusable table snapshot %s\n", path);
+      }
+      (*env)->ReleaseStringUTFChars(env, tablesPath, path);
+    }
+  }
+
+  if (mapped_tables != NULL) {
+    ctx = secp256k1_context_create_with_ecmult_tables(flags, mapped_tables);
+  } else {
+    ctx = secp256k1_context_create(flags);
+  }
 
   return (uintptr_t)ctx;
 }
 
+SECP256K1_API void JNICALL Java_org_bitcoin_Secp256k1Context_secp256k1_1destroy_1shared_1context
+  (JNIEnv* env, jclass classObject, jlong ctx_l)
+{
+  secp256k1_context *ctx = (secp256k1_context*)(uintptr_t)ctx_l;
+
+  (void)classObject;(void)env;
+
+  secp256k1_ecmult_tables_detach(ctx, mapped_tables);
+  secp256k1_context_destroy(ctx);
+}
+
+SECP256K1_API jint JNICALL Java_org_bitcoin_Secp256k1Context_secp256k1_1write_1tables
+  (JNIEnv* env, jclass classObject, jstring outputPath)
+{
+  unsigned char header[TABLES_HEADER_SIZE];
+  size_t size = secp256k1_ecmult_tables_size();
+  unsigned char* tables = malloc(size);
+  secp256k1_context *ctx = secp256k1_context_create(SECP256K1_CONTEXT_VERIFY);
+  const char* path = (*env)->GetStringUTFChars(env, outputPath, NULL);
+  FILE* out = NULL;
+  int ret = 0;
+
+  (void)classObject;
+
+  if (tables != NULL && path != NULL && secp256k1_ecmult_tables_export(ctx, tables)) {
+    tables_header(header, tables);
+    out = fopen(path, "wb");
+    if (out != NULL) {
+      ret = fwrite(header, 1, TABLES_HEADER_SIZE, out) == TABLES_HEADER_SIZE &&
+            fwrite(tables, 1, size, out) == size;
+      ret &= fclose(out) == 0;
+    }
+  }
+
+  if (path != NULL) {
+    (*env)->ReleaseStringUTFChars(env, outputPath, path);
+  }
+  secp256k1_context_destroy(ctx);
+  free(tables);
+
+  return ret;
+}
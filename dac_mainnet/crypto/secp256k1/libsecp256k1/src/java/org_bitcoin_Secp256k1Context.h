@@ -11,10 +11,26 @@ extern "C" {
 /*
  * Class:     org_bitcoin_Secp256k1Context
  * Method:    secp256k1_init_context
- * Signature: ()J
+ * Signature: (ZLjava/lang/String;)J
  */
 SECP256K1_API jlong JNICALL Java_org_bitcoin_Secp256k1Context_secp256k1_1init_1context
-  (JNIEnv *, jclass);
+  (JNIEnv *, jclass, jboolean, jstring);
+
+/*
+ * Class:     org_bitcoin_Secp256k1Context
+ * Method:    secp256k1_destroy_shared_context
+ * Signature: (J)V
+ */
+SECP256K1_API void JNICALL Java_org_bitcoin_Secp256k1Context_secp256k1_1destroy_1shared_1context
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     org_bitcoin_Secp256k1Context
+ * Method:    secp256k1_write_tables
+ * Signature: (Ljava/lang/String;)I
+ */
+SECP256K1_API jint JNICALL Java_org_bitcoin_Secp256k1Context_secp256k1_1write_1tables
+  (JNIEnv *, jclass, jstring);
 
 #ifdef __cplusplus
 }
@@ -7,6 +7,7 @@
 #include "include/secp256k1.h"
 
 #include "util.h"
+#include "ecmult_tables.h"
 #include "num_impl.h"
 #include "field_impl.h"
 #include "scalar_impl.h"
@@ -98,6 +99,50 @@ void secp256k1_context_destroy(secp256k1_context* ctx) {
     }
 }
 
+#ifdef USE_ENDOMORPHISM
+#define ECMULT_TABLES_COUNT 2
+#else
+#define ECMULT_TABLES_COUNT 1
+#endif
+
+uint32_t secp256k1_ecmult_tables_layout(void) {
+    return ((uint32_t)WINDOW_G << 24) | ((uint32_t)sizeof(secp256k1_ge_storage) << 8) | ECMULT_TABLES_COUNT;
+}
+
+size_t secp256k1_ecmult_tables_size(void) {
+    return sizeof(secp256k1_ge_storage) * ECMULT_TABLE_SIZE(WINDOW_G) * ECMULT_TABLES_COUNT;
+}
+
+int secp256k1_ecmult_tables_export(const secp256k1_context* ctx, unsigned char* out) {
+    size_t size = sizeof(secp256k1_ge_storage) * ECMULT_TABLE_SIZE(WINDOW_G);
+    if (!secp256k1_ecmult_context_is_built(&ctx->ecmult_ctx)) {
+        return 0;
+    }
+    memcpy(out, ctx->ecmult_ctx.pre_g, size);
+#ifdef USE_ENDOMORPHISM
+    memcpy(out + size, ctx->ecmult_ctx.pre_g_128, size);
+#endif
+    return 1;
+}
+
+secp256k1_context* secp256k1_context_create_with_ecmult_tables(unsigned int flags, const unsigned char* tables) {
+    secp256k1_context* ret = secp256k1_context_create(flags & ~(SECP256K1_FLAGS_BIT_CONTEXT_VERIFY));
+    if (ret != NULL && (flags & SECP256K1_FLAGS_BIT_CONTEXT_VERIFY)) {
+        /* The tables are only ever read, so they can live in a read-only mapping. */
+        ret->ecmult_ctx.pre_g = (secp256k1_ge_storage (*)[])(uintptr_t)tables;
+#ifdef USE_ENDOMORPHISM
+        ret->ecmult_ctx.pre_g_128 = (secp256k1_ge_storage (*)[])(uintptr_t)(tables + sizeof(secp256k1_ge_storage) * ECMULT_TABLE_SIZE(WINDOW_G));
+#endif
+    }
+    return ret;
+}
+
+void secp256k1_ecmult_tables_detach(secp256k1_context* ctx, const unsigned char* tables) {
+    if (tables != NULL && (uintptr_t)ctx->ecmult_ctx.pre_g == (uintptr_t)tables) {
+        secp256k1_ecmult_context_init(&ctx->ecmult_ctx);
+    }
+}
+
 void secp256k1_context_set_illegal_callback(secp256k1_context* ctx, void (*fun)(const char* message, void* data), const void* data) {
     if (fun == NULL) {
         fun = default_illegal_callback_fn;
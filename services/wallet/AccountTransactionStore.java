@@ -0,0 +1,340 @@
+package ethereum.wallet.service;
+
+import static ethereum.wallet.service.EthereumWalletService.*;
+import static ethereum.wallet.service.utils.Utils.*;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang.StringUtils;
+
+import ethereum.wallet.model.TransactionMessage;
+import commons.api.settings.SettingService;
+import commons.api.settings.SettingValue;
+import services.cache.CacheService;
+import services.cache.ExoCache;
+import services.log.Log;
+
+/**
+ * An append-only store of the transactions of each wallet address per network.
+ * Transactions are stored in pages of PAGE_SIZE entries, so that saving a
+ * transaction rewrites the last page only and not the whole history.
+ * Duplicates are looked for in the last two pages only, that is among at least
+ * the PAGE_SIZE most recent transactions: an address is loaded reading two
+ * pages whatever its history, but a transaction saved again after PAGE_SIZE
+ * newer ones would be stored twice.
+ */
+public class AccountTransactionStore {
+
+  private static final Log                           LOG       = getLogger(AccountTransactionStore.class);
+
+  /**
+   * Maximum number of transactions per stored page
+   */
+  public static final int                            PAGE_SIZE = 100;
+
+  private static final int                           LOCKS     = 64;
+
+  private SettingService                             settingService;
+
+  /**
+   * Transactions count, last page and recent hashes of an address, by store
+   * key. Values are replaced, never modified once cached.
+   */
+  private ExoCache<String, AddressTransactions>      addressTransactionsCache;
+
+  /**
+   * Serializes appends and loads of an address, striped by store key
+   */
+  private final Object[]                             locks     = new Object[LOCKS];
+
+  public AccountTransactionStore(SettingService settingService, CacheService cacheService) {
+    this.settingService = settingService;
+    this.addressTransactionsCache = cacheService.getCacheInstance("wallet.accountTransactions");
+    for (int i = 0; i < LOCKS; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  /**
+   * Append a transaction to the history of an address
+   *
+   * @param networkId
+   * @param address
+   * @param hash transaction hash
+   * @param content transaction hash or {@link TransactionMessage} string to
+   *          store
+   * @return false if the transaction was found in the recent transactions of
+   *         this address
+   */
+  public boolean append(Long networkId, String address, String hash, String content) {
+    address = address.toLowerCase();
+    String key = getKey(networkId, address);
+    synchronized (getLock(key)) {
+      AddressTransactions transactions = load(networkId, address, key);
+      if (transactions.contains(hash)) {
+        return false;
+      }
+      int page = transactions.count / PAGE_SIZE;
+      boolean newPage = transactions.count % PAGE_SIZE == 0;
+      String lastPage = newPage ? content : transactions.lastPage + "," + content;
+      int count = transactions.count + 1;
+      try {
+        // Page first, an entry beyond the stored count is ignored
+        settingService.set(WALLET_CONTEXT, WALLET_SCOPE, key + "_" + page, SettingValue.create(lastPage));
+        settingService.set(WALLET_CONTEXT, WALLET_SCOPE, key, SettingValue.create(String.valueOf(count)));
+      } catch (RuntimeException e) {
+        // The stored count may have been written or not, read it again
+        addressTransactionsCache.remove(key);
+        throw e;
+      }
+      Set<String> lastPageHashes = newPage ? new HashSet<>() : new HashSet<>(transactions.lastPageHashes);
+      lastPageHashes.add(hash);
+      addressTransactionsCache.put(key,
+                                   new AddressTransactions(count,
+                                                           lastPage,
+                                                           lastPageHashes,
+                                                           newPage ? transactions.lastPageHashes
+                                                                   : transactions.previousPageHashes));
+      return true;
+    }
+  }
+
+  /**
+   * @param networkId
+   * @param address
+   * @return stored transactions of the address, most recent first
+   */
+  public List<String> getTransactions(Long networkId, String address) {
+    List<String> transactions = new ArrayList<>();
+    forEachTransaction(networkId, address, transactions::add);
+    return transactions;
+  }
+
+  /**
+   * Get stored transactions of an address, most recent first, before a
+   * position. Positions count transactions from the first one stored, so that
+   * they don't move when transactions are appended.
+   *
+   * @param networkId
+   * @param address
+   * @param before position of the transaction following the first returned
+   *          one, null to start from the most recent transaction
+   * @param limit maximum number of transactions to return
+   * @return transactions at positions before - 1 down to before - limit, with
+   *         the position to read the next page from, computed from the same
+   *         count
+   */
+  public TransactionsPage getTransactions(Long networkId, String address, Integer before, int limit) {
+    address = address.toLowerCase();
+    String key = getKey(networkId, address);
+    int count = getCount(networkId, address, key);
+    int to = before == null ? count : Math.max(0, Math.min(before, count));
+    int from = Math.max(0, to - limit);
+    List<String> transactions = new ArrayList<>(Math.max(0, to - from));
+    for (int page = (to - 1) / PAGE_SIZE; page >= from / PAGE_SIZE && to > from; page--) {
+      String[] entries = getPage(key, page, count);
+      for (int i = Math.min(entries.length, to - page * PAGE_SIZE) - 1; i >= 0 && page * PAGE_SIZE + i >= from; i--) {
+        transactions.add(entries[i]);
+      }
+    }
+    return new TransactionsPage(transactions, from > 0 ? from : null);
+  }
+
+  /**
+   * Passes stored transactions of an address to a consumer, most recent first,
+   * reading one page at a time
+   *
+   * @param networkId
+   * @param address
+   * @param consumer
+   */
+  public void forEachTransaction(Long networkId, String address, Consumer<String> consumer) {
+    address = address.toLowerCase();
+    String key = getKey(networkId, address);
+    int count = getCount(networkId, address, key);
+    for (int page = (count - 1) / PAGE_SIZE; page >= 0 && count > 0; page--) {
+      String[] entries = getPage(key, page, count);
+      for (int i = entries.length - 1; i >= 0; i--) {
+        consumer.accept(entries[i]);
+      }
+    }
+  }
+
+  /**
+   * @param networkId
+   * @param address
+   * @return number of stored transactions of the address
+   */
+  public int getCount(Long networkId, String address) {
+    address = address.toLowerCase();
+    return getCount(networkId, address, getKey(networkId, address));
+  }
+
+  private int getCount(Long networkId, String address, String key) {
+    AddressTransactions transactions = addressTransactionsCache.get(key);
+    if (transactions != null) {
+      return transactions.count;
+    }
+    SettingValue<?> countValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, key);
+    if (countValue != null && countValue.getValue() != null) {
+      return Integer.parseInt(countValue.getValue().toString());
+    }
+    // Not stored yet in pages, migrate it if needed
+    synchronized (getLock(key)) {
+      return load(networkId, address, key).count;
+    }
+  }
+
+  private Object getLock(String key) {
+    return locks[(key.hashCode() & Integer.MAX_VALUE) % LOCKS];
+  }
+
+  /**
+   * @return entries of a stored page, ignoring the ones beyond count
+   */
+  private String[] getPage(String key, int page, int count) {
+    SettingValue<?> pageValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, key + "_" + page);
+    String content = pageValue == null || pageValue.getValue() == null ? "" : pageValue.getValue().toString();
+    String[] entries = content.isEmpty() ? new String[0] : content.split(",");
+    int pageCount = Math.min(PAGE_SIZE, count - page * PAGE_SIZE);
+    return entries.length > pageCount ? Arrays.copyOf(entries, pageCount) : entries;
+  }
+
+  private AddressTransactions load(Long networkId, String address, String key) {
+    AddressTransactions transactions = addressTransactionsCache.get(key);
+    if (transactions != null) {
+      return transactions;
+    }
+    SettingValue<?> countValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, key);
+    if (countValue != null && countValue.getValue() != null) {
+      int count = Integer.parseInt(countValue.getValue().toString());
+      int lastPage = (count - 1) / PAGE_SIZE;
+      String[] lastEntries = count == 0 ? new String[0] : getPage(key, lastPage, count);
+      String[] previousEntries = lastPage > 0 ? getPage(key, lastPage - 1, count) : new String[0];
+      transactions = newAddressTransactions(count, Arrays.asList(previousEntries), Arrays.asList(lastEntries));
+    } else {
+      transactions = migrate(networkId, address, key);
+    }
+    addressTransactionsCache.put(key, transactions);
+    return transactions;
+  }
+
+  /**
+   * Moves the comma joined history stored with the key
+   * WALLET_USER_TRANSACTION_NAME + address + networkId, most recent first, to
+   * pages. Nothing is written for an address without such history.
+   */
+  private AddressTransactions migrate(Long networkId, String address, String key) {
+    String legacyKey = WALLET_USER_TRANSACTION_NAME + address + networkId;
+    SettingValue<?> legacyValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, legacyKey);
+    if (legacyValue == null) {
+      return newAddressTransactions(0, Collections.emptyList(), Collections.emptyList());
+    }
+    String legacyTransactions = legacyValue.getValue() == null ? "" : legacyValue.getValue().toString();
+    List<String> entries = new ArrayList<>();
+    if (!legacyTransactions.isEmpty()) {
+      Set<String> hashes = new HashSet<>();
+      String[] legacyEntries = legacyTransactions.split(",");
+      for (int i = legacyEntries.length - 1; i >= 0; i--) {
+        if (hashes.add(getHash(legacyEntries[i]))) {
+          entries.add(legacyEntries[i]);
+        }
+      }
+    }
+    int count = entries.size();
+    for (int page = 0; page * PAGE_SIZE < count; page++) {
+      List<String> pageEntries = entries.subList(page * PAGE_SIZE, Math.min(count, (page + 1) * PAGE_SIZE));
+      settingService.set(WALLET_CONTEXT, WALLET_SCOPE, key + "_" + page, SettingValue.create(StringUtils.join(pageEntries, ",")));
+    }
+    settingService.set(WALLET_CONTEXT, WALLET_SCOPE, key, SettingValue.create(String.valueOf(count)));
+    settingService.remove(WALLET_CONTEXT, WALLET_SCOPE, legacyKey);
+    LOG.info("Migrated {} transactions of address {} on network {}", count, address, networkId);
+
+    int lastPageStart = count == 0 ? 0 : (count - 1) / PAGE_SIZE * PAGE_SIZE;
+    return newAddressTransactions(count,
+                                  entries.subList(Math.max(0, lastPageStart - PAGE_SIZE), lastPageStart),
+                                  entries.subList(lastPageStart, count));
+  }
+
+  private AddressTransactions newAddressTransactions(int count, List<String> previousEntries, List<String> lastEntries) {
+    Set<String> previousPageHashes = new HashSet<>();
+    for (String entry : previousEntries) {
+      previousPageHashes.add(getHash(entry));
+    }
+    Set<String> lastPageHashes = new HashSet<>();
+    for (String entry : lastEntries) {
+      lastPageHashes.add(getHash(entry));
+    }
+    return new AddressTransactions(count, StringUtils.join(lastEntries, ","), lastPageHashes, previousPageHashes);
+  }
+
+  private String getHash(String entry) {
+    return new TransactionMessage(entry).getHash();
+  }
+
+  private String getKey(Long networkId, String address) {
+    return WALLET_USER_TRANSACTION_NAME + "_" + networkId + "_" + address;
+  }
+
+  /**
+   * A page of transactions read by getTransactions(networkId, address, before,
+   * limit)
+   */
+  public static class TransactionsPage {
+    private final List<String> transactions;
+
+    private final Integer      next;
+
+    TransactionsPage(List<String> transactions, Integer next) {
+      this.transactions = transactions;
+      this.next = next;
+    }
+
+    /**
+     * @return transactions of the page, most recent first
+     */
+    public List<String> getTransactions() {
+      return transactions;
+    }
+
+    /**
+     * @return position to pass as before to read the next page, null on the
+     *         last page
+     */
+    public Integer getNext() {
+      return next;
+    }
+  }
+
+  private static class AddressTransactions implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int         count;
+
+    private final String      lastPage;
+
+    /**
+     * Hashes of the entries of the last page
+     */
+    private final Set<String> lastPageHashes;
+
+    /**
+     * Hashes of the entries of the page before the last one
+     */
+    private final Set<String> previousPageHashes;
+
+    AddressTransactions(int count, String lastPage, Set<String> lastPageHashes, Set<String> previousPageHashes) {
+      this.count = count;
+      this.lastPage = lastPage;
+      this.lastPageHashes = lastPageHashes;
+      this.previousPageHashes = previousPageHashes;
+    }
+
+    private boolean contains(String hash) {
+      return lastPageHashes.contains(hash) || previousPageHashes.contains(hash);
+    }
+  }
+
+}
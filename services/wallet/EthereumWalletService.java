@@ -2,8 +2,11 @@ package ethereum.wallet.service;
 
 import static ethereum.wallet.service.utils.Utils.*;
 
-import java.io.InputStream;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.IOUtils;
@@ -14,6 +17,7 @@ import org.json.JSONObject;
 import org.picocontainer.Startable;
 
 import ethereum.wallet.model.*;
+import ethereum.wallet.service.AccountTransactionStore.TransactionsPage;
 import commons.api.notification.NotificationContext;
 import commons.api.notification.model.NotificationInfo;
 import commons.api.notification.model.PluginKey;
@@ -29,12 +33,15 @@ import container.configuration.ConfigurationManager;
 import container.xml.InitParams;
 import portal.config.UserACL;
 import services.cache.CacheService;
+import services.cache.ExoCache;
 import services.listener.ListenerService;
 import services.log.Log;
 import social.core.identity.model.Identity;
 import social.core.identity.provider.OrganizationIdentityProvider;
 import social.core.manager.IdentityManager;
+import social.core.space.SpaceListenerPlugin;
 import social.core.space.model.Space;
+import social.core.space.spi.SpaceLifeCycleEvent;
 import social.core.space.spi.SpaceService;
 
 /**
@@ -58,7 +65,30 @@ public class EthereumWalletService implements Startable {
 
   private GlobalSettings                       defaultSettings               = new GlobalSettings();
 
-  private GlobalSettings                       storedSettings;
+  /**
+   * Settings computed by getSettings(networkId, spaceId) per user, then per
+   * network and space. The maps are replaced, never modified once cached.
+   */
+  private ExoCache<String, Map<String, CachedSettings>> settingsCache;
+
+  /**
+   * Incremented by each settings invalidation, so that settings read before it
+   * are not cached after it
+   */
+  private final AtomicLong                     settingsInvalidations         = new AtomicLong();
+
+  /**
+   * Space resolved from the access permission of global settings
+   */
+  private volatile AccessPermissionSpace       accessPermissionSpace;
+
+  /**
+   * Whether users are allowed by the access permission space, cached for
+   * ACCESS_PERMISSION_MEMBERSHIP_TTL
+   */
+  private ExoCache<String, CachedMembership>   accessPermissionMembersCache;
+
+  private AccountTransactionStore              accountTransactionStore;
 
   private String                               contractAbiPath;
 
@@ -68,6 +98,16 @@ public class EthereumWalletService implements Startable {
 
   private String                               contractBinary;
 
+  /**
+   * Wallet address to account type + id, as stored in the address setting
+   */
+  private ExoCache<String, String>             accountByAddressCache;
+
+  /**
+   * Account type + id to wallet address
+   */
+  private ExoCache<String, String>             addressByAccountCache;
+
 	  
   
   private static final Log                     LOG                           = getLogger(EthereumWalletService.class);
@@ -106,10 +146,32 @@ public class EthereumWalletService implements Startable {
 
   public static final String                   WALLET_BROWSER_PHRASE_NAME    = "WALLET_BROWSER_PHRASE";
 
+  /**
+   * Maximum number of transactions returned per page of account transactions
+   */
+  public static final int                      MAX_TRANSACTIONS_PAGE_SIZE    = 100;
+
   public static final String                   ABI_PATH_PARAMETER            = "contract.abi.path";
 
   public static final String                   BIN_PATH_PARAMETER            = "contract.bin.path";
 
+  /**
+   * Catches membership changes not notified as space events, such as becoming
+   * a super manager
+   */
+  private static final long                    ACCESS_PERMISSION_MEMBERSHIP_TTL = 5 * 60 * 1000L;
+
+  /**
+   * Bounds how long cached settings are used, catching changes made on other
+   * nodes meanwhile
+   */
+  private static final long                    SETTINGS_TTL                  = 5 * 60 * 1000L;
+
+  /**
+   * Maximum number of users whose access permission membership is cached
+   */
+  private static final int                     ACCESS_PERMISSION_MEMBERS_MAX_SIZE = 10000;
+
 
   
   private static final char[]                  SIMPLE_CHARS                  = new char[] { 'A', 'B', 'C', 'D', 'E', 'F', 'G',
@@ -133,6 +195,13 @@ public class EthereumWalletService implements Startable {
     this.listenerService = listenerService;
     this.userACL = userACL;
     this.transactionMessagesCache = cacheService.getCacheInstance("wallet.transactionsMessages");
+    this.settingsCache = cacheService.getCacheInstance("wallet.settings");
+    this.accessPermissionMembersCache = cacheService.getCacheInstance("wallet.accessPermissionMembers");
+    this.accountByAddressCache = cacheService.getCacheInstance("wallet.accountByAddress");
+    this.addressByAccountCache = cacheService.getCacheInstance("wallet.addressByAccount");
+    this.accessPermissionMembersCache.setLiveTime(ACCESS_PERMISSION_MEMBERSHIP_TTL / 1000);
+    this.accessPermissionMembersCache.setMaxSize(ACCESS_PERMISSION_MEMBERS_MAX_SIZE);
+    this.accountTransactionStore = new AccountTransactionStore(settingService, cacheService);
 
     if (params.containsKey(DEFAULT_NETWORK_ID)) {
       String value = params.getValueParam(DEFAULT_NETWORK_ID).getValue();
@@ -199,6 +268,14 @@ public class EthereumWalletService implements Startable {
     } catch (Exception e) {
       LOG.warn("Can't read ABI/BIN files content", e);
     }
+    loadAddressIndex();
+    try {
+      spaceService.registerSpaceListenerPlugin(new AccessPermissionSpaceListener());
+    } catch (Exception e) {
+      LOG.warn("Can't listen to space membership changes, access permission membership will be refreshed every {}ms",
+               ACCESS_PERMISSION_MEMBERSHIP_TTL,
+               e);
+    }
   }
 
   @Override
@@ -242,8 +319,8 @@ public class EthereumWalletService implements Startable {
                        GLOBAL_SETTINGS_KEY_NAME,
                        SettingValue.create(newGlobalSettings.toJSONString(false)));
 
-    // Clear cached in memory stored settings
-    this.storedSettings = null;
+    invalidateAccessPermission();
+    invalidateSettings();
 
     try {
       this.listenerService.broadcast(GLOAL_SETTINGS_CHANGED_EVENT, oldGlobalSettings, newGlobalSettings);
@@ -258,11 +335,7 @@ public class EthereumWalletService implements Startable {
    * @return
    */
   public GlobalSettings getSettings() {
-    if (storedSettings != null) {
-      // Retrieve stored global settings from memory
-      return storedSettings;
-    }
-    return storedSettings = getSettings(null);
+    return getSettings(null);
   }
 
   /**
@@ -286,69 +359,127 @@ public class EthereumWalletService implements Startable {
    * @return
    */
   public GlobalSettings getSettings(Long networkId, String spaceId) {
-    SettingValue<?> globalSettingsValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, GLOBAL_SETTINGS_KEY_NAME);
-
     String username = getCurrentUserId();
+    String userKey = StringUtils.defaultString(username);
+    String settingsKey = (networkId == null ? 0 : networkId) + "#" + StringUtils.defaultString(spaceId);
+
+    Map<String, CachedSettings> userSettings = settingsCache.get(userKey);
+    CachedSettings cachedSettings = userSettings == null ? null : userSettings.get(settingsKey);
+    if (cachedSettings == null || cachedSettings.expiresAt <= System.currentTimeMillis()) {
+      // Read before computing, so that a change saved meanwhile isn't cached over
+      long invalidations = settingsInvalidations.get();
+      cachedSettings = loadSettings(username, networkId, spaceId);
+      if (invalidations == settingsInvalidations.get()) {
+        Map<String, CachedSettings> newUserSettings = userSettings == null ? new HashMap<>() : new HashMap<>(userSettings);
+        newUserSettings.put(settingsKey, cachedSettings);
+        settingsCache.put(userKey, Collections.unmodifiableMap(newUserSettings));
+      }
+    }
+    return toGlobalSettings(cachedSettings, spaceId);
+  }
 
-    GlobalSettings globalSettings = defaultSettings;
+  /**
+   * Reads what the settings of a user, network and space are built from. The
+   * cache keeps these immutable values only, a new {@link GlobalSettings} is
+   * built from them for each caller. What depends on the groups of the user
+   * and the managers of a space is not cached, nothing notifies their changes.
+   */
+  private CachedSettings loadSettings(String username, Long networkId, String spaceId) {
+    SettingValue<?> globalSettingsValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, GLOBAL_SETTINGS_KEY_NAME);
+    String storedGlobalSettings = null;
+    long expiresAt = System.currentTimeMillis() + SETTINGS_TTL;
+
+    GlobalSettings globalSettings = newGlobalSettings(null);
+    boolean walletEnabled = globalSettings.isWalletEnabled();
     if (globalSettingsValue != null && globalSettingsValue.getValue() != null) {
-      globalSettings = GlobalSettings.parseStringToObject(defaultSettings, globalSettingsValue.getValue().toString());
+      storedGlobalSettings = globalSettingsValue.getValue().toString();
+      globalSettings = newGlobalSettings(storedGlobalSettings);
+      walletEnabled = globalSettings.isWalletEnabled();
       if (StringUtils.isNotBlank(globalSettings.getAccessPermission())) {
-        Space space = spaceService.getSpaceByPrettyName(globalSettings.getAccessPermission());
-        if (space == null) {
-          space = spaceService.getSpaceByUrl(globalSettings.getAccessPermission());
-          if (space == null) {
-            space = spaceService.getSpaceByGroupId("/spaces/" + globalSettings.getAccessPermission());
-          }
-        }
+        Space space = getAccessPermissionSpace(globalSettings.getAccessPermission());
         // Disable wallet for users not member of the permitted space members
-        if (username != null && space != null
-            && !(spaceService.isMember(space, username) || spaceService.isSuperManager(username))) {
+        if (username != null && space != null) {
+          CachedMembership membership = getAccessPermissionMembership(space, username);
+          expiresAt = Math.min(expiresAt, membership.expiresAt);
+          if (!membership.member) {
 
-          LOG.info("Wallet is disabled for user {} because he's not member of space {}", username, space.getPrettyName());
+            LOG.info("Wallet is disabled for user {} because he's not member of space {}", username, space.getPrettyName());
 
-          globalSettings.setWalletEnabled(false);
+            walletEnabled = false;
+          }
         }
       }
-      globalSettings.setAdmin(userACL.isUserInGroup(ADMINISTRATORS_GROUP));
     }
 
-    if (globalSettings.isWalletEnabled() || globalSettings.isAdmin()) {
-      if ((networkId == null || networkId == 0) && globalSettings.getDefaultNetworkId() != null) {
-        networkId = globalSettings.getDefaultNetworkId();
+    if ((networkId == null || networkId == 0) && globalSettings.getDefaultNetworkId() != null) {
+      networkId = globalSettings.getDefaultNetworkId();
+    }
+    // Retrieve default contracts to display for all users
+    List<String> defaultContracts = getDefaultContractsAddresses(networkId);
+
+    String userPreferences = null;
+    String walletAddress = null;
+    String userPhrase = null;
+    if (username != null) {
+      // Append user preferences
+      SettingValue<?> userSettingsValue = settingService.get(Context.USER.id(username), WALLET_SCOPE, SETTINGS_KEY_NAME);
+      if (userSettingsValue != null && userSettingsValue.getValue() != null) {
+        userPreferences = userSettingsValue.getValue().toString();
+      } else {
+        userPreferences = new UserPreferences().toJSONString();
       }
-      // Retrieve default contracts to display for all users
-      globalSettings.setDefaultContractsToDisplay(getDefaultContractsAddresses(networkId));
-
-      if (username != null) {
-        // Append user preferences
-        SettingValue<?> userSettingsValue = settingService.get(Context.USER.id(username), WALLET_SCOPE, SETTINGS_KEY_NAME);
-        UserPreferences userSettings = null;
-        if (userSettingsValue != null && userSettingsValue.getValue() != null) {
-          userSettings = UserPreferences.parseStringToObject(userSettingsValue.getValue().toString());
-        } else {
-          userSettings = new UserPreferences();
-        }
-        globalSettings.setUserPreferences(userSettings);
-
-        if (StringUtils.isNotBlank(spaceId)) {
-          userSettings.setWalletAddress(getSpaceAddress(spaceId));
-          userSettings.setPhrase(getSpacePhrase(spaceId));
-        } else {
-          userSettings.setWalletAddress(getUserAddress(username));
-          userSettings.setPhrase(getUserPhrase(username));
-        }
+
+      if (StringUtils.isNotBlank(spaceId)) {
+        walletAddress = getSpaceAddress(spaceId);
+      } else {
+        walletAddress = getUserAddress(username);
+        userPhrase = getUserPhrase(username);
       }
-      globalSettings.setContractAbi(getContractAbi());
-      globalSettings.setContractBin(getContractBinary());
-    } else {
-      globalSettings = new GlobalSettings();
-      globalSettings.setWalletEnabled(false);
     }
+    return new CachedSettings(expiresAt,
+                              storedGlobalSettings,
+                              walletEnabled,
+                              defaultContracts,
+                              userPreferences,
+                              walletAddress,
+                              userPhrase);
+  }
 
+  private GlobalSettings toGlobalSettings(CachedSettings cachedSettings, String spaceId) {
+    GlobalSettings globalSettings = newGlobalSettings(cachedSettings.storedGlobalSettings);
+    if (cachedSettings.storedGlobalSettings != null) {
+      globalSettings.setWalletEnabled(cachedSettings.walletEnabled);
+      globalSettings.setAdmin(userACL.isUserInGroup(ADMINISTRATORS_GROUP));
+    }
+    if (!globalSettings.isWalletEnabled() && !globalSettings.isAdmin()) {
+      globalSettings = new GlobalSettings();
+      globalSettings.setWalletEnabled(false);
+      return globalSettings;
+    }
+    globalSettings.setDefaultContractsToDisplay(new ArrayList<>(cachedSettings.defaultContracts));
+    if (cachedSettings.userPreferences != null) {
+      UserPreferences userSettings = UserPreferences.parseStringToObject(cachedSettings.userPreferences);
+      userSettings.setWalletAddress(cachedSettings.walletAddress);
+      // Only given to the current managers of the space
+      userSettings.setPhrase(StringUtils.isNotBlank(spaceId) ? getSpacePhrase(spaceId) : cachedSettings.userPhrase);
+      globalSettings.setUserPreferences(userSettings);
+    }
+    globalSettings.setContractAbi(getContractAbi());
+    globalSettings.setContractBin(getContractBinary());
     return globalSettings;
   }
 
+  /**
+   * @param storedGlobalSettings stored global settings, null for the default
+   *          ones
+   * @return new settings, never the shared defaultSettings instance
+   */
+  private GlobalSettings newGlobalSettings(String storedGlobalSettings) {
+    return GlobalSettings.parseStringToObject(defaultSettings,
+                                              storedGlobalSettings == null ? defaultSettings.toJSONString(false)
+                                                                           : storedGlobalSettings);
+  }
+
   /**
    * Save a new contract address to display it in wallet of all users and save
    * contract name and symbol
@@ -380,8 +511,7 @@ public class EthereumWalletService implements Startable {
                                                                                 + "," + address;
     settingService.set(WALLET_CONTEXT, WALLET_SCOPE, defaultContractsParamKey, SettingValue.create(defaultContractsAddresses));
 
-    // Clear cached in memory stored settings
-    this.storedSettings = null;
+    invalidateSettings();
   }
 
   /**
@@ -416,8 +546,7 @@ public class EthereumWalletService implements Startable {
       settingService.set(WALLET_CONTEXT, WALLET_SCOPE, defaultContractsParamKey, SettingValue.create(contractAddressValue));
     }
 
-    // Clear cached in memory stored settings
-    this.storedSettings = null;
+    invalidateSettings();
 
     return true;
   }
@@ -483,8 +612,7 @@ public class EthereumWalletService implements Startable {
                        SETTINGS_KEY_NAME,
                        SettingValue.create(userPreferences.toJSONString()));
 
-    // Clear cached in memory stored settings
-    this.storedSettings = null;
+    invalidateUserSettings(userId);
   }
 
   /**
@@ -560,9 +688,8 @@ public class EthereumWalletService implements Startable {
 
     AccountDetail accountDetail = null;
 
-    SettingValue<?> walletAddressValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, address);
-    if (walletAddressValue != null && walletAddressValue.getValue() != null) {
-      String idAndType = walletAddressValue.getValue().toString();
+    String idAndType = getAccountByAddress(address);
+    if (idAndType != null) {
       String id = null;
       if (idAndType.startsWith(USER_ACCOUNT_TYPE)) {
         id = idAndType.replaceFirst(USER_ACCOUNT_TYPE, "");
@@ -587,10 +714,14 @@ public class EthereumWalletService implements Startable {
    * @return
    */
   public String getSpaceAddress(String id) {
+    String address = addressByAccountCache.get(SPACE_ACCOUNT_TYPE + id);
+    if (address != null) {
+      return address;
+    }
     SettingValue<?> spaceWalletAddressValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, id);
-    String address = null;
     if (spaceWalletAddressValue != null && spaceWalletAddressValue.getValue() != null) {
       address = spaceWalletAddressValue.getValue().toString().toLowerCase();
+      indexAddress(SPACE_ACCOUNT_TYPE + id, address);
     }
     return address;
   }
@@ -602,10 +733,14 @@ public class EthereumWalletService implements Startable {
    * @return
    */
   public String getUserAddress(String id) {
+    String address = addressByAccountCache.get(USER_ACCOUNT_TYPE + id);
+    if (address != null) {
+      return address;
+    }
     SettingValue<?> userWalletAddressValue = settingService.get(Context.USER.id(id), WALLET_SCOPE, ADDRESS_KEY_NAME);
-    String address = null;
     if (userWalletAddressValue != null && userWalletAddressValue.getValue() != null) {
       address = userWalletAddressValue.getValue().toString().toLowerCase();
+      indexAddress(USER_ACCOUNT_TYPE + id, address);
     }
     return address;
   }
@@ -648,6 +783,7 @@ public class EthereumWalletService implements Startable {
                    userDetailsByOldAddress.getId(),
                    currentUserId);
           settingService.remove(Context.USER.id(userDetailsByOldAddress.getId()), WALLET_SCOPE, ADDRESS_KEY_NAME);
+          invalidateUserSettings(userDetailsByOldAddress.getId());
         }
         // Remove old address mapping
         settingService.remove(WALLET_CONTEXT, WALLET_SCOPE, oldAddress);
@@ -655,6 +791,7 @@ public class EthereumWalletService implements Startable {
 
       settingService.set(WALLET_CONTEXT, WALLET_SCOPE, address, SettingValue.create(type + id));
       settingService.set(Context.USER.id(id), WALLET_SCOPE, ADDRESS_KEY_NAME, SettingValue.create(address));
+      indexWalletAddress(type + id, oldAddress, address);
     } else if (StringUtils.equals(type, SPACE_ACCOUNT_TYPE)) {
       checkCurrentUserIsSpaceManager(id);
       oldAddress = getSpaceAddress(id);
@@ -665,6 +802,7 @@ public class EthereumWalletService implements Startable {
 
       settingService.set(WALLET_CONTEXT, WALLET_SCOPE, address, SettingValue.create(type + id));
       settingService.set(WALLET_CONTEXT, WALLET_SCOPE, id, SettingValue.create(address));
+      indexWalletAddress(type + id, oldAddress, address);
     } else {
       return null;
     }
@@ -675,7 +813,14 @@ public class EthereumWalletService implements Startable {
       this.listenerService.broadcast(MODIFY_ADDRESS_ASSOCIATED_EVENT, this, accountDetail);
     }
 
-    return generateSecurityPhrase(accountDetail);
+    // The phrase may be generated now, it is part of the settings too
+    String phrase = generateSecurityPhrase(accountDetail);
+    if (StringUtils.equals(type, USER_ACCOUNT_TYPE)) {
+      invalidateUserSettings(id);
+    } else {
+      invalidateSettings();
+    }
+    return phrase;
   }
 
   /**
@@ -723,24 +868,16 @@ public class EthereumWalletService implements Startable {
       throw new IllegalArgumentException("transaction hash parameter is mandatory");
     }
 
-    address = address.toLowerCase();
-    String addressTransactionsParamName = WALLET_USER_TRANSACTION_NAME + address + networkId;
-
-    SettingValue<?> addressTransactionsValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, addressTransactionsParamName);
-    String addressTransactions = addressTransactionsValue == null ? "" : addressTransactionsValue.getValue().toString();
-    if (!addressTransactions.contains(hash)) {
-      String content = hash;
-      TransactionMessage transactionMessage = transactionMessagesCache.get(hash);
-      if (transactionMessage != null) {
-        if (!sender) {
-          // Avoid saving label only for sender
-          transactionMessage = new TransactionMessage(transactionMessage.getHash(), null, transactionMessage.getMessage(), null);
-        }
-        content = transactionMessage.toString();
+    String content = hash;
+    TransactionMessage transactionMessage = transactionMessagesCache.get(hash);
+    if (transactionMessage != null) {
+      if (!sender) {
+        // Avoid saving label only for sender
+        transactionMessage = new TransactionMessage(transactionMessage.getHash(), null, transactionMessage.getMessage(), null);
       }
-      addressTransactions = addressTransactions.isEmpty() ? content : content + "," + addressTransactions;
-      settingService.set(WALLET_CONTEXT, WALLET_SCOPE, addressTransactionsParamName, SettingValue.create(addressTransactions));
+      content = transactionMessage.toString();
     }
+    accountTransactionStore.append(networkId, address, hash, content);
   }
 
   /**
@@ -751,15 +888,89 @@ public class EthereumWalletService implements Startable {
    * @return
    */
   public List<JSONObject> getAccountTransactions(Long networkId, String address) {
-    String addressTransactionsParamName = WALLET_USER_TRANSACTION_NAME + address + networkId;
-    SettingValue<?> addressTransactionsValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, addressTransactionsParamName);
-    String addressTransactions = addressTransactionsValue == null ? "" : addressTransactionsValue.getValue().toString();
-    String[] addressTransactionsArray = addressTransactions.isEmpty() ? new String[0] : addressTransactions.split(",");
-    return Arrays.stream(addressTransactionsArray)
+    if (StringUtils.isBlank(address)) {
+      return Collections.emptyList();
+    }
+    return accountTransactionStore.getTransactions(networkId, address)
+                 .stream()
                  .map(transaction -> new TransactionMessage(transaction).toJSONObject())
                  .collect(Collectors.toList());
   }
 
+  /**
+   * Get a page of transactions of an account, most recent first
+   * 
+   * @param networkId
+   * @param address
+   * @param cursor cursor returned with the previous page, null for the first
+   *          page
+   * @param limit maximum number of transactions, at most
+   *          MAX_TRANSACTIONS_PAGE_SIZE
+   * @return a JSON object with the "transactions" array and the "cursor" of
+   *         the next page, absent on the last page. Cursors stay valid when new
+   *         transactions are saved.
+   */
+  public JSONObject getAccountTransactions(Long networkId, String address, String cursor, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit parameter must be positive");
+    }
+    Integer before = null;
+    if (StringUtils.isNotBlank(cursor)) {
+      try {
+        before = Integer.parseInt(cursor);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid cursor " + cursor);
+      }
+    }
+    JSONObject page = new JSONObject();
+    JSONArray transactions = new JSONArray();
+    if (StringUtils.isNotBlank(address)) {
+      int pageSize = Math.min(limit, MAX_TRANSACTIONS_PAGE_SIZE);
+      TransactionsPage transactionsPage = accountTransactionStore.getTransactions(networkId, address, before, pageSize);
+      transactionsPage.getTransactions()
+                      .forEach(transaction -> transactions.put(new TransactionMessage(transaction).toJSONObject()));
+      if (transactionsPage.getNext() != null) {
+        page.put("cursor", String.valueOf(transactionsPage.getNext()));
+      }
+    }
+    page.put("transactions", transactions);
+    return page;
+  }
+
+  /**
+   * Write all transactions of an account as a JSON array, most recent first,
+   * reading them from storage while writing
+   * 
+   * @param networkId
+   * @param address
+   * @param outputStream
+   * @throws IOException
+   */
+  public void writeAccountTransactions(Long networkId, String address, OutputStream outputStream) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    writer.write('[');
+    if (StringUtils.isNotBlank(address)) {
+      boolean[] first = new boolean[] { true };
+      try {
+        accountTransactionStore.forEachTransaction(networkId, address, transaction -> {
+          try {
+            if (!first[0]) {
+              writer.write(',');
+            }
+            first[0] = false;
+            writer.write(new TransactionMessage(transaction).toJSONObject().toString());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+    writer.write(']');
+    writer.flush();
+  }
+
   /**
    * Request funds
    * 
@@ -979,6 +1190,132 @@ public class EthereumWalletService implements Startable {
     return names;
   }
 
+  /**
+   * Warms the address caches up from storage. Lookups read storage on a miss,
+   * so the caches may be evicted or refreshed by another node at any time.
+   * Each side is loaded from the settings it replaces: an account setting may
+   * still hold an address reassigned since to another account, the owner of
+   * an address is the one stored with the address.
+   */
+  private void loadAddressIndex() {
+    try {
+      Map<String, String> users = getListOfWalletsOfType(USER_ACCOUNT_TYPE);
+      Map<String, String> spaces = getListOfWalletsOfType(SPACE_ACCOUNT_TYPE);
+      users.forEach((id, address) -> indexAddress(USER_ACCOUNT_TYPE + id, address));
+      spaces.forEach((id, address) -> indexAddress(SPACE_ACCOUNT_TYPE + id, address));
+      Set<String> addresses = new HashSet<>();
+      users.values().forEach(address -> addresses.add(StringUtils.lowerCase(address)));
+      spaces.values().forEach(address -> addresses.add(StringUtils.lowerCase(address)));
+      for (String address : addresses) {
+        if (StringUtils.isNotBlank(address)) {
+          getAccountByAddress(address);
+        }
+      }
+      LOG.info("Indexed {} user and {} space wallet addresses", users.size(), spaces.size());
+    } catch (Exception e) {
+      LOG.warn("Can't index wallet addresses, they will be read from storage", e);
+    }
+  }
+
+  private void indexAddress(String account, String address) {
+    if (StringUtils.isNotBlank(address)) {
+      addressByAccountCache.put(account, address.toLowerCase());
+    }
+  }
+
+  /**
+   * Applies to the caches a change of address already saved in storage
+   * 
+   * @param account type + id of the account
+   * @param oldAddress previous address of the account, null if none
+   * @param address new address of the account
+   */
+  private void indexWalletAddress(String account, String oldAddress, String address) {
+    if (oldAddress != null && !StringUtils.equals(oldAddress, address)) {
+      accountByAddressCache.remove(oldAddress);
+    }
+    // The address may have been taken from another account
+    String previousAccount = accountByAddressCache.get(address);
+    if (previousAccount != null && !StringUtils.equals(previousAccount, account)) {
+      addressByAccountCache.remove(previousAccount);
+    }
+    indexAddress(account, address);
+    accountByAddressCache.put(address, account);
+  }
+
+  private String getAccountByAddress(String address) {
+    String account = accountByAddressCache.get(address);
+    if (account != null) {
+      return account;
+    }
+    SettingValue<?> walletAddressValue = settingService.get(WALLET_CONTEXT, WALLET_SCOPE, address);
+    if (walletAddressValue != null && walletAddressValue.getValue() != null) {
+      account = walletAddressValue.getValue().toString();
+      accountByAddressCache.put(address, account);
+    }
+    return account;
+  }
+
+  /**
+   * Removes the cached settings of a user
+   * 
+   * @param username
+   */
+  private void invalidateUserSettings(String username) {
+    settingsInvalidations.incrementAndGet();
+    settingsCache.remove(username);
+  }
+
+  /**
+   * Removes the cached settings of all users, after a change of global,
+   * network or space settings
+   */
+  private void invalidateSettings() {
+    settingsInvalidations.incrementAndGet();
+    settingsCache.clearCache();
+  }
+
+  private Space getAccessPermissionSpace(String accessPermission) {
+    AccessPermissionSpace cachedSpace = accessPermissionSpace;
+    if (cachedSpace != null && StringUtils.equals(cachedSpace.accessPermission, accessPermission)) {
+      return cachedSpace.space;
+    }
+    Space space = spaceService.getSpaceByPrettyName(accessPermission);
+    if (space == null) {
+      space = spaceService.getSpaceByUrl(accessPermission);
+      if (space == null) {
+        space = spaceService.getSpaceByGroupId("/spaces/" + accessPermission);
+      }
+    }
+    // A missing space is kept too, until a space is created
+    accessPermissionSpace = new AccessPermissionSpace(accessPermission, space);
+    return space;
+  }
+
+  private CachedMembership getAccessPermissionMembership(Space space, String username) {
+    CachedMembership membership = accessPermissionMembersCache.get(username);
+    long now = System.currentTimeMillis();
+    if (membership != null && membership.expiresAt > now) {
+      return membership;
+    }
+    boolean member = spaceService.isMember(space, username) || spaceService.isSuperManager(username);
+    membership = new CachedMembership(member, now + ACCESS_PERMISSION_MEMBERSHIP_TTL);
+    accessPermissionMembersCache.put(username, membership);
+    return membership;
+  }
+
+  private void invalidateAccessPermission() {
+    accessPermissionSpace = null;
+    accessPermissionMembersCache.clearCache();
+  }
+
+  private void invalidateAccessPermissionMember(String username) {
+    if (username != null) {
+      accessPermissionMembersCache.remove(username);
+      invalidateUserSettings(username);
+    }
+  }
+
   private String getSpaceId(Space space) {
     return space.getGroupId().split("/")[2];
   }
@@ -1061,4 +1398,165 @@ public class EthereumWalletService implements Startable {
     return true;
   }
 
+  /**
+   * Immutable values settings are built from, see loadSettings
+   */
+  private static class CachedSettings implements Serializable {
+    private static final long  serialVersionUID = 1L;
+
+    /**
+     * End of the settings TTL, or of the access permission membership the
+     * settings were computed with if sooner
+     */
+    private final long         expiresAt;
+
+    /**
+     * Stored global settings, null if none is stored
+     */
+    private final String       storedGlobalSettings;
+
+    private final boolean      walletEnabled;
+
+    private final List<String> defaultContracts;
+
+    /**
+     * User preferences, null without a user
+     */
+    private final String       userPreferences;
+
+    private final String       walletAddress;
+
+    /**
+     * Phrase of the user, null for the settings of a space
+     */
+    private final String       userPhrase;
+
+    CachedSettings(long expiresAt,
+                   String storedGlobalSettings,
+                   boolean walletEnabled,
+                   List<String> defaultContracts,
+                   String userPreferences,
+                   String walletAddress,
+                   String userPhrase) {
+      this.expiresAt = expiresAt;
+      this.storedGlobalSettings = storedGlobalSettings;
+      this.walletEnabled = walletEnabled;
+      this.defaultContracts = defaultContracts == null ? Collections.emptyList()
+                                                       : Collections.unmodifiableList(new ArrayList<>(defaultContracts));
+      this.userPreferences = userPreferences;
+      this.walletAddress = walletAddress;
+      this.userPhrase = userPhrase;
+    }
+  }
+
+  private static class AccessPermissionSpace {
+    private final String accessPermission;
+
+    private final Space  space;
+
+    AccessPermissionSpace(String accessPermission, Space space) {
+      this.accessPermission = accessPermission;
+      this.space = space;
+    }
+  }
+
+  private static class CachedMembership implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean     member;
+
+    private final long        expiresAt;
+
+    CachedMembership(boolean member, long expiresAt) {
+      this.member = member;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /**
+   * Keeps the access permission caches in line with space changes: members
+   * joining, leaving, granted or revoked the manager role, and spaces created,
+   * renamed or removed, which can change the space an access permission
+   * resolves to
+   */
+  private class AccessPermissionSpaceListener extends SpaceListenerPlugin {
+
+    @Override
+    public void joined(SpaceLifeCycleEvent event) {
+      invalidateAccessPermissionMember(event.getTarget());
+    }
+
+    @Override
+    public void left(SpaceLifeCycleEvent event) {
+      invalidateAccessPermissionMember(event.getTarget());
+    }
+
+    @Override
+    public void spaceCreated(SpaceLifeCycleEvent event) {
+      invalidateSpaces();
+    }
+
+    @Override
+    public void spaceRemoved(SpaceLifeCycleEvent event) {
+      invalidateSpaces();
+    }
+
+    @Override
+    public void spaceRenamed(SpaceLifeCycleEvent event) {
+      invalidateSpaces();
+    }
+
+    @Override
+    public void spaceAccessEdited(SpaceLifeCycleEvent event) {
+      invalidateSpaces();
+    }
+
+    @Override
+    public void spaceDescriptionEdited(SpaceLifeCycleEvent event) {
+    }
+
+    @Override
+    public void spaceAvatarEdited(SpaceLifeCycleEvent event) {
+    }
+
+    @Override
+    public void applicationAdded(SpaceLifeCycleEvent event) {
+    }
+
+    @Override
+    public void applicationRemoved(SpaceLifeCycleEvent event) {
+    }
+
+    @Override
+    public void applicationActivated(SpaceLifeCycleEvent event) {
+    }
+
+    @Override
+    public void applicationDeactivated(SpaceLifeCycleEvent event) {
+    }
+
+    @Override
+    public void grantedLead(SpaceLifeCycleEvent event) {
+      invalidateAccessPermissionMember(event.getTarget());
+    }
+
+    @Override
+    public void revokedLead(SpaceLifeCycleEvent event) {
+      invalidateAccessPermissionMember(event.getTarget());
+    }
+
+    @Override
+    public void addInvitedUser(SpaceLifeCycleEvent event) {
+    }
+
+    @Override
+    public void addPendingUser(SpaceLifeCycleEvent event) {
+    }
+
+    private void invalidateSpaces() {
+      invalidateAccessPermission();
+      invalidateSettings();
+    }
+  }
+
 }